@@ -8,7 +8,6 @@ import com.bullionder.book_network.user.Token;
 import com.bullionder.book_network.user.TokenRepository;
 import com.bullionder.book_network.user.User;
 import com.bullionder.book_network.user.UserRepository;
-import jakarta.mail.MessagingException;
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -20,6 +19,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
@@ -36,7 +36,9 @@ public class AuthenticationService {
     @Value("${application.mailing.frontend.activation-url}")
     private String activationUrl;
 
-    public void register(RegistrationRequest request) throws MessagingException {
+    // the activation email is written to the outbox in the same transaction as the account
+    @Transactional
+    public void register(RegistrationRequest request) {
         var userRole = roleRepository
                 .findByName("USER")
                 // TODO - better exception handling
@@ -67,7 +69,7 @@ public class AuthenticationService {
     }
 
     //    @Transactional
-    public void activateAccount(String token) throws MessagingException {
+    public void activateAccount(String token) {
         Token savedToken = tokenRepository
                 .findByToken(token)
                 // TODO exception has to be defined
@@ -85,7 +87,7 @@ public class AuthenticationService {
         tokenRepository.save(savedToken);
     }
 
-    private void sendValidationEmail(User user) throws MessagingException {
+    private void sendValidationEmail(User user) {
         var newToken = generateAndSaveActivationToken(user);
         emailService.sendEmail(
                 user.getEmail(),
@@ -5,14 +5,19 @@ import com.bullionder.book_network.feedback.Feedback;
 import com.bullionder.book_network.history.BookTransactionHistory;
 import com.bullionder.book_network.user.User;
 import jakarta.persistence.*;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
+@Table(indexes = @Index(name = "idx_book_created_date_id", columnList = "created_date, id"))
 @Getter
 @Setter
 @SuperBuilder
@@ -28,6 +33,30 @@ public class Book extends BaseEntity {
     private boolean archived;
     private boolean shareable;
 
+    @ColumnDefault("0")
+    private double ratingSum;
+
+    @ColumnDefault("0")
+    private int ratingCount;
+
+    // set while a borrow is open, so availability is a column check instead of a history lookup
+    @Column(name = "current_borrower_id")
+    private Integer currentBorrowerId;
+
+    // conditional updates write the row without loading it, the version keeps entity saves from undoing them
+    @Version
+    @ColumnDefault("0")
+    private Integer version;
+
+    @ElementCollection
+    @CollectionTable(
+            name = "book_tag",
+            joinColumns = @JoinColumn(name = "book_id"),
+            indexes = @Index(name = "idx_book_tag_tag_book_id", columnList = "tag, book_id"))
+    @Column(name = "tag", nullable = false, length = BookTags.MAX_TAG_LENGTH)
+    @Builder.Default
+    private Set<String> tags = new LinkedHashSet<>();
+
     @ManyToOne
     @JoinColumn(name = "owner_id")
     private User owner;
@@ -40,11 +69,13 @@ public class Book extends BaseEntity {
 
     @Transient
     public double getRate() {
-        if (feedbacks == null || feedbacks.isEmpty()) {
+        return averageRating(ratingSum, ratingCount);
+    }
+
+    public static double averageRating(double ratingSum, int ratingCount) {
+        if (ratingCount == 0) {
             return 0.0;
         }
-        var rate =
-                this.feedbacks.stream().mapToDouble(Feedback::getNote).average().orElse(0.0);
-        return Math.round(rate * 10.0) / 10.0;
+        return Math.round(ratingSum / ratingCount * 10.0) / 10.0;
     }
 }
@@ -0,0 +1,127 @@
+package com.bullionder.book_network.book;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class BookBulkRepository {
+
+    // the ownership check is part of the WHERE clause, so foreign or unknown ids are skipped instead of loaded
+    private static final String UPDATE_BOOK_FLAG =
+            """
+            UPDATE book
+            SET %1$s = :value, version = version + 1, last_modified_date = LOCALTIMESTAMP, last_modified_by = :ownerId
+            WHERE book.owner_id = :ownerId
+            AND book.%1$s <> :value
+            %2$s
+            RETURNING book.id
+            """;
+
+    // approving a return and releasing the book happen in one statement, so no borrower sees one without the other
+    private static final String APPROVE_RETURNS =
+            """
+            WITH approved AS (
+                UPDATE book_transaction_history history
+                SET return_approved = true, return_approved_date = LOCALTIMESTAMP,
+                    last_modified_date = LOCALTIMESTAMP, last_modified_by = :ownerId
+                FROM book
+                WHERE book.id = history.book_id
+                AND book.owner_id = :ownerId
+                AND history.returned = true
+                AND history.return_approved = false
+                %s
+                RETURNING history.id, history.book_id, history.user_id,
+                    history.returned_date, history.return_approved_date
+            )
+            UPDATE book
+            SET current_borrower_id = NULL, version = version + 1,
+                last_modified_date = LOCALTIMESTAMP, last_modified_by = :ownerId
+            FROM approved
+            WHERE book.id = approved.book_id
+            RETURNING book.id AS book_id, approved.id AS history_id, approved.user_id AS borrower_id,
+                approved.returned_date, approved.return_approved_date
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public List<Integer> updateArchived(Integer ownerId, BookSelectionRequest selection, boolean archived) {
+        return updateFlag("archived", ownerId, selection, archived);
+    }
+
+    public List<Integer> updateShareable(Integer ownerId, BookSelectionRequest selection, boolean shareable) {
+        return updateFlag("shareable", ownerId, selection, shareable);
+    }
+
+    public List<ApprovedReturn> approveReturns(Integer ownerId, BookSelectionRequest selection) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("ownerId", ownerId);
+        return jdbcTemplate.query(
+                APPROVE_RETURNS.formatted(selectionCondition(selection, parameters)),
+                parameters,
+                BookBulkRepository::toApprovedReturn);
+    }
+
+    public Optional<ApprovedReturn> approveReturn(Integer ownerId, Integer bookId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("ownerId", ownerId);
+        String condition = selectionCondition(new BookSelectionRequest(List.of(bookId), null, null, null), parameters);
+        return jdbcTemplate
+                .query(APPROVE_RETURNS.formatted(condition), parameters, BookBulkRepository::toApprovedReturn)
+                .stream()
+                .findFirst();
+    }
+
+    private List<Integer> updateFlag(String column, Integer ownerId, BookSelectionRequest selection, boolean value) {
+        MapSqlParameterSource parameters =
+                new MapSqlParameterSource().addValue("ownerId", ownerId).addValue("value", value);
+        return jdbcTemplate.queryForList(
+                UPDATE_BOOK_FLAG.formatted(column, selectionCondition(selection, parameters)),
+                parameters,
+                Integer.class);
+    }
+
+    private static String selectionCondition(BookSelectionRequest selection, MapSqlParameterSource parameters) {
+        StringBuilder condition = new StringBuilder();
+        if (selection.hasBookIds()) {
+            condition.append(" AND book.id IN (:bookIds)");
+            parameters.addValue("bookIds", selection.bookIds());
+        }
+        if (selection.archived() != null) {
+            condition.append(" AND book.archived = :archivedFilter");
+            parameters.addValue("archivedFilter", selection.archived());
+        }
+        if (selection.shareable() != null) {
+            condition.append(" AND book.shareable = :shareableFilter");
+            parameters.addValue("shareableFilter", selection.shareable());
+        }
+        if (selection.authorName() != null && !selection.authorName().isBlank()) {
+            condition.append(" AND lower(book.author_name) = lower(:authorName)");
+            parameters.addValue("authorName", selection.authorName().strip());
+        }
+        return condition.toString();
+    }
+
+    private static ApprovedReturn toApprovedReturn(ResultSet resultSet, int rowNumber) throws SQLException {
+        Timestamp returnedDate = resultSet.getTimestamp("returned_date");
+        return new ApprovedReturn(
+                resultSet.getInt("book_id"),
+                resultSet.getInt("history_id"),
+                resultSet.getInt("borrower_id"),
+                returnedDate == null ? null : returnedDate.toLocalDateTime(),
+                resultSet.getTimestamp("return_approved_date").toLocalDateTime());
+    }
+
+    public record ApprovedReturn(
+            Integer bookId,
+            Integer historyId,
+            Integer borrowerId,
+            LocalDateTime returnedDate,
+            LocalDateTime approvedDate) {}
+}
@@ -0,0 +1,254 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.notification.LendingEventsRecordedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class BookChangeChannel {
+
+    private static final String CHANNEL = "book_changed";
+    private static final String RANGES_PREFIX = "ranges:";
+    private static final String RECIPIENTS_PREFIX = "recipients:";
+    private static final int MAX_RANGES_LENGTH = 7000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer invalidationLag;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Duration pollTimeout;
+    private final Duration reconnectDelay;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public BookChangeChannel(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${application.book-cache.listen.poll-timeout:PT10S}") Duration pollTimeout,
+            @Value("${application.book-cache.listen.reconnect-delay:PT5S}") Duration reconnectDelay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.eventPublisher = eventPublisher;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.invalidationLag = Timer.builder("book.response.cache.invalidation.lag")
+                .description("Delay between a book change on one node and its invalidation on another")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public void publish(Integer bookId) {
+        if (!running) {
+            return;
+        }
+        try {
+            jdbcTemplate.queryForObject(
+                    "SELECT pg_notify(?, ?)",
+                    Object.class,
+                    CHANNEL,
+                    bookId + ":" + System.currentTimeMillis() + ":" + nodeId);
+        } catch (RuntimeException e) {
+            log.warn("Could not notify the other nodes about book {}", bookId, e);
+        }
+    }
+
+    public void publish(List<Integer> bookIds) {
+        publishRanges(RANGES_PREFIX, bookIds, "books");
+    }
+
+    // lending events travel on the same connection, only the users with open streams elsewhere need the ids
+    public void publishRecipients(List<Integer> userIds) {
+        publishRanges(RECIPIENTS_PREFIX, userIds, "lending event recipients");
+    }
+
+    private void publishRanges(String prefix, List<Integer> ids, String description) {
+        if (!running || ids.isEmpty()) {
+            return;
+        }
+        // consecutive ids collapse into ranges, and each payload stays under the 8000 byte NOTIFY limit
+        for (String ranges : toRanges(ids, MAX_RANGES_LENGTH)) {
+            try {
+                jdbcTemplate.queryForObject(
+                        "SELECT pg_notify(?, ?)",
+                        Object.class,
+                        CHANNEL,
+                        prefix + ranges + ":" + System.currentTimeMillis() + ":" + nodeId);
+            } catch (RuntimeException e) {
+                log.warn("Could not notify the other nodes about {} {}", ids.size(), description, e);
+                return;
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (dataSourceProperties.getUrl() == null
+                || !dataSourceProperties.getUrl().startsWith("jdbc:postgresql:")) {
+            log.warn("Book change notifications need PostgreSQL, cached books rely on their TTL only");
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "book-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            // a dedicated connection, so the pool never loses a slot to a session that only waits
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // notifications sent while this node was disconnected are lost
+                eventPublisher.publishEvent(new BookChangesMissedEvent());
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handle(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Book change listener lost its connection, reconnecting", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        if (payload.startsWith(RANGES_PREFIX)) {
+            handleRanges(payload.substring(RANGES_PREFIX.length()));
+            return;
+        }
+        if (payload.startsWith(RECIPIENTS_PREFIX)) {
+            handleRecipients(payload.substring(RECIPIENTS_PREFIX.length()));
+            return;
+        }
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || nodeId.equals(parts[2])) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new BookChangedEvent(Integer.valueOf(parts[0]), true));
+            invalidationLag.record(
+                    Math.max(0, System.currentTimeMillis() - Long.parseLong(parts[1])), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed book change notification {}", payload);
+        }
+    }
+
+    private void handleRanges(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || nodeId.equals(parts[2])) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new BooksChangedEvent(fromRanges(parts[0]), true));
+            invalidationLag.record(
+                    Math.max(0, System.currentTimeMillis() - Long.parseLong(parts[1])), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed book change notification {}", payload);
+        }
+    }
+
+    private void handleRecipients(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || nodeId.equals(parts[2])) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(new LendingEventsRecordedEvent(fromRanges(parts[0]), true));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed lending event notification {}", payload);
+        }
+    }
+
+    static List<String> toRanges(List<Integer> bookIds, int maxLength) {
+        List<Integer> sorted = bookIds.stream().sorted().distinct().toList();
+        List<String> payloads = new ArrayList<>();
+        StringBuilder ranges = new StringBuilder();
+        int start = sorted.get(0);
+        int end = start;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i < sorted.size() && sorted.get(i) == end + 1) {
+                end++;
+                continue;
+            }
+            String range = start + "-" + end;
+            if (!ranges.isEmpty() && ranges.length() + range.length() + 1 > maxLength) {
+                payloads.add(ranges.toString());
+                ranges.setLength(0);
+            }
+            if (!ranges.isEmpty()) {
+                ranges.append(',');
+            }
+            ranges.append(range);
+            if (i < sorted.size()) {
+                start = sorted.get(i);
+                end = start;
+            }
+        }
+        payloads.add(ranges.toString());
+        return payloads;
+    }
+
+    static List<Integer> fromRanges(String ranges) {
+        List<Integer> bookIds = new ArrayList<>();
+        for (String range : ranges.split(",")) {
+            int separator = range.indexOf('-');
+            int end = Integer.parseInt(range.substring(separator + 1));
+            for (int id = Integer.parseInt(range.substring(0, separator)); id <= end; id++) {
+                bookIds.add(id);
+            }
+        }
+        return bookIds;
+    }
+
+    public record BookChangesMissedEvent() {}
+}
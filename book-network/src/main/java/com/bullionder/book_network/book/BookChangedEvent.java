@@ -0,0 +1,8 @@
+package com.bullionder.book_network.book;
+
+public record BookChangedEvent(Integer bookId, boolean remote) {
+
+    public BookChangedEvent(Integer bookId) {
+        this(bookId, false);
+    }
+}
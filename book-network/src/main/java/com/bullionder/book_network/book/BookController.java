@@ -1,13 +1,24 @@
 package com.bullionder.book_network.book;
 
+import com.bullionder.book_network.book.file.CoverSize;
+import com.bullionder.book_network.book.file.FileStreamingService;
+import com.bullionder.book_network.common.ConditionalRequests;
 import com.bullionder.book_network.common.PageResponse;
+import com.bullionder.book_network.common.TotalMode;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 @RestController
@@ -17,47 +28,152 @@ import org.springframework.web.multipart.MultipartFile;
 public class BookController {
 
     private final BookService service;
+    private final FileStreamingService fileStreamingService;
+    private final BookImportService bookImportService;
 
     @PostMapping
     public ResponseEntity<Integer> saveBook(@Valid @RequestBody BookRequest request, Authentication connectedUser) {
         return ResponseEntity.ok(service.save(request, connectedUser));
     }
 
+    @PostMapping(
+            value = "/import",
+            consumes = {BookImportService.TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BookImportResponse> importBooks(HttpServletRequest request, Authentication connectedUser)
+            throws IOException {
+        return ResponseEntity.ok(
+                bookImportService.importBooks(request.getInputStream(), request.getContentType(), connectedUser));
+    }
+
     @GetMapping("{book-id}")
-    public ResponseEntity<BookResponse> findBookById(@PathVariable("book-id") Integer bookId) {
+    public ResponseEntity<BookResponse> findBookById(
+            @PathVariable("book-id") Integer bookId, ServletWebRequest webRequest) {
+        if (ConditionalRequests.checkNotModified(webRequest, service.findBookVersion(bookId))) {
+            return null;
+        }
         return ResponseEntity.ok(service.findById(bookId));
     }
 
+    @GetMapping("{book-id}/cover")
+    public void findBookCover(
+            @PathVariable("book-id") Integer bookId,
+            @RequestParam(name = "size", required = false) CoverSize size,
+            HttpServletRequest request,
+            HttpServletResponse response)
+            throws IOException {
+        fileStreamingService.streamCover(service.findBookCoverLocation(bookId), size, request, response);
+    }
+
     @GetMapping
     public ResponseEntity<PageResponse<BookResponse>> findAllBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            @RequestParam(name = "total", defaultValue = "EXACT", required = false) TotalMode total,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "tag", required = false) String tag,
+            @RequestParam(name = "available", defaultValue = "false", required = false) boolean availableOnly,
+            Authentication connectedUser) {
+        if (cursor != null) {
+            return ResponseEntity.ok(service.findAllBooks(cursor, size, tag, availableOnly, connectedUser));
+        }
+        return ResponseEntity.ok(service.findAllBooks(page, size, total, tag, availableOnly, connectedUser));
+    }
+
+    @GetMapping("/facets")
+    public ResponseEntity<BookFacetsResponse> findFacets(@RequestParam(name = "tag", required = false) String tag) {
+        return ResponseEntity.ok(service.findFacets(tag));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<PageResponse<BookResponse>> searchBooks(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            Authentication connectedUser) {
+        return ResponseEntity.ok(service.searchBooks(query, cursor, size, connectedUser));
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<BookSuggestionResponse>> suggestBooks(
+            @RequestParam(name = "prefix") String prefix,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size,
             Authentication connectedUser) {
-        return ResponseEntity.ok(service.findAllBooks(page, size, connectedUser));
+        return ResponseEntity.ok(service.suggestBooks(prefix, size, connectedUser));
     }
 
     @GetMapping("/owner")
     public ResponseEntity<PageResponse<BookResponse>> findAllBooksByOwner(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
-            Authentication connectedUser) {
-        return ResponseEntity.ok(service.findAllBooksByOwner(page, size, connectedUser));
+            @RequestParam(name = "total", defaultValue = "EXACT", required = false) TotalMode total,
+            Authentication connectedUser,
+            ServletWebRequest webRequest) {
+        if (ConditionalRequests.checkNotModified(webRequest, service.findOwnerBooksVersion(connectedUser))) {
+            return null;
+        }
+        return ResponseEntity.ok(service.findAllBooksByOwner(page, size, total, connectedUser));
     }
 
     @GetMapping("/borrowed")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllBorrowedBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
-            Authentication connectedUser) {
-        return ResponseEntity.ok(service.findAllBorrowedBooks(page, size, connectedUser));
+            @RequestParam(name = "total", defaultValue = "EXACT", required = false) TotalMode total,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "archived", defaultValue = "false", required = false) boolean archived,
+            Authentication connectedUser,
+            ServletWebRequest webRequest) {
+        // the version only covers the live history, archived pages are always served in full
+        if (!archived
+                && ConditionalRequests.checkNotModified(webRequest, service.findBorrowedBooksVersion(connectedUser))) {
+            return null;
+        }
+        if (cursor != null) {
+            return ResponseEntity.ok(service.findAllBorrowedBooks(cursor, size, archived, connectedUser));
+        }
+        return ResponseEntity.ok(service.findAllBorrowedBooks(page, size, total, archived, connectedUser));
     }
 
     @GetMapping("/returned")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllReturnedBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            @RequestParam(name = "total", defaultValue = "EXACT", required = false) TotalMode total,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "archived", defaultValue = "false", required = false) boolean archived,
+            Authentication connectedUser,
+            ServletWebRequest webRequest) {
+        // the version only covers the live history, archived pages are always served in full
+        if (!archived
+                && ConditionalRequests.checkNotModified(webRequest, service.findReturnedBooksVersion(connectedUser))) {
+            return null;
+        }
+        if (cursor != null) {
+            return ResponseEntity.ok(service.findAllReturnedBooks(cursor, size, archived, connectedUser));
+        }
+        return ResponseEntity.ok(service.findAllReturnedBooks(page, size, total, archived, connectedUser));
+    }
+
+    @PutMapping("{book-id}/tags")
+    public ResponseEntity<Integer> updateTags(
+            @PathVariable("book-id") Integer bookId, @RequestBody List<String> tags, Authentication connectedUser) {
+        return ResponseEntity.ok(service.updateTags(connectedUser, bookId, tags));
+    }
+
+    @PatchMapping("/shareable")
+    public ResponseEntity<List<Integer>> updateShareableStatus(
+            @RequestParam(name = "value") boolean shareable,
+            @RequestBody BookSelectionRequest selection,
             Authentication connectedUser) {
-        return ResponseEntity.ok(service.findAllReturnedBooks(page, size, connectedUser));
+        return ResponseEntity.ok(service.updateShareableStatus(connectedUser, selection, shareable));
+    }
+
+    @PatchMapping("/archived")
+    public ResponseEntity<List<Integer>> updateArchivedStatus(
+            @RequestParam(name = "value") boolean archived,
+            @RequestBody BookSelectionRequest selection,
+            Authentication connectedUser) {
+        return ResponseEntity.ok(service.updateArchivedStatus(connectedUser, selection, archived));
     }
 
     @PatchMapping("/shareable/{book-id}")
@@ -89,6 +205,17 @@ public class BookController {
         return ResponseEntity.ok(service.approveReturnBorrowedBook(connectedUser, bookId));
     }
 
+    @PostMapping("/borrow/return/approve")
+    public ResponseEntity<List<Integer>> approveReturnBorrowedBooks(
+            @RequestBody BookSelectionRequest selection, Authentication connectedUser) {
+        return ResponseEntity.ok(service.approveReturnBorrowedBooks(connectedUser, selection));
+    }
+
+    @GetMapping("/cover/{book-id}/status")
+    public ResponseEntity<CoverStatusResponse> findBookCoverStatus(@PathVariable("book-id") Integer bookId) {
+        return ResponseEntity.ok(service.findBookCoverStatus(bookId));
+    }
+
     @PostMapping(value = "/cover/{book-id}", consumes = "multipart/form-data")
     public ResponseEntity<?> uploadBookCoverPicture(
             @PathVariable("book-id") Integer bookId,
@@ -97,4 +224,47 @@ public class BookController {
         service.uploadBookCoverPicture(file, connectedUser, bookId);
         return ResponseEntity.accepted().build();
     }
+
+    @PostMapping("/cover/{book-id}/uploads")
+    public ResponseEntity<CoverUploadResponse> createCoverUpload(
+            @PathVariable("book-id") Integer bookId,
+            @RequestParam(name = "length", required = false) Long length,
+            @RequestParam(name = "fileName", required = false) String fileName,
+            Authentication connectedUser)
+            throws IOException {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(service.createCoverUpload(bookId, length, fileName, connectedUser));
+    }
+
+    @GetMapping("/cover/uploads/{upload-id}")
+    public ResponseEntity<CoverUploadResponse> findCoverUpload(
+            @PathVariable("upload-id") String uploadId, Authentication connectedUser) {
+        return ResponseEntity.ok(service.findCoverUpload(uploadId, connectedUser));
+    }
+
+    @PatchMapping(
+            value = "/cover/uploads/{upload-id}",
+            consumes = {"application/offset+octet-stream", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<CoverUploadResponse> uploadCoverChunk(
+            @PathVariable("upload-id") String uploadId,
+            @RequestHeader("Upload-Offset") long offset,
+            HttpServletRequest request,
+            Authentication connectedUser)
+            throws IOException {
+        return ResponseEntity.ok(service.uploadCoverChunk(uploadId, offset, request.getInputStream(), connectedUser));
+    }
+
+    @PostMapping("/cover/uploads/{upload-id}/complete")
+    public ResponseEntity<?> completeCoverUpload(
+            @PathVariable("upload-id") String uploadId, Authentication connectedUser) throws IOException {
+        service.completeCoverUpload(uploadId, connectedUser);
+        return ResponseEntity.accepted().build();
+    }
+
+    @DeleteMapping("/cover/uploads/{upload-id}")
+    public ResponseEntity<?> cancelCoverUpload(
+            @PathVariable("upload-id") String uploadId, Authentication connectedUser) {
+        service.cancelCoverUpload(uploadId, connectedUser);
+        return ResponseEntity.noContent().build();
+    }
 }
@@ -0,0 +1,7 @@
+package com.bullionder.book_network.book;
+
+public enum BookFacet {
+    TAG,
+    RATING,
+    AVAILABLE
+}
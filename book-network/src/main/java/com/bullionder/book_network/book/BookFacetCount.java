@@ -0,0 +1,43 @@
+package com.bullionder.book_network.book;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "book_facet_count")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookFacetCount {
+
+    @EmbeddedId
+    private Key key;
+
+    private long bookCount;
+
+    // scope is empty for catalog-wide counts and holds a tag for the counts inside that tag
+    @Embeddable
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        @Enumerated(EnumType.STRING)
+        @Column(length = 20)
+        private BookFacet facet;
+
+        @Column(length = BookTags.MAX_TAG_LENGTH)
+        private String scope;
+
+        @Column(name = "facet_value", length = BookTags.MAX_TAG_LENGTH)
+        private String value;
+    }
+}
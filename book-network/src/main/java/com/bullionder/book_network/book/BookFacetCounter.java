@@ -0,0 +1,160 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.book.BookFacetRepository.FacetKey;
+import com.bullionder.book_network.book.BookFacetRepository.FacetState;
+import com.bullionder.book_network.book.BookFacetRepository.Membership;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+@Slf4j
+public class BookFacetCounter {
+
+    private static final String CATALOG = "";
+    private static final int RATING_BUCKETS = 6;
+
+    private final BookFacetRepository facetRepository;
+    private final BookRepository bookRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public BookFacetCounter(
+            BookFacetRepository facetRepository,
+            BookRepository bookRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${application.book-facets.batch-size:500}") int batchSize) {
+        this.facetRepository = facetRepository;
+        this.bookRepository = bookRepository;
+        // change events arrive after the commit of the change, so the counts need a transaction of their own
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = batchSize;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (!event.remote()) {
+            refreshQuietly(List.of(event.bookId()));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksChanged(BooksChangedEvent event) {
+        if (event.remote()) {
+            return;
+        }
+        List<Integer> bookIds = event.bookIds();
+        for (int from = 0; from < bookIds.size(); from += batchSize) {
+            refreshQuietly(bookIds.subList(from, Math.min(bookIds.size(), from + batchSize)));
+        }
+    }
+
+    public BookFacetsResponse findFacets(String tag, int maxTags) {
+        String scope = tag == null ? CATALOG : tag;
+        return BookFacetsResponse.builder()
+                .tag(tag)
+                .tags(facetRepository.findCounts(BookFacet.TAG, CATALOG, maxTags))
+                .ratings(facetRepository.findCounts(BookFacet.RATING, scope, RATING_BUCKETS))
+                .availability(facetRepository.findCounts(BookFacet.AVAILABLE, scope, 2))
+                .build();
+    }
+
+    // events can be lost when a node stops between the commit and the refresh, this bounds the drift
+    @Scheduled(
+            initialDelayString = "${application.book-facets.reconciler.initial-delay:PT1M}",
+            fixedDelayString = "${application.book-facets.reconciler.interval:PT24H}")
+    public void reconcile() {
+        int afterId = 0;
+        int repaired = 0;
+        while (true) {
+            final int lastId = afterId;
+            ReconciledBatch batch = transactionTemplate.execute(status -> {
+                List<Integer> bookIds = bookRepository.lockBookIdsAfter(lastId, batchSize);
+                if (bookIds.isEmpty()) {
+                    return null;
+                }
+                return new ReconciledBatch(bookIds.get(bookIds.size() - 1), refresh(bookIds));
+            });
+            if (batch == null) {
+                break;
+            }
+            afterId = batch.lastBookId();
+            repaired += batch.changedMemberships();
+        }
+        transactionTemplate.executeWithoutResult(status -> facetRepository.removeEmptyCounts());
+        log.info("Facet reconciliation changed {} facet memberships", repaired);
+    }
+
+    private void refreshQuietly(List<Integer> bookIds) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> refresh(bookIds));
+        } catch (RuntimeException e) {
+            log.warn("Facet counts of books {} could not be refreshed, the reconciler will repair them", bookIds, e);
+        }
+    }
+
+    int refresh(Collection<Integer> bookIds) {
+        List<FacetState> states = facetRepository.lockFacetStates(bookIds);
+        Map<Integer, List<String>> tags = facetRepository.findTags(bookIds);
+        Set<Membership> current = new HashSet<>();
+        for (FacetState state : states) {
+            current.addAll(memberships(state, tags.getOrDefault(state.bookId(), List.of())));
+        }
+        Set<Membership> stored = facetRepository.findMemberships(bookIds);
+
+        Set<Membership> added = new HashSet<>(current);
+        added.removeAll(stored);
+        Set<Membership> removed = new HashSet<>(stored);
+        removed.removeAll(current);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        Map<FacetKey, Long> deltas = new TreeMap<>();
+        added.forEach(membership -> deltas.merge(membership.key(), 1L, Long::sum));
+        removed.forEach(membership -> deltas.merge(membership.key(), -1L, Long::sum));
+        deltas.values().removeIf(delta -> delta == 0);
+
+        facetRepository.removeMemberships(removed);
+        facetRepository.addMemberships(added);
+        if (!deltas.isEmpty()) {
+            facetRepository.addToCounts(deltas);
+        }
+        return added.size() + removed.size();
+    }
+
+    static Set<Membership> memberships(FacetState state, List<String> tags) {
+        Set<Membership> memberships = new HashSet<>();
+        // facets describe the shared catalog, so archived or private books count nowhere
+        if (state.archived() || !state.shareable()) {
+            return memberships;
+        }
+        String rating = ratingBucket(state.ratingSum(), state.ratingCount());
+        String available = String.valueOf(!state.borrowed());
+        memberships.add(new Membership(state.bookId(), new FacetKey(BookFacet.RATING, CATALOG, rating)));
+        memberships.add(new Membership(state.bookId(), new FacetKey(BookFacet.AVAILABLE, CATALOG, available)));
+        for (String tag : tags) {
+            memberships.add(new Membership(state.bookId(), new FacetKey(BookFacet.TAG, CATALOG, tag)));
+            memberships.add(new Membership(state.bookId(), new FacetKey(BookFacet.RATING, tag, rating)));
+            memberships.add(new Membership(state.bookId(), new FacetKey(BookFacet.AVAILABLE, tag, available)));
+        }
+        return memberships;
+    }
+
+    static String ratingBucket(double ratingSum, int ratingCount) {
+        return String.valueOf((int) Math.floor(Book.averageRating(ratingSum, ratingCount)));
+    }
+
+    private record ReconciledBatch(int lastBookId, int changedMemberships) {}
+}
@@ -0,0 +1,43 @@
+package com.bullionder.book_network.book;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// what each book currently contributes to book_facet_count, so a change only applies the difference
+@Entity
+@Table(name = "book_facet_member")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookFacetMember {
+
+    @EmbeddedId
+    private Key key;
+
+    @Embeddable
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private Integer bookId;
+
+        @Enumerated(EnumType.STRING)
+        @Column(length = 20)
+        private BookFacet facet;
+
+        @Column(length = BookTags.MAX_TAG_LENGTH)
+        private String scope;
+
+        @Column(name = "facet_value", length = BookTags.MAX_TAG_LENGTH)
+        private String value;
+    }
+}
@@ -0,0 +1,164 @@
+package com.bullionder.book_network.book;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class BookFacetRepository {
+
+    private static final String FIND_FACET_STATES =
+            """
+            SELECT book.id, book.archived, book.shareable, book.rating_sum, book.rating_count,
+                book.current_borrower_id IS NOT NULL AS borrowed
+            FROM book
+            WHERE book.id IN (:bookIds)
+            ORDER BY book.id
+            FOR UPDATE
+            """;
+
+    private static final String ADD_TO_COUNT =
+            """
+            INSERT INTO book_facet_count (facet, scope, facet_value, book_count)
+            VALUES (:facet, :scope, :value, :delta)
+            ON CONFLICT (facet, scope, facet_value)
+            DO UPDATE SET book_count = book_facet_count.book_count + EXCLUDED.book_count
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // the rows stay locked until commit, so two refreshes of the same book never apply the same delta twice
+    public List<FacetState> lockFacetStates(Collection<Integer> bookIds) {
+        return jdbcTemplate.query(
+                FIND_FACET_STATES,
+                new MapSqlParameterSource("bookIds", bookIds),
+                (resultSet, rowNumber) -> new FacetState(
+                        resultSet.getInt("id"),
+                        resultSet.getBoolean("archived"),
+                        resultSet.getBoolean("shareable"),
+                        resultSet.getDouble("rating_sum"),
+                        resultSet.getInt("rating_count"),
+                        resultSet.getBoolean("borrowed")));
+    }
+
+    public Map<Integer, List<String>> findTags(Collection<Integer> bookIds) {
+        Map<Integer, List<String>> tags = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT book_id, tag FROM book_tag WHERE book_id IN (:bookIds)",
+                new MapSqlParameterSource("bookIds", bookIds),
+                resultSet -> {
+                    tags.computeIfAbsent(resultSet.getInt("book_id"), id -> new ArrayList<>())
+                            .add(resultSet.getString("tag"));
+                });
+        return tags;
+    }
+
+    public Set<Membership> findMemberships(Collection<Integer> bookIds) {
+        Set<Membership> memberships = new HashSet<>();
+        jdbcTemplate.query(
+                "SELECT book_id, facet, scope, facet_value FROM book_facet_member WHERE book_id IN (:bookIds)",
+                new MapSqlParameterSource("bookIds", bookIds),
+                resultSet -> {
+                    memberships.add(new Membership(
+                            resultSet.getInt("book_id"),
+                            new FacetKey(
+                                    BookFacet.valueOf(resultSet.getString("facet")),
+                                    resultSet.getString("scope"),
+                                    resultSet.getString("facet_value"))));
+                });
+        return memberships;
+    }
+
+    public void addMemberships(Collection<Membership> memberships) {
+        jdbcTemplate.batchUpdate(
+                """
+                INSERT INTO book_facet_member (book_id, facet, scope, facet_value)
+                VALUES (:bookId, :facet, :scope, :value)
+                """,
+                memberships.stream().map(BookFacetRepository::toParameters).toArray(SqlParameterSource[]::new));
+    }
+
+    public void removeMemberships(Collection<Membership> memberships) {
+        jdbcTemplate.batchUpdate(
+                """
+                DELETE FROM book_facet_member
+                WHERE book_id = :bookId AND facet = :facet AND scope = :scope AND facet_value = :value
+                """,
+                memberships.stream().map(BookFacetRepository::toParameters).toArray(SqlParameterSource[]::new));
+    }
+
+    // deltas arrive sorted, so concurrent refreshes lock the shared count rows in the same order
+    public void addToCounts(Map<FacetKey, Long> deltas) {
+        jdbcTemplate.batchUpdate(
+                ADD_TO_COUNT,
+                deltas.entrySet().stream()
+                        .map(delta -> new MapSqlParameterSource()
+                                .addValue("facet", delta.getKey().facet().name())
+                                .addValue("scope", delta.getKey().scope())
+                                .addValue("value", delta.getKey().value())
+                                .addValue("delta", delta.getValue()))
+                        .toArray(SqlParameterSource[]::new));
+    }
+
+    public int removeEmptyCounts() {
+        return jdbcTemplate.update("DELETE FROM book_facet_count WHERE book_count = 0", new MapSqlParameterSource());
+    }
+
+    public Map<String, Long> findCounts(BookFacet facet, String scope, int limit) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                """
+                SELECT facet_value, book_count
+                FROM book_facet_count
+                WHERE facet = :facet
+                AND scope = :scope
+                AND book_count > 0
+                ORDER BY book_count DESC, facet_value
+                LIMIT :limit
+                """,
+                new MapSqlParameterSource()
+                        .addValue("facet", facet.name())
+                        .addValue("scope", scope)
+                        .addValue("limit", limit),
+                resultSet -> {
+                    counts.put(resultSet.getString("facet_value"), resultSet.getLong("book_count"));
+                });
+        return counts;
+    }
+
+    private static SqlParameterSource toParameters(Membership membership) {
+        return new MapSqlParameterSource()
+                .addValue("bookId", membership.bookId())
+                .addValue("facet", membership.key().facet().name())
+                .addValue("scope", membership.key().scope())
+                .addValue("value", membership.key().value());
+    }
+
+    public record FacetState(
+            int bookId, boolean archived, boolean shareable, double ratingSum, int ratingCount, boolean borrowed) {}
+
+    public record FacetKey(BookFacet facet, String scope, String value) implements Comparable<FacetKey> {
+
+        @Override
+        public int compareTo(FacetKey other) {
+            int byFacet = facet.compareTo(other.facet);
+            if (byFacet != 0) {
+                return byFacet;
+            }
+            int byScope = scope.compareTo(other.scope);
+            return byScope != 0 ? byScope : value.compareTo(other.value);
+        }
+    }
+
+    public record Membership(int bookId, FacetKey key) {}
+}
@@ -0,0 +1,17 @@
+package com.bullionder.book_network.book;
+
+import java.util.Map;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookFacetsResponse {
+
+    private String tag;
+    private Map<String, Long> tags;
+    private Map<String, Long> ratings;
+    private Map<String, Long> availability;
+}
@@ -0,0 +1,17 @@
+package com.bullionder.book_network.book;
+
+import java.util.List;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookImportResponse {
+
+    private long imported;
+    private long failed;
+    private boolean errorsTruncated;
+    private List<BookImportError> errors;
+}
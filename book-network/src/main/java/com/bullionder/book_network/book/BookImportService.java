@@ -0,0 +1,393 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.user.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+@Slf4j
+public class BookImportService {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+    private static final String INSERT_BOOK =
+            """
+            INSERT INTO book (id, title, author_name, isbn, synopsis, archived, shareable,
+                rating_sum, rating_count, version, owner_id, created_date, created_by)
+            VALUES (?, ?, ?, ?, ?, false, ?, 0, 0, 0, ?, ?, ?)
+            """;
+    private static final String INSERT_TAG = "INSERT INTO book_tag (book_id, tag) VALUES (?, ?)";
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader bookRequestReader;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+    private final int maxRecordLength;
+    private final String sequenceName;
+    private final int defaultSequenceIncrement;
+    private volatile Integer sequenceIncrement;
+
+    public BookImportService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${application.book-import.batch-size:500}") int batchSize,
+            @Value("${application.book-import.chunk-size:5000}") int chunkSize,
+            @Value("${application.book-import.max-reported-errors:1000}") int maxReportedErrors,
+            @Value("${application.book-import.max-record-length:65536}") int maxRecordLength,
+            @Value("${application.book-import.sequence-name:book_seq}") String sequenceName,
+            @Value("${application.book-import.sequence-increment:50}") int defaultSequenceIncrement) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.bookRequestReader = objectMapper.readerFor(BookRequest.class);
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.maxRecordLength = maxRecordLength;
+        this.sequenceName = sequenceName;
+        this.defaultSequenceIncrement = defaultSequenceIncrement;
+    }
+
+    public BookImportResponse importBooks(InputStream body, String contentType, Authentication connectedUser)
+            throws IOException {
+        User user = (User) connectedUser.getPrincipal();
+        MediaType mediaType = parseMediaType(contentType);
+        Charset charset = mediaType.getCharset() == null ? StandardCharsets.UTF_8 : mediaType.getCharset();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, charset), 64 * 1024);
+        RowReader rows;
+        if (TEXT_CSV.isCompatibleWith(mediaType)) {
+            rows = new CsvRows(new CsvRecordReader(reader, maxRecordLength));
+        } else if (MediaType.APPLICATION_NDJSON.isCompatibleWith(mediaType)) {
+            rows = new NdjsonRows(reader);
+        } else {
+            throw new OperationNotPermittedException(
+                    "Books can only be imported from text/csv or application/x-ndjson");
+        }
+
+        ImportProgress progress = new ImportProgress();
+        PooledIds ids = new PooledIds(sequenceIncrement());
+        List<ParsedRow> chunk = new ArrayList<>(chunkSize);
+        ParsedRow row;
+        while ((row = rows.next()) != null) {
+            String error = row.error() != null ? row.error() : validate(row.request());
+            if (error != null) {
+                progress.fail(row.row(), error);
+                continue;
+            }
+            try {
+                chunk.add(new ParsedRow(
+                        row.row(),
+                        row.request(),
+                        null,
+                        BookTags.normalize(row.request().tags())));
+            } catch (OperationNotPermittedException e) {
+                progress.fail(row.row(), e.getMessage());
+                continue;
+            }
+            if (chunk.size() == chunkSize) {
+                storeChunk(chunk, user.getId(), ids, progress);
+                chunk.clear();
+            }
+        }
+        storeChunk(chunk, user.getId(), ids, progress);
+        log.info("Imported {} books for user {}, {} rows rejected", progress.imported, user.getId(), progress.failed);
+        return BookImportResponse.builder()
+                .imported(progress.imported)
+                .failed(progress.failed)
+                .errorsTruncated(progress.failed > progress.errors.size())
+                .errors(progress.errors)
+                .build();
+    }
+
+    private void storeChunk(List<ParsedRow> chunk, Integer ownerId, PooledIds ids, ImportProgress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Integer> bookIds = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            bookIds.add(ids.next());
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            // each chunk commits on its own, so a failure only costs the rows of that chunk
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_BOOK, indexes(chunk.size()), batchSize, (statement, index) -> {
+                    BookRequest request = chunk.get(index).request();
+                    statement.setInt(1, bookIds.get(index));
+                    statement.setString(2, request.title().strip());
+                    statement.setString(3, request.authorName().strip());
+                    statement.setString(4, request.isbn());
+                    statement.setString(5, request.synopsis());
+                    statement.setBoolean(6, request.shareable());
+                    statement.setInt(7, ownerId);
+                    statement.setTimestamp(8, now);
+                    statement.setInt(9, ownerId);
+                });
+                jdbcTemplate.batchUpdate(INSERT_TAG, tagRows(chunk, bookIds), batchSize, (statement, tag) -> {
+                    statement.setInt(1, tag.bookId());
+                    statement.setString(2, tag.tag());
+                });
+            });
+        } catch (DataAccessException e) {
+            log.warn("Book import chunk of {} rows was rolled back", chunk.size(), e);
+            String message = "Not stored: "
+                    + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            chunk.forEach(row -> progress.fail(row.row(), message));
+            return;
+        }
+        progress.imported += chunk.size();
+        eventPublisher.publishEvent(new BooksChangedEvent(bookIds));
+    }
+
+    private int sequenceIncrement() {
+        Integer increment = sequenceIncrement;
+        if (increment == null) {
+            try {
+                increment = jdbcTemplate.queryForObject(
+                        "SELECT increment_by FROM pg_sequences WHERE sequencename = ?", Integer.class, sequenceName);
+            } catch (DataAccessException e) {
+                log.warn("Could not read the increment of {}, assuming {}", sequenceName, defaultSequenceIncrement);
+                increment = defaultSequenceIncrement;
+            }
+            sequenceIncrement = increment;
+        }
+        return increment;
+    }
+
+    private static String validate(BookRequest request) {
+        if (request == null) {
+            return "Row is empty";
+        }
+        if (request.title() == null || request.title().isBlank()) {
+            return "Title is required";
+        }
+        if (request.authorName() == null || request.authorName().isBlank()) {
+            return "Author name is required";
+        }
+        if (tooLong(request.title())
+                || tooLong(request.authorName())
+                || tooLong(request.isbn())
+                || tooLong(request.synopsis())) {
+            return "Values are limited to " + MAX_COLUMN_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > MAX_COLUMN_LENGTH;
+    }
+
+    private static MediaType parseMediaType(String contentType) {
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            throw new OperationNotPermittedException(
+                    "Books can only be imported from text/csv or application/x-ndjson");
+        }
+    }
+
+    private static List<TagRow> tagRows(List<ParsedRow> chunk, List<Integer> bookIds) {
+        List<TagRow> tagRows = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            for (String tag : chunk.get(i).tags()) {
+                tagRows.add(new TagRow(bookIds.get(i), tag));
+            }
+        }
+        return tagRows;
+    }
+
+    private static List<Integer> indexes(int size) {
+        List<Integer> indexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private class PooledIds {
+
+        private final int increment;
+        private int next = 1;
+        private int hi;
+
+        PooledIds(int increment) {
+            this.increment = increment;
+        }
+
+        // same contract as Hibernate's pooled optimizer: each nextval is the upper end of a block of ids,
+        // so imported rows and entities saved through JPA never collide while sharing the sequence
+        int next() {
+            if (next > hi) {
+                hi = jdbcTemplate.queryForObject("SELECT nextval(CAST(? AS regclass))", Integer.class, sequenceName);
+                next = Math.max(1, hi - increment + 1);
+            }
+            return next++;
+        }
+    }
+
+    private class ImportProgress {
+
+        private final List<BookImportError> errors = new ArrayList<>();
+        private long imported;
+        private long failed;
+
+        void fail(long row, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new BookImportError(row, message));
+            }
+        }
+    }
+
+    private record ParsedRow(long row, BookRequest request, String error, Set<String> tags) {
+
+        ParsedRow(long row, BookRequest request, String error) {
+            this(row, request, error, Set.of());
+        }
+    }
+
+    private record TagRow(int bookId, String tag) {}
+
+    private interface RowReader {
+
+        ParsedRow next() throws IOException;
+    }
+
+    private class NdjsonRows implements RowReader {
+
+        private final BufferedReader reader;
+        private long line;
+
+        NdjsonRows(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            String json;
+            do {
+                json = reader.readLine();
+                line++;
+            } while (json != null && json.isBlank());
+            if (json == null) {
+                return null;
+            }
+            if (json.length() > maxRecordLength) {
+                return new ParsedRow(line, null, "Record exceeds " + maxRecordLength + " characters");
+            }
+            try {
+                return new ParsedRow(line, bookRequestReader.readValue(json), null);
+            } catch (JsonProcessingException e) {
+                return new ParsedRow(line, null, "Malformed JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    private static class CsvRows implements RowReader {
+
+        private static final Pattern TAG_SEPARATOR = Pattern.compile("[;|]");
+
+        private final CsvRecordReader reader;
+        private Map<String, Integer> columns;
+
+        CsvRows(CsvRecordReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            if (columns == null) {
+                readHeader();
+            }
+            CsvRecordReader.CsvRecord record = reader.next();
+            if (record == null) {
+                return null;
+            }
+            if (record.error() != null) {
+                return new ParsedRow(record.line(), null, record.error());
+            }
+            List<String> fields = record.fields();
+            BookRequest request = new BookRequest(
+                    field(fields, "title"),
+                    field(fields, "authorname"),
+                    emptyToNull(field(fields, "isbn")),
+                    emptyToNull(field(fields, "synopsis")),
+                    null,
+                    false,
+                    parseBoolean(field(fields, "shareable")),
+                    parseTags(field(fields, "tags")));
+            return new ParsedRow(record.line(), request, null);
+        }
+
+        private void readHeader() throws IOException {
+            CsvRecordReader.CsvRecord header = reader.next();
+            if (header == null || header.error() != null) {
+                throw new OperationNotPermittedException("The CSV import needs a header row");
+            }
+            columns = new HashMap<>();
+            for (int i = 0; i < header.fields().size(); i++) {
+                String name =
+                        header.fields().get(i).strip().toLowerCase(Locale.ROOT).replace("_", "");
+                columns.putIfAbsent(name.equals("author") ? "authorname" : name, i);
+            }
+            if (!columns.containsKey("title") || !columns.containsKey("authorname")) {
+                throw new OperationNotPermittedException("The CSV header must name the title and authorName columns");
+            }
+        }
+
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            return index == null || index >= fields.size() ? null : fields.get(index);
+        }
+
+        private static String emptyToNull(String value) {
+            return value == null || value.isBlank() ? null : value.strip();
+        }
+
+        private static List<String> parseTags(String value) {
+            return value == null || value.isBlank() ? List.of() : List.of(TAG_SEPARATOR.split(value));
+        }
+
+        private static boolean parseBoolean(String value) {
+            if (value == null) {
+                return false;
+            }
+            String normalized = value.strip().toLowerCase(Locale.ROOT);
+            return normalized.equals("true") || normalized.equals("yes") || normalized.equals("1");
+        }
+    }
+}
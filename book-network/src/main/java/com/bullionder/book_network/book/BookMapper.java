@@ -1,7 +1,13 @@
 package com.bullionder.book_network.book;
 
+import com.bullionder.book_network.book.file.CoverProcessingStatus;
+import com.bullionder.book_network.book.file.CoverSize;
+import com.bullionder.book_network.book.file.CoverUploadSession;
 import com.bullionder.book_network.book.file.FileUtils;
-import com.bullionder.book_network.history.BookTransactionHistory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -15,10 +21,15 @@ public class BookMapper {
                 .bookCover(request.bookCover())
                 .isbn(request.isbn())
                 .authorName(request.authorName())
+                .tags(BookTags.normalize(request.tags()))
                 .build();
     }
 
     public BookResponse toBookResponse(Book book) {
+        return toBookResponse(book, null);
+    }
+
+    public BookResponse toBookResponse(Book book, CoverSize coverSize) {
         return BookResponse.builder()
                 .id(book.getId())
                 .title(book.getTitle())
@@ -27,21 +38,75 @@ public class BookMapper {
                 .shareable(book.isShareable())
                 .rate(book.getRate())
                 .owner(book.getOwner().fullName())
-                .cover(FileUtils.readFileFromLocation(book.getBookCover()))
+                .coverUrl(toCoverUrl(book, coverSize))
                 .isbn(book.getIsbn())
                 .authorName(book.getAuthorName())
+                .tags(List.copyOf(book.getTags()))
                 .build();
     }
 
-    public BorrowedBookResponse toBorrowedBookResponse(BookTransactionHistory history) {
+    public BookResponse toBookResponse(BookSummary book, List<String> tags, CoverSize coverSize) {
+        return BookResponse.builder()
+                .id(book.id())
+                .title(book.title())
+                .synopsis(book.synopsis())
+                .archived(book.archived())
+                .shareable(book.shareable())
+                .rate(book.rate())
+                .owner(book.ownerFullName())
+                .coverUrl(toCoverUrl(book.id(), book.bookCover(), coverSize))
+                .isbn(book.isbn())
+                .authorName(book.authorName())
+                .tags(tags)
+                .build();
+    }
+
+    public String toCoverUrl(Book book, CoverSize coverSize) {
+        return toCoverUrl(book.getId(), book.getBookCover(), coverSize);
+    }
+
+    public String toCoverUrl(Integer bookId, String bookCover, CoverSize coverSize) {
+        if (StringUtils.isBlank(bookCover)) {
+            return null;
+        }
+        String coverUrl = "/books/" + bookId + "/cover?v=" + FileUtils.fileVersion(bookCover);
+        return coverSize == null ? coverUrl : coverUrl + "&size=" + coverSize.name();
+    }
+
+    public CoverStatusResponse toCoverStatusResponse(Book book, CoverProcessingStatus status) {
+        Map<CoverSize, String> thumbnailUrls = new EnumMap<>(CoverSize.class);
+        if (status == CoverProcessingStatus.READY) {
+            for (CoverSize size : CoverSize.values()) {
+                thumbnailUrls.put(size, toCoverUrl(book, size));
+            }
+        }
+        return CoverStatusResponse.builder()
+                .id(book.getId())
+                .status(status)
+                .coverUrl(toCoverUrl(book, null))
+                .thumbnailUrls(thumbnailUrls)
+                .build();
+    }
+
+    public BorrowedBookResponse toBorrowedBookResponse(BorrowedBookSummary history) {
         return BorrowedBookResponse.builder()
-                .id(history.getBook().getId())
-                .title(history.getBook().getTitle())
-                .rate(history.getBook().getRate())
-                .isbn(history.getBook().getIsbn())
-                .returned(history.isReturned())
-                .returnApproved(history.isReturnApproved())
-                .authorName(history.getBook().getAuthorName())
+                .id(history.bookId())
+                .title(history.title())
+                .rate(history.rate())
+                .isbn(history.isbn())
+                .returned(history.returned())
+                .returnApproved(history.returnApproved())
+                .authorName(history.authorName())
+                .build();
+    }
+
+    public CoverUploadResponse toCoverUploadResponse(CoverUploadSession session) {
+        return CoverUploadResponse.builder()
+                .uploadId(session.getId())
+                .bookId(session.getBookId())
+                .offset(session.getOffset())
+                .length(session.getLength())
+                .expiresAt(session.getExpiresAt())
                 .build();
     }
 }
@@ -1,20 +1,275 @@
 package com.bullionder.book_network.book;
 
-import org.springframework.data.domain.Page;
+import com.bullionder.book_network.common.ContentVersion;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
 public interface BookRepository extends JpaRepository<Book, Integer>, JpaSpecificationExecutor<Book> {
 
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BookSummary(
+                book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover,
+                book.archived, book.shareable, book.ratingSum, book.ratingCount,
+                owner.firstname, owner.lastname, book.createdDate)
+            FROM Book book
+            JOIN book.owner owner
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND owner.id != :userId
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            """)
+    Slice<BookSummary> findAllDisplayableBooks(Pageable pageable, Integer userId, boolean availableOnly);
+
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BookSummary(
+                book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover,
+                book.archived, book.shareable, book.ratingSum, book.ratingCount,
+                owner.firstname, owner.lastname, book.createdDate)
+            FROM Book book
+            JOIN book.owner owner
+            WHERE owner.id = :ownerId
+            """)
+    Slice<BookSummary> findAllByOwner(Pageable pageable, Integer ownerId);
+
+    @Query(
+            """
+            SELECT DISTINCT book.bookCover
+            FROM Book book
+            WHERE book.bookCover IN :bookCovers
+            """)
+    Set<String> findReferencedBookCovers(Collection<String> bookCovers);
+
+    // the tags of a whole page in one query, list projections carry no collections
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookTag(book.id, tag)
+            FROM Book book
+            JOIN book.tags tag
+            WHERE book.id IN :bookIds
+            ORDER BY tag
+            """)
+    List<BookTag> findTags(Collection<Integer> bookIds);
+
+    @Query("SELECT book.owner.id FROM Book book WHERE book.id = :bookId")
+    Optional<Integer> findOwnerId(Integer bookId);
+
+    @Modifying
+    @Query(
+            """
+            UPDATE Book book
+            SET book.ratingSum = book.ratingSum + :note,
+                book.ratingCount = book.ratingCount + 1,
+                book.version = book.version + 1,
+                book.lastModifiedDate = :modifiedAt
+            WHERE book.id = :bookId
+            """)
+    int addRating(Integer bookId, double note, LocalDateTime modifiedAt);
+
+    // the WHERE clause is the availability check, so of two concurrent borrowers only one updates the row
+    @Modifying
+    @Query(
+            """
+            UPDATE Book book
+            SET book.currentBorrowerId = :userId,
+                book.version = book.version + 1,
+                book.lastModifiedDate = :modifiedAt,
+                book.lastModifiedBy = :userId
+            WHERE book.id = :bookId
+            AND book.currentBorrowerId IS NULL
+            AND book.archived = false
+            AND book.shareable = true
+            AND book.owner.id <> :userId
+            """)
+    int markBorrowed(Integer bookId, Integer userId, LocalDateTime modifiedAt);
+
+    @Query(
+            value =
+                    """
+            SELECT id
+            FROM book
+            WHERE id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE
+            """,
+            nativeQuery = true)
+    List<Integer> lockBookIdsAfter(Integer afterId, int limit);
+
+    @Modifying
+    @Query(
+            value =
+                    """
+            UPDATE book
+            SET rating_sum = aggregate.rating_sum,
+                rating_count = aggregate.rating_count,
+                version = version + 1,
+                last_modified_date = LOCALTIMESTAMP
+            FROM (
+                SELECT book.id, COALESCE(SUM(feedback.note), 0) AS rating_sum, COUNT(feedback.id) AS rating_count
+                FROM book
+                LEFT JOIN feedback ON feedback.book_id = book.id
+                WHERE book.id IN :bookIds
+                GROUP BY book.id
+            ) aggregate
+            WHERE book.id = aggregate.id
+            AND (book.rating_count <> aggregate.rating_count
+                OR ABS(book.rating_sum - aggregate.rating_sum) > 0.000001)
+            """,
+            nativeQuery = true)
+    int reconcileRatings(Collection<Integer> bookIds);
+
     @Query(
             """
-            SELECT book
+            SELECT new com.bullionder.book_network.book.BookSummary(
+                book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover,
+                book.archived, book.shareable, book.ratingSum, book.ratingCount,
+                owner.firstname, owner.lastname, book.createdDate)
+            FROM Book book
+            JOIN book.owner owner
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND owner.id != :userId
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            AND book.createdDate <= :createdDate
+            AND (book.createdDate < :createdDate OR book.id < :id)
+            ORDER BY book.createdDate DESC, book.id DESC
+            """)
+    Slice<BookSummary> findDisplayableBooksAfter(
+            Integer userId, boolean availableOnly, LocalDateTime createdDate, Integer id, Pageable pageable);
+
+    @Query(
+            """
+            SELECT COUNT(book)
             FROM Book book
             WHERE book.archived = false
             AND book.shareable = true
             AND book.owner.id != :userId
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            """)
+    long countDisplayableBooks(Integer userId, boolean availableOnly);
+
+    long countByOwnerId(Integer ownerId);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookSummary(
+                book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover,
+                book.archived, book.shareable, book.ratingSum, book.ratingCount,
+                owner.firstname, owner.lastname, book.createdDate)
+            FROM Book book
+            JOIN book.owner owner
+            JOIN book.tags tag
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND owner.id != :userId
+            AND tag = :tag
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            """)
+    Slice<BookSummary> findDisplayableBooksByTag(Pageable pageable, Integer userId, String tag, boolean availableOnly);
+
+    @Query(
+            """
+            SELECT COUNT(book)
+            FROM Book book
+            JOIN book.tags tag
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND book.owner.id != :userId
+            AND tag = :tag
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            """)
+    long countDisplayableBooksByTag(Integer userId, String tag, boolean availableOnly);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookSummary(
+                book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover,
+                book.archived, book.shareable, book.ratingSum, book.ratingCount,
+                owner.firstname, owner.lastname, book.createdDate)
+            FROM Book book
+            JOIN book.owner owner
+            JOIN book.tags tag
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND owner.id != :userId
+            AND tag = :tag
+            AND (:availableOnly = false OR book.currentBorrowerId IS NULL)
+            AND book.createdDate <= :createdDate
+            AND (book.createdDate < :createdDate OR book.id < :id)
+            ORDER BY book.createdDate DESC, book.id DESC
+            """)
+    Slice<BookSummary> findDisplayableBooksByTagAfter(
+            Integer userId,
+            String tag,
+            boolean availableOnly,
+            LocalDateTime createdDate,
+            Integer id,
+            Pageable pageable);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookSuggestionSource(
+                book.id, book.title, book.authorName, book.owner.id, true, COALESCE(book.version, 0))
+            FROM Book book
+            WHERE book.archived = false
+            AND book.shareable = true
+            AND book.id > :afterId
+            ORDER BY book.id
+            """)
+    List<BookSuggestionSource> findSuggestionSourcesAfter(Integer afterId, Pageable pageable);
+
+    // books that are no longer displayable are returned as well, so their removal carries a version too
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookSuggestionSource(
+                book.id, book.title, book.authorName, book.owner.id,
+                CASE WHEN book.archived = false AND book.shareable = true THEN true ELSE false END,
+                COALESCE(book.version, 0))
+            FROM Book book
+            WHERE book.id = :bookId
+            """)
+    Optional<BookSuggestionSource> findSuggestionSource(Integer bookId);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BookSuggestionSource(
+                book.id, book.title, book.authorName, book.owner.id,
+                CASE WHEN book.archived = false AND book.shareable = true THEN true ELSE false END,
+                COALESCE(book.version, 0))
+            FROM Book book
+            WHERE book.id IN :bookIds
+            """)
+    List<BookSuggestionSource> findSuggestionSources(Collection<Integer> bookIds);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.common.ContentVersion(
+                COALESCE(book.lastModifiedDate, book.createdDate), 1L, CAST(COALESCE(book.version, 0) AS Long))
+            FROM Book book
+            WHERE book.id = :bookId
+            """)
+    Optional<ContentVersion> findBookVersion(Integer bookId);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.common.ContentVersion(
+                MAX(COALESCE(book.lastModifiedDate, book.createdDate)), COUNT(book),
+                COALESCE(SUM(CAST(COALESCE(book.version, 0) AS Long)), 0L))
+            FROM Book book
+            WHERE book.owner.id = :ownerId
             """)
-    Page<Book> findAllDisplayableBooks(Pageable pageable, Integer userId);
+    ContentVersion findOwnerBooksVersion(Integer ownerId);
 }
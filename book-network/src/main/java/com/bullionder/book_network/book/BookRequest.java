@@ -1,5 +1,7 @@
 package com.bullionder.book_network.book;
 
+import java.util.List;
+
 public record BookRequest(
         String title,
         String authorName,
@@ -7,4 +9,5 @@ public record BookRequest(
         String synopsis,
         String bookCover,
         boolean archived,
-        boolean shareable) {}
+        boolean shareable,
+        List<String> tags) {}
@@ -1,5 +1,6 @@
 package com.bullionder.book_network.book;
 
+import java.util.List;
 import lombok.*;
 
 @Builder
@@ -15,8 +16,9 @@ public class BookResponse {
     private String authorName;
     private String isbn;
     private String synopsis;
-    private byte[] cover;
+    private String coverUrl;
     private boolean archived;
     private double rate;
     private boolean shareable;
+    private List<String> tags;
 }
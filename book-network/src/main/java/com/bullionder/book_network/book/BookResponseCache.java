@@ -0,0 +1,80 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.common.CacheLoads;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.function.Function;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+public class BookResponseCache {
+
+    private final BookChangeChannel bookChangeChannel;
+    private final AsyncCache<Integer, BookResponse> cache;
+    private final TransactionTemplate primaryRead;
+
+    public BookResponseCache(
+            BookChangeChannel bookChangeChannel,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${application.book-cache.max-size:10000}") long maxSize,
+            @Value("${application.book-cache.ttl:PT5M}") Duration ttl) {
+        this.bookChangeChannel = bookChangeChannel;
+        // a read-write transaction is routed to the primary, a replica may not have replayed the change
+        // that just invalidated the entry, and what a miss loads is kept for the whole TTL
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        this.primaryRead.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // the TTL bounds staleness when a notification is lost while a node reconnects
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "book.response.cache");
+        Gauge.builder("book.response.cache.hit.ratio", cache, c -> c.synchronous()
+                        .stats()
+                        .hitRate())
+                .description("Share of book lookups answered from the local cache")
+                .register(meterRegistry);
+    }
+
+    public BookResponse get(@NonNull Integer bookId, @NonNull Function<Integer, BookResponse> loader) {
+        return CacheLoads.get(cache, bookId, id -> primaryRead.execute(status -> loader.apply(id)));
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    @EventListener
+    public void onBookChangesMissed(BookChangeChannel.BookChangesMissedEvent event) {
+        invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        cache.synchronous().invalidate(event.bookId());
+        if (!event.remote()) {
+            bookChangeChannel.publish(event.bookId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksChanged(BooksChangedEvent event) {
+        cache.synchronous().invalidateAll(event.bookIds());
+        if (!event.remote()) {
+            bookChangeChannel.publish(event.bookIds());
+        }
+    }
+}
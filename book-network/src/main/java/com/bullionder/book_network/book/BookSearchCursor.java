@@ -0,0 +1,34 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public record BookSearchCursor(float rank, int id) {
+
+    public static final BookSearchCursor START = new BookSearchCursor(Float.MAX_VALUE, Integer.MAX_VALUE);
+
+    public static BookSearchCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return START;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            return new BookSearchCursor(
+                    Float.parseFloat(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new OperationNotPermittedException("The search cursor is invalid");
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((rank + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isStart() {
+        return START.equals(this);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bullionder.book_network.book;
+
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class BookSearchRepository {
+
+    // the query is parsed with and without stemming, matching the stemmed synopsis and the verbatim title and author
+    private static final String SEARCH_DISPLAYABLE_BOOKS =
+            """
+            SELECT *
+            FROM (
+                SELECT book.id, book.title, book.author_name, book.isbn, book.synopsis, book.book_cover,
+                    book.archived, book.shareable, book.rating_sum, book.rating_count,
+                    owner.firstname, owner.lastname, book.created_date,
+                    ts_rank(book.search_vector, search.query) AS rank
+                FROM book
+                JOIN _users owner ON owner.id = book.owner_id
+                CROSS JOIN (
+                    SELECT websearch_to_tsquery('english', :query) || websearch_to_tsquery('simple', :query) AS query
+                ) search
+                WHERE book.search_vector @@ search.query
+                AND book.archived = false
+                AND book.shareable = true
+                AND book.owner_id <> :userId
+            ) hits
+            WHERE (hits.rank, hits.id) < (CAST(:rank AS real), :id)
+            ORDER BY hits.rank DESC, hits.id DESC
+            LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public List<BookSearchHit> searchDisplayableBooks(String query, Integer userId, BookSearchCursor after, int limit) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("userId", userId)
+                .addValue("rank", after.rank())
+                .addValue("id", after.id())
+                .addValue("limit", limit);
+        return jdbcTemplate.query(
+                SEARCH_DISPLAYABLE_BOOKS,
+                parameters,
+                (resultSet, rowNumber) -> new BookSearchHit(
+                        new BookSummary(
+                                resultSet.getInt("id"),
+                                resultSet.getString("title"),
+                                resultSet.getString("author_name"),
+                                resultSet.getString("isbn"),
+                                resultSet.getString("synopsis"),
+                                resultSet.getString("book_cover"),
+                                resultSet.getBoolean("archived"),
+                                resultSet.getBoolean("shareable"),
+                                resultSet.getDouble("rating_sum"),
+                                resultSet.getInt("rating_count"),
+                                resultSet.getString("firstname"),
+                                resultSet.getString("lastname"),
+                                resultSet.getTimestamp("created_date").toLocalDateTime()),
+                        resultSet.getFloat("rank")));
+    }
+
+    public record BookSearchHit(BookSummary book, float rank) {}
+}
@@ -0,0 +1,14 @@
+package com.bullionder.book_network.book;
+
+import java.util.List;
+
+public record BookSelectionRequest(List<Integer> bookIds, Boolean archived, Boolean shareable, String authorName) {
+
+    public boolean hasBookIds() {
+        return bookIds != null && !bookIds.isEmpty();
+    }
+
+    public boolean hasFilter() {
+        return archived != null || shareable != null || (authorName != null && !authorName.isBlank());
+    }
+}
@@ -1,22 +1,46 @@
 package com.bullionder.book_network.book;
 
-import static com.bullionder.book_network.book.BookSpecification.withOwnerId;
-
+import com.bullionder.book_network.book.BookBulkRepository.ApprovedReturn;
+import com.bullionder.book_network.book.file.CoverCache;
+import com.bullionder.book_network.book.file.CoverSize;
+import com.bullionder.book_network.book.file.CoverThumbnailService;
+import com.bullionder.book_network.book.file.CoverUploadService;
+import com.bullionder.book_network.book.file.CoverUploadSession;
 import com.bullionder.book_network.book.file.FileStorageService;
+import com.bullionder.book_network.common.ContentVersion;
+import com.bullionder.book_network.common.KeysetCursor;
 import com.bullionder.book_network.common.PageResponse;
+import com.bullionder.book_network.common.PageTotals;
+import com.bullionder.book_network.common.TotalMode;
 import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.history.ArchivedBookTransactionHistoryRepository;
 import com.bullionder.book_network.history.BookTransactionHistory;
 import com.bullionder.book_network.history.BookTransactionHistoryRepository;
+import com.bullionder.book_network.history.OpenBorrow;
+import com.bullionder.book_network.notification.LendingEvent;
+import com.bullionder.book_network.notification.LendingEventService;
+import com.bullionder.book_network.notification.LendingEventType;
+import com.bullionder.book_network.stats.LendingDelta;
+import com.bullionder.book_network.stats.LendingStatsService;
 import com.bullionder.book_network.user.User;
 import jakarta.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 @Service
@@ -24,99 +48,276 @@ import org.springframework.web.multipart.MultipartFile;
 public class BookService {
 
     public static final String CREATED_DATE = "createdDate";
+    public static final int MAX_SUGGESTIONS = 20;
+    public static final int MAX_SELECTED_BOOKS = 1000;
+    public static final int MAX_TAG_FACETS = 50;
     public static final String NO_BOOK_FOUND_WITH_THE_ID = "No book found with the ID:: ";
+    public static final String NO_COVER_FOUND_FOR_THE_BOOK_WITH_THE_ID = "No cover found for the book with the ID:: ";
     public static final String THE_REQUESTED_BOOK_CANNOT_BE_BORROWED_SINCE_IT_IS_ARCHIVED_OR_NOT_SHAREABLE =
             "The requested book cannot be borrowed since it is archived or not shareable";
     private final BookRepository repository;
     private final BookMapper bookMapper;
     private final BookTransactionHistoryRepository transactionHistoryRepository;
     private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final ArchivedBookTransactionHistoryRepository archivedHistoryRepository;
     private final FileStorageService fileStorageService;
+    private final CoverCache coverCache;
+    private final CoverThumbnailService coverThumbnailService;
+    private final CoverUploadService coverUploadService;
+    private final PageTotals pageTotals;
+    private final BookSearchRepository bookSearchRepository;
+    private final BookBulkRepository bookBulkRepository;
+    private final BookSuggestionIndex bookSuggestionIndex;
+    private final BookResponseCache bookResponseCache;
+    private final BookFacetCounter bookFacetCounter;
+    private final LendingEventService lendingEventService;
+    private final LendingStatsService lendingStatsService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Integer save(BookRequest request, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
         Book book = bookMapper.toBook(request);
         book.setOwner(user);
-        return repository.save(book).getId();
+        Integer bookId = repository.save(book).getId();
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
+        return bookId;
     }
 
     public BookResponse findById(Integer id) {
-        return repository
-                .findById(id)
+        return bookResponseCache.get(id, bookId -> repository
+                .findById(bookId)
                 .map(bookMapper::toBookResponse)
-                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + id));
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId)));
     }
 
-    public PageResponse<BookResponse> findAllBooks(int page, int size, Authentication connectedUser) {
+    @Transactional(readOnly = true)
+    public ContentVersion findBookVersion(Integer bookId) {
+        return repository
+                .findBookVersion(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
+    }
+
+    @Transactional(readOnly = true)
+    public ContentVersion findOwnerBooksVersion(Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
-        Pageable pageable = PageRequest.of(page, size, Sort.by(CREATED_DATE).descending());
-        Page<Book> books = repository.findAllDisplayableBooks(pageable, user.getId());
-        List<BookResponse> bookResponses =
-                books.stream().map(bookMapper::toBookResponse).toList();
+        return repository.findOwnerBooksVersion(user.getId());
+    }
 
-        return new PageResponse<>(
-                bookResponses,
-                books.getNumber(),
-                books.getSize(),
-                books.getTotalElements(),
-                books.getTotalPages(),
-                books.isFirst(),
-                books.isLast());
+    @Transactional(readOnly = true)
+    public ContentVersion findBorrowedBooksVersion(Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return transactionHistoryRepository.findBorrowedBooksVersion(user.getId());
+    }
+
+    @Transactional(readOnly = true)
+    public ContentVersion findReturnedBooksVersion(Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return transactionHistoryRepository.findReturnedBooksVersion(user.getId());
+    }
+
+    public String findBookCoverLocation(Integer bookId) {
+        Book book = repository
+                .findById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
+        if (StringUtils.isBlank(book.getBookCover())) {
+            throw new EntityNotFoundException(NO_COVER_FOUND_FOR_THE_BOOK_WITH_THE_ID + bookId);
+        }
+        return book.getBookCover();
+    }
+
+    public CoverStatusResponse findBookCoverStatus(Integer bookId) {
+        Book book = repository
+                .findById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
+        if (StringUtils.isBlank(book.getBookCover())) {
+            throw new EntityNotFoundException(NO_COVER_FOUND_FOR_THE_BOOK_WITH_THE_ID + bookId);
+        }
+        return bookMapper.toCoverStatusResponse(book, coverThumbnailService.getStatus(book.getBookCover()));
     }
 
-    public PageResponse<BookResponse> findAllBooksByOwner(int page, int size, Authentication connectedUser) {
+    @Transactional(readOnly = true)
+    public PageResponse<BookResponse> findAllBooks(
+            int page, int size, TotalMode total, String tag, boolean availableOnly, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
         Pageable pageable = PageRequest.of(page, size, Sort.by(CREATED_DATE).descending());
-        Page<Book> books = repository.findAll(withOwnerId(user.getId()), pageable);
-        List<BookResponse> bookResponses =
-                books.stream().map(bookMapper::toBookResponse).toList();
+        String normalizedTag = BookTags.normalize(tag);
+        if (normalizedTag != null) {
+            Slice<BookSummary> books =
+                    repository.findDisplayableBooksByTag(pageable, user.getId(), normalizedTag, availableOnly);
+            return pageTotals.toPageResponse(
+                    books,
+                    toBookResponses(books.getContent()),
+                    total,
+                    "books.displayable.tag",
+                    List.of(user.getId(), normalizedTag, availableOnly),
+                    () -> repository.countDisplayableBooksByTag(user.getId(), normalizedTag, availableOnly));
+        }
+        Slice<BookSummary> books = repository.findAllDisplayableBooks(pageable, user.getId(), availableOnly);
+        List<BookResponse> bookResponses = toBookResponses(books.getContent());
+        return pageTotals.toPageResponse(
+                books,
+                bookResponses,
+                total,
+                "books.displayable",
+                List.of(user.getId(), availableOnly),
+                () -> repository.countDisplayableBooks(user.getId(), availableOnly));
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponse<BookResponse> findAllBooks(
+            String cursor, int size, String tag, boolean availableOnly, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        String normalizedTag = BookTags.normalize(tag);
+        Slice<BookSummary> books = normalizedTag == null
+                ? repository.findDisplayableBooksAfter(
+                        user.getId(), availableOnly, after.createdDate(), after.id(), PageRequest.ofSize(size))
+                : repository.findDisplayableBooksByTagAfter(
+                        user.getId(),
+                        normalizedTag,
+                        availableOnly,
+                        after.createdDate(),
+                        after.id(),
+                        PageRequest.ofSize(size));
+        List<BookResponse> bookResponses = toBookResponses(books.getContent());
+        KeysetCursor next = null;
+        if (books.hasNext()) {
+            BookSummary last = books.getContent().get(books.getNumberOfElements() - 1);
+            next = new KeysetCursor(last.createdDate(), last.id());
+        }
+        return PageResponse.ofCursor(bookResponses, size, after, next);
+    }
+
+    @Transactional(readOnly = true)
+    public BookFacetsResponse findFacets(String tag) {
+        return bookFacetCounter.findFacets(BookTags.normalize(tag), MAX_TAG_FACETS);
+    }
 
-        return new PageResponse<>(
+    @Transactional(readOnly = true)
+    public PageResponse<BookResponse> searchBooks(String query, String cursor, int size, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        BookSearchCursor after = BookSearchCursor.decode(cursor);
+        if (StringUtils.isBlank(query)) {
+            return PageResponse.ofCursor(List.of(), size, after.isStart(), null);
+        }
+        List<BookSearchRepository.BookSearchHit> hits =
+                bookSearchRepository.searchDisplayableBooks(query, user.getId(), after, size + 1);
+        String nextCursor = null;
+        if (hits.size() > size) {
+            hits = hits.subList(0, size);
+            BookSearchRepository.BookSearchHit last = hits.get(size - 1);
+            nextCursor = new BookSearchCursor(last.rank(), last.book().id()).encode();
+        }
+        List<BookResponse> bookResponses = toBookResponses(
+                hits.stream().map(BookSearchRepository.BookSearchHit::book).toList());
+        return PageResponse.ofCursor(bookResponses, size, after.isStart(), nextCursor);
+    }
+
+    public List<BookSuggestionResponse> suggestBooks(String prefix, int size, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return bookSuggestionIndex.suggest(prefix, user.getId(), Math.min(size, MAX_SUGGESTIONS));
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponse<BookResponse> findAllBooksByOwner(
+            int page, int size, TotalMode total, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by(CREATED_DATE).descending());
+        Slice<BookSummary> books = repository.findAllByOwner(pageable, user.getId());
+        List<BookResponse> bookResponses = toBookResponses(books.getContent());
+        return pageTotals.toPageResponse(
+                books,
                 bookResponses,
-                books.getNumber(),
-                books.getSize(),
-                books.getTotalElements(),
-                books.getTotalPages(),
-                books.isFirst(),
-                books.isLast());
+                total,
+                "books.owner",
+                user.getId(),
+                () -> repository.countByOwnerId(user.getId()));
     }
 
-    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, Authentication connectedUser) {
+    @Transactional(readOnly = true)
+    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(
+            int page, int size, TotalMode total, boolean archived, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
         Pageable pageable = PageRequest.of(page, size, Sort.by(CREATED_DATE).descending());
-        Page<BookTransactionHistory> allBorrowedBooks =
-                transactionHistoryRepository.findBorrowedBooks(pageable, user.getId());
+        Slice<BorrowedBookSummary> allBorrowedBooks = archived
+                ? archivedHistoryRepository.findBorrowedBooks(pageable, user.getId())
+                : transactionHistoryRepository.findBorrowedBooks(pageable, user.getId());
         List<BorrowedBookResponse> bookResponses = allBorrowedBooks.stream()
                 .map(bookMapper::toBorrowedBookResponse)
                 .toList();
-
-        return new PageResponse<>(
+        return pageTotals.toPageResponse(
+                allBorrowedBooks,
                 bookResponses,
-                allBorrowedBooks.getNumber(),
-                allBorrowedBooks.getSize(),
-                allBorrowedBooks.getTotalElements(),
-                allBorrowedBooks.getTotalPages(),
-                allBorrowedBooks.isFirst(),
-                allBorrowedBooks.isLast());
+                total,
+                archived ? "history.borrowed.archived" : "history.borrowed",
+                user.getId(),
+                () -> archived
+                        ? archivedHistoryRepository.countBorrowedBooks(user.getId())
+                        : transactionHistoryRepository.countBorrowedBooks(user.getId()));
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(
+            String cursor, int size, boolean archived, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        return toBorrowedBooksPage(
+                archived
+                        ? archivedHistoryRepository.findBorrowedBooksAfter(
+                                user.getId(), after.createdDate(), after.id(), PageRequest.ofSize(size))
+                        : transactionHistoryRepository.findBorrowedBooksAfter(
+                                user.getId(), after.createdDate(), after.id(), PageRequest.ofSize(size)),
+                size,
+                after);
     }
 
-    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, Authentication connectedUser) {
+    @Transactional(readOnly = true)
+    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(
+            int page, int size, TotalMode total, boolean archived, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
         Pageable pageable = PageRequest.of(page, size, Sort.by(CREATED_DATE).descending());
-        Page<BookTransactionHistory> allReturnedBooks =
-                transactionHistoryRepository.findReturnedBooks(pageable, user.getId());
+        Slice<BorrowedBookSummary> allReturnedBooks = archived
+                ? archivedHistoryRepository.findReturnedBooks(pageable, user.getId())
+                : transactionHistoryRepository.findReturnedBooks(pageable, user.getId());
         List<BorrowedBookResponse> bookResponses = allReturnedBooks.stream()
                 .map(bookMapper::toBorrowedBookResponse)
                 .toList();
-
-        return new PageResponse<>(
+        return pageTotals.toPageResponse(
+                allReturnedBooks,
                 bookResponses,
-                allReturnedBooks.getNumber(),
-                allReturnedBooks.getSize(),
-                allReturnedBooks.getTotalElements(),
-                allReturnedBooks.getTotalPages(),
-                allReturnedBooks.isFirst(),
-                allReturnedBooks.isLast());
+                total,
+                archived ? "history.returned.archived" : "history.returned",
+                user.getId(),
+                () -> archived
+                        ? archivedHistoryRepository.countReturnedBooks(user.getId())
+                        : transactionHistoryRepository.countReturnedBooks(user.getId()));
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(
+            String cursor, int size, boolean archived, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        return toBorrowedBooksPage(
+                archived
+                        ? archivedHistoryRepository.findReturnedBooksAfter(
+                                user.getId(), after.createdDate(), after.id(), PageRequest.ofSize(size))
+                        : transactionHistoryRepository.findReturnedBooksAfter(
+                                user.getId(), after.createdDate(), after.id(), PageRequest.ofSize(size)),
+                size,
+                after);
+    }
+
+    private PageResponse<BorrowedBookResponse> toBorrowedBooksPage(
+            Slice<BorrowedBookSummary> histories, int size, KeysetCursor after) {
+        List<BorrowedBookResponse> bookResponses =
+                histories.stream().map(bookMapper::toBorrowedBookResponse).toList();
+        KeysetCursor next = null;
+        if (histories.hasNext()) {
+            BorrowedBookSummary last = histories.getContent().get(histories.getNumberOfElements() - 1);
+            next = new KeysetCursor(last.createdDate(), last.historyId());
+        }
+        return PageResponse.ofCursor(bookResponses, size, after, next);
     }
 
     public Integer updateShareableStatus(Authentication connectedUser, Integer bookId) {
@@ -129,6 +330,7 @@ public class BookService {
         }
         book.setShareable(!book.isShareable());
         repository.save(book);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
         return bookId;
     }
 
@@ -142,94 +344,229 @@ public class BookService {
         }
         book.setArchived(!book.isArchived());
         repository.save(book);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
         return bookId;
     }
 
-    public Integer borrowBook(Authentication connectedUser, Integer bookId) {
+    public Integer updateTags(Authentication connectedUser, Integer bookId, List<String> tags) {
         Book book = repository
                 .findById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
-        if (!book.isShareable() || book.isArchived()) {
-            throw new OperationNotPermittedException(
-                    THE_REQUESTED_BOOK_CANNOT_BE_BORROWED_SINCE_IT_IS_ARCHIVED_OR_NOT_SHAREABLE);
-        }
-
         User user = (User) connectedUser.getPrincipal();
         if (!book.getOwner().getId().equals(user.getId())) {
-            throw new OperationNotPermittedException("You cannot borrow your own book");
+            throw new OperationNotPermittedException("You cannot update others books tags");
         }
+        book.getTags().clear();
+        book.getTags().addAll(BookTags.normalize(tags));
+        // a collection change alone does not update the book row, which the version validators read
+        book.setLastModifiedDate(LocalDateTime.now());
+        repository.save(book);
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
+        return bookId;
+    }
 
-        final boolean isAlreadyBorrowedByOtherUser = transactionHistoryRepository.isAlreadyBorrowed(bookId);
-        if (isAlreadyBorrowedByOtherUser) {
-            throw new OperationNotPermittedException("The requested book is already borrowed");
-        }
+    public List<Integer> updateShareableStatus(
+            Authentication connectedUser, BookSelectionRequest selection, boolean shareable) {
+        User user = (User) connectedUser.getPrincipal();
+        checkSelection(selection);
+        List<Integer> bookIds = bookBulkRepository.updateShareable(user.getId(), selection, shareable);
+        publishBooksChanged(bookIds);
+        return bookIds;
+    }
 
-        final boolean isAlreadyBorrowed = transactionHistoryRepository.isAlreadyBorrowedByUser(bookId, user.getId());
-        if (isAlreadyBorrowed) {
-            throw new OperationNotPermittedException("You have already borrowed this book and not returned it yet");
-        }
+    public List<Integer> updateArchivedStatus(
+            Authentication connectedUser, BookSelectionRequest selection, boolean archived) {
+        User user = (User) connectedUser.getPrincipal();
+        checkSelection(selection);
+        List<Integer> bookIds = bookBulkRepository.updateArchived(user.getId(), selection, archived);
+        publishBooksChanged(bookIds);
+        return bookIds;
+    }
 
+    @Transactional
+    public Integer borrowBook(Authentication connectedUser, Integer bookId) {
+        User user = (User) connectedUser.getPrincipal();
+        if (repository.markBorrowed(bookId, user.getId(), LocalDateTime.now()) == 0) {
+            throw borrowRejection(bookId, user);
+        }
         BookTransactionHistory bookTransactionHistory = BookTransactionHistory.builder()
                 .user(user)
-                .book(book)
+                .book(repository.getReferenceById(bookId))
                 .returned(false)
                 .returnApproved(false)
                 .build();
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        BookTransactionHistory saved = bookTransactionHistoryRepository.save(bookTransactionHistory);
+        Integer historyId = saved.getId();
+        lendingEventService.record(
+                repository.findOwnerId(bookId).orElseThrow(), LendingEventType.BOOK_BORROWED, bookId, historyId);
+        lendingStatsService.record(LendingDelta.borrow(bookId, user.getId(), saved.getCreatedDate()));
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
+        return historyId;
     }
 
+    @Transactional
     public Integer returnBorrowedBook(Authentication connectedUser, Integer bookId) {
-        Book book = repository
-                .findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
-        if (!book.isShareable() || book.isArchived()) {
-            throw new OperationNotPermittedException(
-                    THE_REQUESTED_BOOK_CANNOT_BE_BORROWED_SINCE_IT_IS_ARCHIVED_OR_NOT_SHAREABLE);
-        }
-
         User user = (User) connectedUser.getPrincipal();
-        if (!book.getOwner().getId().equals(user.getId())) {
-            throw new OperationNotPermittedException("You cannot borrow and return your own book");
+        LocalDateTime returnedAt = LocalDateTime.now();
+        if (transactionHistoryRepository.markReturned(bookId, user.getId(), returnedAt) == 0) {
+            throw new OperationNotPermittedException("You did not borrow this book");
         }
-
-        BookTransactionHistory bookTransactionHistory = transactionHistoryRepository
-                .findByBookIdAndUserId(bookId, user.getId())
+        OpenBorrow borrow = transactionHistoryRepository
+                .findOpenBorrow(bookId)
                 .orElseThrow(() -> new OperationNotPermittedException("You did not borrow this book"));
-        bookTransactionHistory.setReturned(true);
-
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        lendingEventService.record(
+                repository.findOwnerId(bookId).orElseThrow(),
+                LendingEventType.BOOK_RETURNED,
+                bookId,
+                borrow.historyId());
+        lendingStatsService.record(LendingDelta.returned(bookId, user.getId(), borrow.createdDate(), returnedAt));
+        return borrow.historyId();
     }
 
+    @Transactional
     public Integer approveReturnBorrowedBook(Authentication connectedUser, Integer bookId) {
-        Book book = repository
-                .findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
-        if (!book.isShareable() || book.isArchived()) {
-            throw new OperationNotPermittedException(
-                    THE_REQUESTED_BOOK_CANNOT_BE_BORROWED_SINCE_IT_IS_ARCHIVED_OR_NOT_SHAREABLE);
-        }
-
         User user = (User) connectedUser.getPrincipal();
-        if (!book.getOwner().getId().equals(user.getId())) {
-            throw new OperationNotPermittedException("You cannot borrow and return your own book");
-        }
-
-        BookTransactionHistory bookTransactionHistory = transactionHistoryRepository
-                .findByBookIdAndOwnerId(bookId, user.getId())
+        ApprovedReturn approved = bookBulkRepository
+                .approveReturn(user.getId(), bookId)
                 .orElseThrow(() -> new OperationNotPermittedException(
                         "The book is not returned yet. You cannot approve its return"));
-        bookTransactionHistory.setReturnApproved(true);
+        lendingEventService.record(
+                approved.borrowerId(), LendingEventType.RETURN_APPROVED, bookId, approved.historyId());
+        lendingStatsService.record(toApprovalDelta(approved));
+        eventPublisher.publishEvent(new BookChangedEvent(bookId));
+        return approved.historyId();
+    }
 
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+    @Transactional
+    public List<Integer> approveReturnBorrowedBooks(Authentication connectedUser, BookSelectionRequest selection) {
+        User user = (User) connectedUser.getPrincipal();
+        checkSelection(selection);
+        List<ApprovedReturn> approved = bookBulkRepository.approveReturns(user.getId(), selection);
+        lendingEventService.recordAll(approved.stream()
+                .map(approval -> LendingEvent.builder()
+                        .recipientId(approval.borrowerId())
+                        .type(LendingEventType.RETURN_APPROVED)
+                        .bookId(approval.bookId())
+                        .historyId(approval.historyId())
+                        .build())
+                .toList());
+        lendingStatsService.record(
+                approved.stream().map(BookService::toApprovalDelta).toList());
+        List<Integer> bookIds = approved.stream().map(ApprovedReturn::bookId).toList();
+        publishBooksChanged(bookIds);
+        return bookIds;
     }
 
     public void uploadBookCoverPicture(MultipartFile file, Authentication connectedUser, Integer bookId) {
         Book book = repository
                 .findById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
+        checkCoverOwner(book, (User) connectedUser.getPrincipal());
+        bindBookCover(book, fileStorageService.saveFile(file));
+    }
+
+    public CoverUploadResponse createCoverUpload(
+            Integer bookId, Long length, String fileName, Authentication connectedUser) throws IOException {
+        Book book = repository
+                .findById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId));
+        User user = (User) connectedUser.getPrincipal();
+        checkCoverOwner(book, user);
+        return bookMapper.toCoverUploadResponse(
+                coverUploadService.createSession(book.getId(), user.getId(), length, fileName));
+    }
+
+    public CoverUploadResponse findCoverUpload(String uploadId, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return bookMapper.toCoverUploadResponse(coverUploadService.findSession(uploadId, user.getId()));
+    }
+
+    public CoverUploadResponse uploadCoverChunk(
+            String uploadId, long offset, InputStream chunk, Authentication connectedUser) throws IOException {
         User user = (User) connectedUser.getPrincipal();
-        var bookCover = fileStorageService.saveFile(file, user.getId());
+        return bookMapper.toCoverUploadResponse(coverUploadService.appendChunk(uploadId, user.getId(), offset, chunk));
+    }
+
+    public void completeCoverUpload(String uploadId, Authentication connectedUser) throws IOException {
+        User user = (User) connectedUser.getPrincipal();
+        // only the user who started the session finds it
+        CoverUploadSession session = coverUploadService.findSession(uploadId, user.getId());
+        Book book = repository
+                .findById(session.getBookId())
+                .orElseThrow(() -> new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + session.getBookId()));
+        checkCoverOwner(book, user);
+        bindBookCover(book, coverUploadService.complete(session));
+    }
+
+    public void cancelCoverUpload(String uploadId, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        coverUploadService.cancel(coverUploadService.findSession(uploadId, user.getId()));
+    }
+
+    private List<BookResponse> toBookResponses(List<BookSummary> books) {
+        Map<Integer, List<String>> tags = new HashMap<>();
+        if (!books.isEmpty()) {
+            repository.findTags(books.stream().map(BookSummary::id).toList()).forEach(tag -> tags.computeIfAbsent(
+                            tag.bookId(), id -> new ArrayList<>())
+                    .add(tag.tag()));
+        }
+        return books.stream()
+                .map(book -> bookMapper.toBookResponse(book, tags.getOrDefault(book.id(), List.of()), CoverSize.SMALL))
+                .toList();
+    }
+
+    private static void checkCoverOwner(Book book, User user) {
+        if (!book.getOwner().getId().equals(user.getId())) {
+            throw new OperationNotPermittedException("You cannot upload a cover for others books");
+        }
+    }
+
+    private void bindBookCover(Book book, String bookCover) {
+        coverCache.invalidateCover(book.getBookCover());
         book.setBookCover(bookCover);
         repository.save(book);
+        eventPublisher.publishEvent(new BookChangedEvent(book.getId()));
+        if (bookCover != null) {
+            coverThumbnailService.generateThumbnails(bookCover);
+        }
+    }
+
+    // only read when the conditional update matched nothing, to tell the caller why
+    private RuntimeException borrowRejection(Integer bookId, User user) {
+        Book book = repository.findById(bookId).orElse(null);
+        if (book == null) {
+            return new EntityNotFoundException(NO_BOOK_FOUND_WITH_THE_ID + bookId);
+        }
+        if (!book.isShareable() || book.isArchived()) {
+            return new OperationNotPermittedException(
+                    THE_REQUESTED_BOOK_CANNOT_BE_BORROWED_SINCE_IT_IS_ARCHIVED_OR_NOT_SHAREABLE);
+        }
+        if (book.getOwner().getId().equals(user.getId())) {
+            return new OperationNotPermittedException("You cannot borrow your own book");
+        }
+        if (user.getId().equals(book.getCurrentBorrowerId())) {
+            return new OperationNotPermittedException("You have already borrowed this book and not returned it yet");
+        }
+        return new OperationNotPermittedException("The requested book is already borrowed");
+    }
+
+    private static LendingDelta toApprovalDelta(ApprovedReturn approved) {
+        return LendingDelta.approval(
+                approved.bookId(), approved.borrowerId(), approved.returnedDate(), approved.approvedDate());
+    }
+
+    private void checkSelection(BookSelectionRequest selection) {
+        if (selection == null || (!selection.hasBookIds() && !selection.hasFilter())) {
+            throw new OperationNotPermittedException("Select the books by id or by a filter");
+        }
+        if (selection.hasBookIds() && selection.bookIds().size() > MAX_SELECTED_BOOKS) {
+            throw new OperationNotPermittedException("At most " + MAX_SELECTED_BOOKS + " books can be selected by id");
+        }
+    }
+
+    private void publishBooksChanged(List<Integer> bookIds) {
+        if (!bookIds.isEmpty()) {
+            eventPublisher.publishEvent(new BooksChangedEvent(bookIds));
+        }
     }
 }
@@ -0,0 +1,231 @@
+package com.bullionder.book_network.book;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+@Slf4j
+public class BookSuggestionIndex {
+
+    // longer word suffixes are cut here; a longer prefix finds its candidates at this depth and is checked on the text
+    static final int MAX_TERM_LENGTH = 32;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final char[] TYPO_ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789 ".toCharArray();
+
+    private final BookRepository bookRepository;
+    private final Timer lookupTimer;
+    private final int rebuildBatchSize;
+    private final int minTypoPrefixLength;
+    private final SuggestionTrie trie = new SuggestionTrie();
+    private final Map<Integer, IndexedBook> books = new ConcurrentHashMap<>();
+
+    public BookSuggestionIndex(
+            BookRepository bookRepository,
+            MeterRegistry meterRegistry,
+            @Value("${application.suggestion.rebuild-batch-size:1000}") int rebuildBatchSize,
+            @Value("${application.suggestion.min-typo-prefix-length:4}") int minTypoPrefixLength) {
+        this.bookRepository = bookRepository;
+        this.rebuildBatchSize = rebuildBatchSize;
+        this.minTypoPrefixLength = minTypoPrefixLength;
+        this.lookupTimer = Timer.builder("book.suggest.lookup")
+                .description("Time spent answering one autocomplete request from memory")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        int indexed = 0;
+        int afterId = 0;
+        List<BookSuggestionSource> batch;
+        do {
+            batch = bookRepository.findSuggestionSourcesAfter(afterId, PageRequest.ofSize(rebuildBatchSize));
+            for (BookSuggestionSource source : batch) {
+                apply(source.id(), source);
+                afterId = source.id();
+            }
+            indexed += batch.size();
+        } while (batch.size() == rebuildBatchSize);
+        log.info("Book suggestion index built with {} books and {} trie nodes", indexed, trie.nodeCount());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        apply(
+                event.bookId(),
+                bookRepository.findSuggestionSource(event.bookId()).orElse(null));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBooksChanged(BooksChangedEvent event) {
+        Map<Integer, BookSuggestionSource> sources = new HashMap<>();
+        for (BookSuggestionSource source : bookRepository.findSuggestionSources(event.bookIds())) {
+            sources.put(source.id(), source);
+        }
+        for (Integer bookId : event.bookIds()) {
+            apply(bookId, sources.get(bookId));
+        }
+    }
+
+    public List<BookSuggestionResponse> suggest(String prefix, Integer excludedOwnerId, int limit) {
+        return lookupTimer.record(() -> {
+            String normalized = normalize(prefix);
+            if (normalized.isEmpty() || limit <= 0) {
+                return List.<BookSuggestionResponse>of();
+            }
+            Map<String, BookSuggestionResponse> suggestions = new LinkedHashMap<>();
+            collect(normalized, excludedOwnerId, limit, suggestions);
+            if (suggestions.size() < limit && normalized.length() >= minTypoPrefixLength) {
+                for (String variant : typoVariants(normalized)) {
+                    collect(variant, excludedOwnerId, limit, suggestions);
+                    if (suggestions.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return List.copyOf(suggestions.values());
+        });
+    }
+
+    int trieNodeCount() {
+        return trie.nodeCount();
+    }
+
+    // the source is read before this runs, so events and the rebuild can arrive out of order: the version keeps an
+    // older read from replacing a newer one; books are never deleted, a missing row only drops the entry
+    private void apply(Integer bookId, BookSuggestionSource source) {
+        books.compute(bookId, (id, current) -> {
+            if (current != null && source != null && current.version() >= source.version()) {
+                return current;
+            }
+            if (current != null) {
+                trie.remove(id, terms(current.title(), current.authorName()));
+            }
+            if (source == null) {
+                return null;
+            }
+            if (!source.displayable()) {
+                return new IndexedBook(id, null, null, null, source.version());
+            }
+            trie.add(id, terms(source.title(), source.authorName()));
+            return new IndexedBook(id, source.title(), source.authorName(), source.ownerId(), source.version());
+        });
+    }
+
+    private void collect(
+            String prefix, Integer excludedOwnerId, int limit, Map<String, BookSuggestionResponse> suggestions) {
+        boolean cut = prefix.length() > MAX_TERM_LENGTH;
+        trie.visit(cut ? prefix.substring(0, MAX_TERM_LENGTH) : prefix, (bookId, type) -> {
+            IndexedBook book = books.get(bookId);
+            if (book == null || book.title() == null || Objects.equals(book.ownerId(), excludedOwnerId)) {
+                return true;
+            }
+            String text = type == SuggestionType.TITLE ? book.title() : book.authorName();
+            if (cut && !hasWordStartingWith(normalize(text), prefix)) {
+                return true;
+            }
+            suggestions.putIfAbsent(type + text, new BookSuggestionResponse(book.id(), text, type));
+            return suggestions.size() < limit;
+        });
+    }
+
+    private static List<SuggestionTrie.Term> terms(String title, String authorName) {
+        List<SuggestionTrie.Term> terms = new ArrayList<>();
+        addTerms(terms, title, SuggestionType.TITLE);
+        addTerms(terms, authorName, SuggestionType.AUTHOR);
+        return terms;
+    }
+
+    private static void addTerms(List<SuggestionTrie.Term> terms, String text, SuggestionType type) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        // every word start is indexed, so "rings" finds "The Lord of the Rings"
+        int wordStart = 0;
+        while (wordStart >= 0) {
+            int end = Math.min(normalized.length(), wordStart + MAX_TERM_LENGTH);
+            terms.add(new SuggestionTrie.Term(normalized.substring(wordStart, end), type));
+            int space = normalized.indexOf(' ', wordStart);
+            wordStart = space < 0 ? -1 : space + 1;
+        }
+    }
+
+    private static boolean hasWordStartingWith(String normalizedText, String prefix) {
+        return normalizedText.startsWith(prefix) || normalizedText.contains(" " + prefix);
+    }
+
+    private static Set<String> typoVariants(String prefix) {
+        Set<String> variants = new LinkedHashSet<>();
+        StringBuilder variant = new StringBuilder(prefix.length() + 1);
+        for (int i = 0; i < prefix.length(); i++) {
+            variants.add(variant.append(prefix, 0, i)
+                    .append(prefix, i + 1, prefix.length())
+                    .toString());
+            variant.setLength(0);
+            if (i + 1 < prefix.length()) {
+                variant.append(prefix);
+                variant.setCharAt(i, prefix.charAt(i + 1));
+                variant.setCharAt(i + 1, prefix.charAt(i));
+                variants.add(variant.toString());
+                variant.setLength(0);
+            }
+            for (char replacement : TYPO_ALPHABET) {
+                if (replacement != prefix.charAt(i)) {
+                    variant.append(prefix);
+                    variant.setCharAt(i, replacement);
+                    variants.add(variant.toString());
+                    variant.setLength(0);
+                }
+            }
+        }
+        for (int i = 0; i <= prefix.length(); i++) {
+            for (char insertion : TYPO_ALPHABET) {
+                variants.add(variant.append(prefix, 0, i)
+                        .append(insertion)
+                        .append(prefix, i, prefix.length())
+                        .toString());
+                variant.setLength(0);
+            }
+        }
+        variants.remove(prefix);
+        return variants;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String withoutDiacritics = DIACRITICS
+                .matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("");
+        return NON_ALPHANUMERIC
+                .matcher(withoutDiacritics.toLowerCase())
+                .replaceAll(" ")
+                .strip();
+    }
+
+    // books that are not displayable keep only their version, they have no terms
+    private record IndexedBook(Integer id, String title, String authorName, Integer ownerId, int version) {}
+}
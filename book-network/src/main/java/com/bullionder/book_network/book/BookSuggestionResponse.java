@@ -0,0 +1,15 @@
+package com.bullionder.book_network.book;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookSuggestionResponse {
+
+    private Integer bookId;
+    private String text;
+    private SuggestionType type;
+}
@@ -0,0 +1,4 @@
+package com.bullionder.book_network.book;
+
+public record BookSuggestionSource(
+        Integer id, String title, String authorName, Integer ownerId, boolean displayable, int version) {}
@@ -0,0 +1,27 @@
+package com.bullionder.book_network.book;
+
+import java.time.LocalDateTime;
+
+public record BookSummary(
+        Integer id,
+        String title,
+        String authorName,
+        String isbn,
+        String synopsis,
+        String bookCover,
+        boolean archived,
+        boolean shareable,
+        double ratingSum,
+        int ratingCount,
+        String ownerFirstname,
+        String ownerLastname,
+        LocalDateTime createdDate) {
+
+    public String ownerFullName() {
+        return ownerFirstname + " " + ownerLastname;
+    }
+
+    public double rate() {
+        return Book.averageRating(ratingSum, ratingCount);
+    }
+}
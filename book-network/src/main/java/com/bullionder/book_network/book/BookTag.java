@@ -0,0 +1,3 @@
+package com.bullionder.book_network.book;
+
+public record BookTag(Integer bookId, String tag) {}
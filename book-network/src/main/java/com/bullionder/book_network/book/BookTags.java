@@ -0,0 +1,46 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public final class BookTags {
+
+    public static final int MAX_TAGS_PER_BOOK = 20;
+    public static final int MAX_TAG_LENGTH = 50;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private BookTags() {}
+
+    public static Set<String> normalize(Collection<String> tags) {
+        Set<String> normalized = new LinkedHashSet<>();
+        if (tags == null) {
+            return normalized;
+        }
+        for (String tag : tags) {
+            String value = normalize(tag);
+            if (value != null) {
+                normalized.add(value);
+            }
+        }
+        if (normalized.size() > MAX_TAGS_PER_BOOK) {
+            throw new OperationNotPermittedException("A book can have at most " + MAX_TAGS_PER_BOOK + " tags");
+        }
+        return normalized;
+    }
+
+    // tags are compared case-insensitively, so "Science Fiction" and "science  fiction" are the same facet
+    public static String normalize(String tag) {
+        if (tag == null || tag.isBlank()) {
+            return null;
+        }
+        String value = WHITESPACE.matcher(tag.strip().toLowerCase(Locale.ROOT)).replaceAll(" ");
+        if (value.length() > MAX_TAG_LENGTH) {
+            throw new OperationNotPermittedException("Tags are limited to " + MAX_TAG_LENGTH + " characters");
+        }
+        return value;
+    }
+}
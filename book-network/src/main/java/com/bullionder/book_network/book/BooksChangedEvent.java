@@ -0,0 +1,10 @@
+package com.bullionder.book_network.book;
+
+import java.util.List;
+
+public record BooksChangedEvent(List<Integer> bookIds, boolean remote) {
+
+    public BooksChangedEvent(List<Integer> bookIds) {
+        this(bookIds, false);
+    }
+}
@@ -0,0 +1,20 @@
+package com.bullionder.book_network.book;
+
+import java.time.LocalDateTime;
+
+public record BorrowedBookSummary(
+        Integer historyId,
+        Integer bookId,
+        String title,
+        String authorName,
+        String isbn,
+        double ratingSum,
+        int ratingCount,
+        boolean returned,
+        boolean returnApproved,
+        LocalDateTime createdDate) {
+
+    public double rate() {
+        return Book.averageRating(ratingSum, ratingCount);
+    }
+}
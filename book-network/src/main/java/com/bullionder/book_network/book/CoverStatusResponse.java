@@ -0,0 +1,19 @@
+package com.bullionder.book_network.book;
+
+import com.bullionder.book_network.book.file.CoverProcessingStatus;
+import com.bullionder.book_network.book.file.CoverSize;
+import java.util.Map;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CoverStatusResponse {
+
+    private Integer id;
+    private CoverProcessingStatus status;
+    private String coverUrl;
+    private Map<CoverSize, String> thumbnailUrls;
+}
@@ -0,0 +1,18 @@
+package com.bullionder.book_network.book;
+
+import java.time.Instant;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CoverUploadResponse {
+
+    private String uploadId;
+    private Integer bookId;
+    private long offset;
+    private Long length;
+    private Instant expiresAt;
+}
@@ -0,0 +1,108 @@
+package com.bullionder.book_network.book;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+class CsvRecordReader {
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+    private final int maxRecordLength;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long line = 1;
+    private boolean started;
+
+    CsvRecordReader(Reader reader, int maxRecordLength) {
+        this.reader = reader;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    CsvRecord next() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == BYTE_ORDER_MARK) {
+                c = read();
+            }
+        }
+        while (c == '\r' || c == '\n') {
+            if (c == '\n') {
+                line++;
+            }
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        long recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = 0;
+        while (true) {
+            if (c == -1) {
+                if (quoted) {
+                    return new CsvRecord(recordLine, fields, "Quoted field is not terminated");
+                }
+                fields.add(field.toString());
+                return new CsvRecord(recordLine, fields, null);
+            }
+            if (++length > maxRecordLength) {
+                skipLine(c);
+                return new CsvRecord(recordLine, fields, "Record exceeds " + maxRecordLength + " characters");
+            }
+            if (quoted) {
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                line++;
+                fields.add(field.toString());
+                return new CsvRecord(recordLine, fields, null);
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private void skipLine(int c) throws IOException {
+        while (c != -1 && c != '\n') {
+            c = read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    record CsvRecord(long line, List<String> fields, String error) {}
+}
@@ -0,0 +1,182 @@
+package com.bullionder.book_network.book;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// prefix tree over the indexed terms; shared prefixes are stored once, children sit in sorted parallel arrays and
+// the books of a term in one long array, so a node costs a few small arrays instead of a string per term and book
+final class SuggestionTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_POSTINGS = new long[0];
+
+    private final Node root = new Node();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int nodeCount = 1;
+
+    void add(int bookId, List<Term> terms) {
+        lock.writeLock().lock();
+        try {
+            for (Term term : terms) {
+                Node node = root;
+                for (int i = 0; i < term.text().length(); i++) {
+                    Node child = node.child(term.text().charAt(i));
+                    if (child == null) {
+                        child = node.addChild(term.text().charAt(i));
+                        nodeCount++;
+                    }
+                    node = child;
+                }
+                node.addPosting(posting(bookId, term.type()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int bookId, List<Term> terms) {
+        lock.writeLock().lock();
+        try {
+            for (Term term : terms) {
+                remove(term.text(), posting(bookId, term.type()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // hands every book under the prefix to the visitor in term order, until the visitor returns false
+    void visit(String prefix, PostingVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            if (node != null) {
+                visit(node, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean visit(Node node, PostingVisitor visitor) {
+        for (long posting : node.postings) {
+            if (!visitor.visit((int) (posting >>> 8), SuggestionType.values()[(int) (posting & 0xFF)])) {
+                return false;
+            }
+        }
+        for (Node child : node.children) {
+            if (!visit(child, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remove(String text, long posting) {
+        Node[] path = new Node[text.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < text.length(); i++) {
+            path[i + 1] = path[i].child(text.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        path[text.length()].removePosting(posting);
+        // branches left without terms are cut off, so removed books do not leave nodes behind
+        for (int i = text.length(); i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].removeChild(text.charAt(i - 1));
+            nodeCount--;
+        }
+    }
+
+    private static long posting(int bookId, SuggestionType type) {
+        return ((long) bookId << 8) | type.ordinal();
+    }
+
+    record Term(String text, SuggestionType type) {}
+
+    @FunctionalInterface
+    interface PostingVisitor {
+
+        boolean visit(int bookId, SuggestionType type);
+    }
+
+    private static final class Node {
+
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private long[] postings = NO_POSTINGS;
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index < 0 ? null : children[index];
+        }
+
+        Node addChild(char label) {
+            int insertAt = -Arrays.binarySearch(labels, label) - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node child = new Node();
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = child;
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index < 0) {
+                return;
+            }
+            char[] newLabels = labels.length == 1 ? NO_LABELS : new char[labels.length - 1];
+            Node[] newChildren = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            labels = newLabels;
+            children = newChildren;
+        }
+
+        // a book can reach the same node twice, through a repeated phrase cut at the maximum term length
+        void addPosting(long posting) {
+            postings = Arrays.copyOf(postings, postings.length + 1);
+            postings[postings.length - 1] = posting;
+        }
+
+        void removePosting(long posting) {
+            for (int i = 0; i < postings.length; i++) {
+                if (postings[i] == posting) {
+                    long[] newPostings = postings.length == 1 ? NO_POSTINGS : new long[postings.length - 1];
+                    System.arraycopy(postings, 0, newPostings, 0, i);
+                    System.arraycopy(postings, i + 1, newPostings, i, postings.length - i - 1);
+                    postings = newPostings;
+                    return;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return labels.length == 0 && postings.length == 0;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.bullionder.book_network.book;
+
+public enum SuggestionType {
+    TITLE,
+    AUTHOR
+}
@@ -0,0 +1,138 @@
+package com.bullionder.book_network.book.file;
+
+import com.bullionder.book_network.common.CacheLoads;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+@Service
+@Slf4j
+public class CoverCache {
+
+    private static final int SIZE_ONLY_WEIGHT = 64;
+
+    private final CoverStore coverStore;
+    private final long maxEntrySize;
+    private final AsyncCache<String, CachedCover> cache;
+
+    public CoverCache(
+            CoverStore coverStore,
+            MeterRegistry meterRegistry,
+            @Value("${application.file.cache.max-size:64MB}") DataSize maxSize,
+            @Value("${application.file.cache.max-entry-size:2MB}") DataSize maxEntrySize) {
+        this.coverStore = coverStore;
+        this.maxEntrySize = maxEntrySize.toBytes();
+        // entries live in direct buffers, so only the keys add to the heap the collector has to trace;
+        // a cover too large to hold only keeps its size, weighed by roughly what it takes on the heap
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, CachedCover cover) ->
+                        cover.content == null ? SIZE_ONLY_WEIGHT + key.length() : cover.content.capacity())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "book.cover.cache");
+        Gauge.builder("book.cover.cache.size.bytes", cache, c -> c.synchronous()
+                        .policy()
+                        .eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Bytes of cover content held off-heap")
+                .register(meterRegistry);
+    }
+
+    // empty when the cover does not exist; a cover too large to cache is found with its size only
+    public Optional<CachedCover> find(@NonNull String key) throws IOException {
+        try {
+            return Optional.ofNullable(CacheLoads.get(cache, key, this::load));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public boolean contains(@NonNull String key) {
+        // a cover that is still being read counts as missing, the caller must not wait for it
+        CompletableFuture<CachedCover> cover = cache.getIfPresent(key);
+        return cover != null && cover.isDone() && !cover.isCompletedExceptionally() && cover.join() != null;
+    }
+
+    public void invalidateCover(String coverLocation) {
+        if (coverLocation == null) {
+            return;
+        }
+        cache.synchronous().invalidate(coverLocation);
+        for (CoverSize size : CoverSize.values()) {
+            cache.synchronous().invalidate(FileUtils.thumbnailLocation(coverLocation, size));
+        }
+    }
+
+    public static void transferTo(ByteBuffer content, long position, long count, OutputStream target)
+            throws IOException {
+        content.position((int) position).limit((int) (position + count));
+        WritableByteChannel channel = Channels.newChannel(target);
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    private CachedCover load(String key) {
+        try {
+            OptionalLong size = coverStore.findSize(key);
+            if (size.isEmpty()) {
+                return null;
+            }
+            if (size.getAsLong() > maxEntrySize) {
+                // cached as well, otherwise every request for it asks the store for the size again
+                return new CachedCover(size.getAsLong(), null);
+            }
+            ByteBuffer content = ByteBuffer.allocateDirect((int) size.getAsLong());
+            try (InputStream in = coverStore.openStream(key);
+                    ReadableByteChannel channel = Channels.newChannel(in)) {
+                while (content.hasRemaining() && channel.read(content) >= 0) {
+                    // fill the buffer
+                }
+            }
+            content.flip();
+            return new CachedCover(size.getAsLong(), content.asReadOnlyBuffer());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static final class CachedCover {
+
+        private final long size;
+        private final ByteBuffer content;
+
+        private CachedCover(long size, ByteBuffer content) {
+            this.size = size;
+            this.content = content;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        // every caller gets its own position and limit
+        public Optional<ByteBuffer> content() {
+            return Optional.ofNullable(content).map(ByteBuffer::duplicate);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.bullionder.book_network.book.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// serializes storing a content-addressed file against the orphan collector deleting it, on every node;
+// uploads share the lock of a file key, a deletion needs it alone
+@Component
+public class CoverFileLocks {
+
+    // first half of the two-part advisory lock key, keeps cover file locks apart from any other advisory lock
+    private static final int LOCK_SPACE = 0x434F5652;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public CoverFileLocks(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public <T> T whileStoring(String fileKey, LockedAction<T> action) throws IOException {
+        return inTransaction(() -> {
+            jdbcTemplate.queryForObject(
+                    "SELECT pg_advisory_xact_lock_shared(?, hashtext(?))::text", String.class, LOCK_SPACE, fileKey);
+            return action.run();
+        });
+    }
+
+    // false without running the action when an upload holds the file, the next collection looks at it again
+    public boolean whileDeleting(String fileKey, LockedAction<Boolean> action) throws IOException {
+        return inTransaction(() -> Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_xact_lock(?, hashtext(?))", Boolean.class, LOCK_SPACE, fileKey))
+                && action.run());
+    }
+
+    private <T> T inTransaction(LockedAction<T> action) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    return action.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    public interface LockedAction<T> {
+
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,8 @@
+package com.bullionder.book_network.book.file;
+
+public enum CoverProcessingStatus {
+    PENDING,
+    PROCESSING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,15 @@
+package com.bullionder.book_network.book.file;
+
+import lombok.Getter;
+
+@Getter
+public enum CoverSize {
+    SMALL(160),
+    MEDIUM(480);
+
+    private final int width;
+
+    CoverSize(int width) {
+        this.width = width;
+    }
+}
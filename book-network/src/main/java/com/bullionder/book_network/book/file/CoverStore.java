@@ -0,0 +1,43 @@
+package com.bullionder.book_network.book.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+
+public interface CoverStore {
+
+    OptionalLong findSize(String key) throws IOException;
+
+    Optional<Instant> findLastModified(String key) throws IOException;
+
+    void put(String key, Path source) throws IOException;
+
+    void touch(String key) throws IOException;
+
+    // replaces the target, the source is gone afterwards
+    void move(String sourceKey, String targetKey) throws IOException;
+
+    InputStream openStream(String key) throws IOException;
+
+    void transferTo(String key, long position, long count, OutputStream target) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    Stream<StoredCover> listCovers() throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return findSize(key).isPresent();
+    }
+
+    // stores that keep covers on the local file system let the container send them without copying
+    default Optional<Path> findLocalFile(String key) throws IOException {
+        return Optional.empty();
+    }
+
+    record StoredCover(String key, Instant lastModified) {}
+}
@@ -0,0 +1,11 @@
+package com.bullionder.book_network.book.file;
+
+import java.io.IOException;
+
+// every request slot of the store stayed taken for the whole wait, the caller should try again later
+public class CoverStoreBusyException extends IOException {
+
+    public CoverStoreBusyException(String message) {
+        super(message);
+    }
+}
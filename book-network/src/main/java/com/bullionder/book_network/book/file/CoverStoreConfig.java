@@ -0,0 +1,65 @@
+package com.bullionder.book_network.book.file;
+
+import java.net.URI;
+import java.time.Duration;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+@Configuration
+public class CoverStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "application.file.storage.type", havingValue = "local", matchIfMissing = true)
+    public CoverStore localCoverStore(@Value("${application.file.upload.photos-output-path}") String fileUploadPath) {
+        return new LocalCoverStore(fileUploadPath);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "application.file.storage.type", havingValue = "s3")
+    public S3Client coverS3Client(
+            @Value("${application.file.storage.s3.endpoint:}") String endpoint,
+            @Value("${application.file.storage.s3.region:us-east-1}") String region,
+            @Value("${application.file.storage.s3.access-key:}") String accessKey,
+            @Value("${application.file.storage.s3.secret-key:}") String secretKey,
+            @Value("${application.file.storage.s3.path-style-access:true}") boolean pathStyleAccess,
+            @Value("${application.file.storage.s3.max-in-flight-requests:64}") int maxInFlightRequests) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyleAccess)
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxInFlightRequests));
+        if (StringUtils.isNotBlank(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (StringUtils.isNotBlank(accessKey)) {
+            builder.credentialsProvider(
+                    StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "application.file.storage.type", havingValue = "s3")
+    public CoverStore s3CoverStore(
+            S3Client coverS3Client,
+            @Value("${application.file.storage.s3.bucket}") String bucket,
+            @Value("${application.file.storage.s3.key-prefix:covers/}") String keyPrefix,
+            @Value("${application.file.storage.s3.part-size:8388608}") long partSize,
+            @Value("${application.file.storage.s3.read-chunk-size:1048576}") int readChunkSize,
+            @Value("${application.file.storage.s3.max-in-flight-requests:64}") int maxInFlightRequests,
+            @Value("${application.file.storage.s3.acquire-timeout:PT5S}") Duration acquireTimeout) {
+        return new S3CoverStore(
+                coverS3Client, bucket, keyPrefix, partSize, readChunkSize, maxInFlightRequests, acquireTimeout);
+    }
+}
@@ -0,0 +1,215 @@
+package com.bullionder.book_network.book.file;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CoverThumbnailService {
+
+    private final CoverStore coverStore;
+    private final FileStorageService fileStorageService;
+    private final MeterRegistry meterRegistry;
+    // only covers queued or running on this node, so the map never outgrows the pool and its queue
+    private final Map<String, CoverProcessingStatus> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${application.file.thumbnail.pool-size:2}")
+    private int poolSize;
+
+    @Value("${application.file.thumbnail.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${application.file.thumbnail.max-source-pixels:40000000}")
+    private long maxSourcePixels;
+
+    @Value("${application.file.thumbnail.failure-retention:PT15M}")
+    private Duration failureRetention;
+
+    @Value("${application.file.thumbnail.max-failures:10000}")
+    private long maxFailures;
+
+    private ThreadPoolExecutor executor;
+    private Cache<String, Boolean> failures;
+    private Timer processingTimer;
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("cover-thumbnail-"));
+        // a failed cover is retried once its failure expires, or right away when it is uploaded again
+        failures = Caffeine.newBuilder()
+                .maximumSize(maxFailures)
+                .expireAfterWrite(failureRetention)
+                .build();
+        Gauge.builder("book.cover.thumbnail.queue", executor, pool -> pool.getQueue()
+                        .size())
+                .description("Covers waiting for thumbnail generation")
+                .register(meterRegistry);
+        processingTimer = Timer.builder("book.cover.thumbnail.processing")
+                .description("Time spent generating the thumbnails of one cover")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void generateThumbnails(@NonNull String coverLocation) {
+        failures.invalidate(coverLocation);
+        requestThumbnails(coverLocation);
+    }
+
+    public void requestThumbnails(@NonNull String coverLocation) {
+        if (failures.getIfPresent(coverLocation) != null
+                || inFlight.putIfAbsent(coverLocation, CoverProcessingStatus.PENDING) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(coverLocation));
+        } catch (RejectedExecutionException e) {
+            log.warn("Thumbnail queue is full, {} will be processed on a later request", coverLocation);
+            inFlight.remove(coverLocation);
+        }
+    }
+
+    // derived from the stored thumbnails so that it holds on every node and after a restart,
+    // missing thumbnails that this node is not working on are queued here
+    public CoverProcessingStatus getStatus(@NonNull String coverLocation) {
+        CoverProcessingStatus status = inFlight.get(coverLocation);
+        if (status != null) {
+            return status;
+        }
+        if (failures.getIfPresent(coverLocation) != null) {
+            return CoverProcessingStatus.FAILED;
+        }
+        try {
+            for (CoverSize size : CoverSize.values()) {
+                if (!coverStore.exists(FileUtils.thumbnailLocation(coverLocation, size))) {
+                    requestThumbnails(coverLocation);
+                    return Objects.requireNonNullElse(inFlight.get(coverLocation), CoverProcessingStatus.PENDING);
+                }
+            }
+            return CoverProcessingStatus.READY;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void generate(String coverLocation) {
+        inFlight.put(coverLocation, CoverProcessingStatus.PROCESSING);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            BufferedImage image = readImage(coverLocation);
+            for (CoverSize size : CoverSize.values()) {
+                String thumbnailLocation = FileUtils.thumbnailLocation(coverLocation, size);
+                if (!coverStore.exists(thumbnailLocation)) {
+                    writeThumbnail(scale(image, size.getWidth()), thumbnailLocation);
+                }
+            }
+            log.info("Thumbnails generated for " + coverLocation);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Thumbnails could not be generated for {}", coverLocation, e);
+            failures.put(coverLocation, Boolean.TRUE);
+        } finally {
+            inFlight.remove(coverLocation);
+            sample.stop(processingTimer);
+        }
+    }
+
+    private BufferedImage readImage(String coverLocation) throws IOException {
+        try (InputStream source = coverStore.openStream(coverLocation);
+                ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxSourcePixels) {
+                    throw new IOException("Image exceeds " + maxSourcePixels + " pixels");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxWidth) {
+        int targetWidth = Math.min(maxWidth, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        // halving in steps keeps bilinear downscaling from skipping source pixels
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private void writeThumbnail(BufferedImage thumbnail, String thumbnailLocation) throws IOException {
+        Path tempFile = fileStorageService.createTempFile("thumbnail-");
+        try {
+            if (!ImageIO.write(thumbnail, FileUtils.THUMBNAIL_EXTENSION, tempFile.toFile())) {
+                throw new IOException("No image writer for " + FileUtils.THUMBNAIL_EXTENSION);
+            }
+            coverStore.put(thumbnailLocation, tempFile);
+        } finally {
+            fileStorageService.deleteQuietly(tempFile);
+        }
+    }
+}
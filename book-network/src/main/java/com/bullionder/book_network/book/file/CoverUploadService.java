@@ -0,0 +1,210 @@
+package com.bullionder.book_network.book.file;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import jakarta.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+// the sessions live in the database and the received bytes in the cover store,
+// so a session survives restarts and every chunk may land on a different instance
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CoverUploadService {
+
+    public static final String NO_UPLOAD_FOUND_WITH_THE_ID = "No cover upload found with the ID:: ";
+    static final String UPLOAD_PREFIX = "uploads/";
+    private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final CoverStore coverStore;
+    private final CoverUploadSessionRepository sessionRepository;
+
+    @Value("${application.file.upload.session.max-size:50MB}")
+    private DataSize maxSize;
+
+    @Value("${application.file.upload.session.max-sessions:1000}")
+    private int maxSessions;
+
+    @Value("${application.file.upload.session.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    @Value("${application.file.upload.session.expiration:PT30M}")
+    private Duration expiration;
+
+    public CoverUploadSession createSession(
+            @NonNull Integer bookId, @NonNull Integer userId, Long length, String fileName) {
+        if (length != null && (length < 0 || length > maxSize.toBytes())) {
+            throw new OperationNotPermittedException("The cover cannot be larger than " + maxSize);
+        }
+        CoverUploadSessionRepository.ActiveSessions active = sessionRepository.countActive(userId);
+        if (active.ofUser() >= maxSessionsPerUser) {
+            throw new OperationNotPermittedException(
+                    "You have too many cover uploads in progress, complete or cancel one first");
+        }
+        if (active.total() >= maxSessions) {
+            throw new OperationNotPermittedException("Too many cover uploads are in progress, try again later");
+        }
+        return sessionRepository.insert(UUID.randomUUID().toString(), bookId, userId, length, fileName, expiration);
+    }
+
+    public CoverUploadSession findSession(@NonNull String uploadId, @NonNull Integer userId) {
+        return sessionRepository
+                .findActive(uploadId)
+                .filter(session -> Objects.equals(session.getUserId(), userId))
+                .orElseThrow(() -> new EntityNotFoundException(NO_UPLOAD_FOUND_WITH_THE_ID + uploadId));
+    }
+
+    public CoverUploadSession appendChunk(
+            @NonNull String uploadId, @NonNull Integer userId, long offset, @NonNull InputStream chunk)
+            throws IOException {
+        CoverUploadSession session = findSession(uploadId, userId);
+        if (session.isCompleting()) {
+            throw new OperationNotPermittedException("The upload is already being completed");
+        }
+        checkOffset(session, offset);
+        long limit = session.getLength() != null ? session.getLength() : maxSize.toBytes();
+        Path tempFile = fileStorageService.createTempFile("chunk-");
+        try {
+            long received = 0;
+            IOException broken = null;
+            try (OutputStream target = Files.newOutputStream(tempFile)) {
+                byte[] buffer = new byte[CHUNK_BUFFER_SIZE];
+                int count;
+                while ((count = chunk.read(buffer)) != -1) {
+                    if (offset + received + count > limit) {
+                        throw new OperationNotPermittedException("The cover cannot be larger than " + limit + " bytes");
+                    }
+                    target.write(buffer, 0, count);
+                    received += count;
+                }
+            } catch (IOException e) {
+                // the bytes that arrived before the connection broke are kept, so the upload resumes after them
+                broken = e;
+            }
+            if (received > 0) {
+                storePart(session, offset, received, tempFile);
+            }
+            if (broken != null) {
+                throw broken;
+            }
+            return findSession(uploadId, userId);
+        } finally {
+            fileStorageService.deleteQuietly(tempFile);
+        }
+    }
+
+    public String complete(@NonNull CoverUploadSession session) throws IOException {
+        if (!sessionRepository.startCompleting(session.getId(), expiration)) {
+            findSession(session.getId(), session.getUserId());
+            throw new OperationNotPermittedException("The upload is already being completed");
+        }
+        boolean completed = false;
+        Path tempFile = null;
+        try {
+            // chunks may have arrived on other instances since the caller read the session
+            CoverUploadSession current = findSession(session.getId(), session.getUserId());
+            if (current.getLength() != null && current.getOffset() != current.getLength()) {
+                throw new OperationNotPermittedException("The upload is incomplete, " + current.getOffset() + " of "
+                        + current.getLength() + " bytes were received");
+            }
+            tempFile = fileStorageService.createTempFile("session-");
+            String hash = assemble(session.getId(), tempFile);
+            String fileKey = fileStorageService.storeFile(tempFile, hash, current.getFileName());
+            deleteParts(sessionRepository.delete(session.getId()));
+            completed = true;
+            return fileKey;
+        } finally {
+            fileStorageService.deleteQuietly(tempFile);
+            if (!completed) {
+                sessionRepository.stopCompleting(session.getId());
+            }
+        }
+    }
+
+    public void cancel(@NonNull CoverUploadSession session) {
+        deleteParts(sessionRepository.delete(session.getId()));
+    }
+
+    // every instance runs the purge, deleting a session is idempotent
+    @Scheduled(fixedDelayString = "${application.file.upload.session.purge-interval:PT1M}")
+    public void purgeExpiredSessions() {
+        Map<String, List<String>> expired = sessionRepository.deleteExpired();
+        expired.forEach((id, parts) -> {
+            log.info("Cover upload {} expired after {} parts", id, parts.size());
+            deleteParts(parts);
+        });
+    }
+
+    static boolean isUploadPart(String key) {
+        return key.startsWith(UPLOAD_PREFIX);
+    }
+
+    static String sessionIdOf(String partKey) {
+        return partKey.substring(UPLOAD_PREFIX.length(), partKey.indexOf('/', UPLOAD_PREFIX.length()));
+    }
+
+    private void storePart(CoverUploadSession session, long offset, long length, Path content) throws IOException {
+        String partKey = UPLOAD_PREFIX + session.getId() + "/" + UUID.randomUUID();
+        coverStore.put(partKey, content);
+        if (!sessionRepository.addPart(session.getId(), offset, length, partKey, expiration)) {
+            // another chunk for the same offset won, or the session was completed, cancelled or expired meanwhile
+            deleteParts(List.of(partKey));
+            checkOffset(findSession(session.getId(), session.getUserId()), offset);
+            throw new OperationNotPermittedException("The upload is already being completed");
+        }
+    }
+
+    private String assemble(String uploadId, Path target) throws IOException {
+        MessageDigest digest = FileStorageService.newDigest();
+        long position = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (CoverUploadSessionRepository.UploadPart part : sessionRepository.findParts(uploadId)) {
+                if (part.position() != position) {
+                    throw new IOException("Cover upload " + uploadId + " is missing the bytes from " + position);
+                }
+                try (InputStream in = new DigestInputStream(coverStore.openStream(part.fileKey()), digest)) {
+                    in.transferTo(out);
+                }
+                position += part.length();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void deleteParts(List<String> partKeys) {
+        for (String partKey : partKeys) {
+            try {
+                coverStore.delete(partKey);
+            } catch (IOException e) {
+                // the orphan collector removes parts whose session is gone
+                log.warn("Cover upload part {} could not be deleted", partKey, e);
+            }
+        }
+    }
+
+    private static void checkOffset(CoverUploadSession session, long offset) {
+        if (offset != session.getOffset()) {
+            throw new OperationNotPermittedException(
+                    "The chunk offset " + offset + " does not match the upload offset " + session.getOffset());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.bullionder.book_network.book.file;
+
+import java.time.Instant;
+import lombok.Getter;
+
+@Getter
+public class CoverUploadSession {
+
+    private final String id;
+    private final Integer bookId;
+    private final Integer userId;
+    private final Long length;
+    private final String fileName;
+    private final long offset;
+    private final boolean completing;
+    private final Instant expiresAt;
+
+    CoverUploadSession(
+            String id,
+            Integer bookId,
+            Integer userId,
+            Long length,
+            String fileName,
+            long offset,
+            boolean completing,
+            Instant expiresAt) {
+        this.id = id;
+        this.bookId = bookId;
+        this.userId = userId;
+        this.length = length;
+        this.fileName = fileName;
+        this.offset = offset;
+        this.completing = completing;
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,185 @@
+package com.bullionder.book_network.book.file;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class CoverUploadSessionRepository {
+
+    private static final String COLUMNS =
+            """
+            id, book_id, user_id, length, file_name, received,
+            coalesce(completing_until > LOCALTIMESTAMP, false) AS completing, expires_at
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public CoverUploadSession insert(
+            String id, Integer bookId, Integer userId, Long length, String fileName, Duration expiration) {
+        return jdbcTemplate.queryForObject(
+                """
+                INSERT INTO cover_upload_session (id, book_id, user_id, length, file_name, expires_at, created_date)
+                VALUES (:id, :bookId, :userId, :length, :fileName,
+                    LOCALTIMESTAMP + make_interval(secs => :expirationSeconds), LOCALTIMESTAMP)
+                RETURNING
+                """
+                        + COLUMNS,
+                new MapSqlParameterSource()
+                        .addValue("id", id)
+                        .addValue("bookId", bookId)
+                        .addValue("userId", userId)
+                        .addValue("length", length)
+                        .addValue("fileName", fileName)
+                        .addValue("expirationSeconds", expiration.toSeconds()),
+                CoverUploadSessionRepository::toSession);
+    }
+
+    public Optional<CoverUploadSession> findActive(String id) {
+        return jdbcTemplate
+                .query(
+                        "SELECT " + COLUMNS
+                                + " FROM cover_upload_session WHERE id = :id AND expires_at > LOCALTIMESTAMP",
+                        new MapSqlParameterSource("id", id),
+                        CoverUploadSessionRepository::toSession)
+                .stream()
+                .findFirst();
+    }
+
+    public ActiveSessions countActive(Integer userId) {
+        return jdbcTemplate.queryForObject(
+                """
+                SELECT count(*) AS total, count(*) FILTER (WHERE user_id = :userId) AS of_user
+                FROM cover_upload_session
+                WHERE expires_at > LOCALTIMESTAMP
+                """,
+                new MapSqlParameterSource("userId", userId),
+                (resultSet, rowNumber) -> new ActiveSessions(resultSet.getLong("total"), resultSet.getLong("of_user")));
+    }
+
+    public boolean exists(String id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM cover_upload_session WHERE id = :id)",
+                new MapSqlParameterSource("id", id),
+                Boolean.class));
+    }
+
+    // the offset check makes this the single point where concurrent chunks, on any instance, are ordered:
+    // only the chunk that still starts at the received offset records its part
+    public boolean addPart(String id, long offset, long length, String fileKey, Duration expiration) {
+        return jdbcTemplate.update(
+                        """
+                        WITH advanced AS (
+                            UPDATE cover_upload_session
+                            SET received = received + :length,
+                                expires_at = LOCALTIMESTAMP + make_interval(secs => :expirationSeconds)
+                            WHERE id = :id
+                            AND received = :offset
+                            AND expires_at > LOCALTIMESTAMP
+                            AND (completing_until IS NULL OR completing_until <= LOCALTIMESTAMP)
+                            RETURNING id
+                        )
+                        INSERT INTO cover_upload_part (session_id, position, length, file_key)
+                        SELECT id, :offset, :length, :fileKey FROM advanced
+                        """,
+                        new MapSqlParameterSource()
+                                .addValue("id", id)
+                                .addValue("offset", offset)
+                                .addValue("length", length)
+                                .addValue("fileKey", fileKey)
+                                .addValue("expirationSeconds", expiration.toSeconds()))
+                == 1;
+    }
+
+    public List<UploadPart> findParts(String id) {
+        return jdbcTemplate.query(
+                "SELECT position, length, file_key FROM cover_upload_part WHERE session_id = :id ORDER BY position",
+                new MapSqlParameterSource("id", id),
+                (resultSet, rowNumber) -> new UploadPart(
+                        resultSet.getLong("position"), resultSet.getLong("length"), resultSet.getString("file_key")));
+    }
+
+    // the lease hands the session back if the instance completing it dies, it also keeps the session from expiring
+    public boolean startCompleting(String id, Duration lease) {
+        return jdbcTemplate.update(
+                        """
+                        UPDATE cover_upload_session
+                        SET completing_until = LOCALTIMESTAMP + make_interval(secs => :leaseSeconds),
+                            expires_at = greatest(expires_at, LOCALTIMESTAMP + make_interval(secs => :leaseSeconds))
+                        WHERE id = :id
+                        AND expires_at > LOCALTIMESTAMP
+                        AND (completing_until IS NULL OR completing_until <= LOCALTIMESTAMP)
+                        """,
+                        new MapSqlParameterSource().addValue("id", id).addValue("leaseSeconds", lease.toSeconds()))
+                == 1;
+    }
+
+    public void stopCompleting(String id) {
+        jdbcTemplate.update(
+                "UPDATE cover_upload_session SET completing_until = NULL WHERE id = :id",
+                new MapSqlParameterSource("id", id));
+    }
+
+    // returns the keys of the parts, the caller removes them from the cover store
+    public List<String> delete(String id) {
+        return jdbcTemplate.queryForList(
+                """
+                WITH removed AS (
+                    DELETE FROM cover_upload_session WHERE id = :id RETURNING id
+                )
+                DELETE FROM cover_upload_part WHERE session_id IN (SELECT id FROM removed) RETURNING file_key
+                """,
+                new MapSqlParameterSource("id", id),
+                String.class);
+    }
+
+    public Map<String, List<String>> deleteExpired() {
+        Map<String, List<String>> partsBySession = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                """
+                WITH removed AS (
+                    DELETE FROM cover_upload_session WHERE expires_at <= LOCALTIMESTAMP RETURNING id
+                ), parts AS (
+                    DELETE FROM cover_upload_part WHERE session_id IN (SELECT id FROM removed)
+                    RETURNING session_id, file_key
+                )
+                SELECT removed.id, parts.file_key
+                FROM removed
+                LEFT JOIN parts ON parts.session_id = removed.id
+                """,
+                resultSet -> {
+                    List<String> parts =
+                            partsBySession.computeIfAbsent(resultSet.getString("id"), id -> new ArrayList<>());
+                    if (resultSet.getString("file_key") != null) {
+                        parts.add(resultSet.getString("file_key"));
+                    }
+                });
+        return partsBySession;
+    }
+
+    private static CoverUploadSession toSession(ResultSet resultSet, int rowNumber) throws SQLException {
+        return new CoverUploadSession(
+                resultSet.getString("id"),
+                resultSet.getInt("book_id"),
+                resultSet.getInt("user_id"),
+                resultSet.getObject("length", Long.class),
+                resultSet.getString("file_name"),
+                resultSet.getLong("received"),
+                resultSet.getBoolean("completing"),
+                resultSet.getTimestamp("expires_at").toInstant());
+    }
+
+    public record ActiveSessions(long total, long ofUser) {}
+
+    public record UploadPart(long position, long length, String fileKey) {}
+}
@@ -1,13 +1,16 @@
 package com.bullionder.book_network.book.file;
 
-import static java.io.File.separator;
-import static java.lang.System.currentTimeMillis;
-
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,36 +23,111 @@ import org.springframework.web.multipart.MultipartFile;
 @Slf4j
 public class FileStorageService {
 
-    @Value("${application.file.upload.photos-output-path}")
-    private String fileUploadPath;
+    static final String STAGING_PREFIX = "staging/";
+
+    private final CoverStore coverStore;
+    private final CoverFileLocks coverFileLocks;
+
+    @Value("${application.file.upload.temp-path:${application.file.upload.photos-output-path:${java.io.tmpdir}}/tmp}")
+    private String tempPath;
 
-    public String saveFile(@NonNull MultipartFile sourceFile, @NonNull Integer userId) {
-        final String fileUploadSubPath = "users" + separator + userId;
-        return uploadFile(sourceFile, fileUploadSubPath);
+    public String saveFile(@NonNull MultipartFile sourceFile) {
+        Path tempFile = null;
+        try {
+            tempFile = createTempFile("upload-");
+            MessageDigest digest = newDigest();
+            try (InputStream in = new DigestInputStream(sourceFile.getInputStream(), digest)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return storeFile(tempFile, HexFormat.of().formatHex(digest.digest()), sourceFile.getOriginalFilename());
+        } catch (IOException e) {
+            log.error("File was not saved", e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+        return null;
     }
 
-    private String uploadFile(@NonNull MultipartFile sourceFile, @NonNull String fileUploadSubPath) {
-        final String finalUploadPath = fileUploadPath + separator + fileUploadSubPath;
-        File targetFolder = new File(finalUploadPath);
-        if (!targetFolder.exists()) {
-            boolean folderCreated = targetFolder.mkdirs();
-            if (!folderCreated) {
-                log.warn("Failed to create the target folder");
-                return null;
+    public String storeFile(@NonNull Path tempFile, @NonNull String hash, String originalFilename) throws IOException {
+        final String fileKey = toFileKey(hash, getFileExtension(originalFilename));
+        if (claimStoredFile(fileKey)) {
+            return fileKey;
+        }
+        // the upload itself holds neither the lock nor a pooled connection, only the rename into place does
+        String stagingKey = STAGING_PREFIX + UUID.randomUUID();
+        coverStore.put(stagingKey, tempFile);
+        boolean moved = false;
+        try {
+            moved = coverFileLocks.whileStoring(fileKey, () -> {
+                if (claimExisting(fileKey)) {
+                    return false;
+                }
+                coverStore.move(stagingKey, fileKey);
+                log.info("File saved to " + fileKey);
+                return true;
+            });
+        } finally {
+            if (!moved) {
+                deleteStagedQuietly(stagingKey);
             }
         }
+        return fileKey;
+    }
 
-        final String fileExtension = getFileExtension(sourceFile.getOriginalFilename());
-        String targetFilePath = finalUploadPath + separator + currentTimeMillis() + "." + fileExtension;
-        Path targetPath = Paths.get(targetFilePath);
+    private void deleteStagedQuietly(String stagingKey) {
         try {
-            Files.write(targetPath, sourceFile.getBytes());
-            log.info("File saved to " + targetFilePath);
-            return targetFilePath;
+            coverStore.delete(stagingKey);
         } catch (IOException e) {
-            log.error("File was not saved", e);
+            log.warn("Staged upload {} could not be deleted, the orphan collector removes it", stagingKey, e);
+        }
+    }
+
+    private boolean claimStoredFile(String fileKey) throws IOException {
+        return coverFileLocks.whileStoring(fileKey, () -> claimExisting(fileKey));
+    }
+
+    // the touch keeps the orphan collector away from the file until the book that references it is saved
+    private boolean claimExisting(String fileKey) throws IOException {
+        if (!coverStore.exists(fileKey)) {
+            return false;
+        }
+        coverStore.touch(fileKey);
+        log.info("File already stored as " + fileKey);
+        return true;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    public Path createTempFile(String prefix) throws IOException {
+        Path tempFolder = getTempFolder();
+        Files.createDirectories(tempFolder);
+        return Files.createTempFile(tempFolder, prefix, ".part");
+    }
+
+    public Path getTempFolder() {
+        return Paths.get(tempPath).toAbsolutePath().normalize();
+    }
+
+    public static String toFileKey(String hash, String fileExtension) {
+        final String fileName = fileExtension.isEmpty() ? hash : hash + "." + fileExtension;
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + fileName;
+    }
+
+    public void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Temporary file {} could not be deleted", file);
         }
-        return null;
     }
 
     private String getFileExtension(String fileName) {
@@ -60,6 +138,6 @@ public class FileStorageService {
         if (lastDotIndex == -1) {
             return "";
         }
-        return fileName.substring(lastDotIndex + 1).toLowerCase();
+        return fileName.substring(lastDotIndex + 1).toLowerCase().replaceAll("[^a-z0-9]", "");
     }
 }
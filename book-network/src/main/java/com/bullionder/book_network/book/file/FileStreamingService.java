@@ -0,0 +1,128 @@
+package com.bullionder.book_network.book.file;
+
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileStreamingService {
+
+    private static final CacheControl COVER_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofDays(365)).cachePrivate();
+    // Tomcat's sendfile request attributes, the same ones its DefaultServlet sets for static resources
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final CoverStore coverStore;
+    private final CoverCache coverCache;
+    private final CoverThumbnailService coverThumbnailService;
+
+    public void streamCover(
+            @NonNull String coverLocation,
+            CoverSize size,
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response)
+            throws IOException {
+        String fileLocation = coverLocation;
+        CacheControl cacheControl = COVER_CACHE_CONTROL;
+        if (size != null) {
+            String thumbnailLocation = FileUtils.thumbnailLocation(coverLocation, size);
+            if (coverCache.contains(thumbnailLocation) || coverStore.exists(thumbnailLocation)) {
+                fileLocation = thumbnailLocation;
+            } else {
+                coverThumbnailService.requestThumbnails(coverLocation);
+                // the original stands in until the thumbnail is generated, so it must not be cached under this URL
+                cacheControl = CacheControl.noCache();
+            }
+        }
+        streamFile(fileLocation, cacheControl, request, response);
+    }
+
+    private void streamFile(
+            String fileLocation, CacheControl cacheControl, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String etag = "\"" + FileUtils.fileVersion(fileLocation) + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+
+        CoverCache.CachedCover cover = coverCache.find(fileLocation).orElseThrow(() -> {
+            log.warn("No file found in the path {}", fileLocation);
+            return new EntityNotFoundException("No file found in the path:: " + fileLocation);
+        });
+        Optional<ByteBuffer> cachedContent = cover.content();
+        long fileSize = cover.size();
+        long position = 0;
+        long count = fileSize;
+        List<HttpRange> ranges = parseRanges(request.getHeader(HttpHeaders.RANGE));
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start = range.getRangeStart(fileSize);
+            long end = range.getRangeEnd(fileSize);
+            if (fileSize == 0 || start >= fileSize || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            position = start;
+            count = end - start + 1;
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(fileLocation)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString());
+        response.setContentLengthLong(count);
+        if (cachedContent.isPresent()) {
+            CoverCache.transferTo(cachedContent.get(), position, count, response.getOutputStream());
+            return;
+        }
+        Optional<Path> localFile =
+                sendfileSupported(request) ? coverStore.findLocalFile(fileLocation) : Optional.empty();
+        if (localFile.isPresent()) {
+            // the connector writes the file to the socket with sendfile once this request returns
+            request.setAttribute(SENDFILE_FILENAME_ATTR, localFile.get().toString());
+            request.setAttribute(SENDFILE_START_ATTR, position);
+            request.setAttribute(SENDFILE_END_ATTR, position + count);
+            return;
+        }
+        coverStore.transferTo(fileLocation, position, count, response.getOutputStream());
+    }
+
+    private static boolean sendfileSupported(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    private List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed range header {}", rangeHeader);
+            return List.of();
+        }
+    }
+}
@@ -1,25 +1,25 @@
 package com.bullionder.book_network.book.file;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import lombok.extern.slf4j.Slf4j;
+import java.nio.file.Paths;
 import org.apache.commons.lang3.StringUtils;
 
-@Slf4j
 public class FileUtils {
 
-    public static byte[] readFileFromLocation(String fileUrl) {
+    public static final String THUMBNAIL_EXTENSION = "jpg";
+
+    public static String fileVersion(String fileUrl) {
         if (StringUtils.isBlank(fileUrl)) {
             return null;
         }
-        try {
-            Path filePath = new File(fileUrl).toPath();
-            return Files.readAllBytes(filePath);
-        } catch (IOException e) {
-            log.warn("No file found in the path {}", fileUrl);
-        }
-        return null;
+        Path fileName = Paths.get(fileUrl).getFileName();
+        return StringUtils.substringBeforeLast(fileName.toString(), ".");
+    }
+
+    public static String thumbnailLocation(String fileUrl, CoverSize size) {
+        int fileNameIndex = Math.max(fileUrl.lastIndexOf('/'), fileUrl.lastIndexOf('\\')) + 1;
+        int extensionIndex = fileUrl.lastIndexOf('.');
+        String withoutExtension = extensionIndex > fileNameIndex ? fileUrl.substring(0, extensionIndex) : fileUrl;
+        return withoutExtension + "-" + size.name().toLowerCase() + "." + THUMBNAIL_EXTENSION;
     }
 }
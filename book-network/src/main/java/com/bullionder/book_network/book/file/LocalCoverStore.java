@@ -0,0 +1,143 @@
+package com.bullionder.book_network.book.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class LocalCoverStore implements CoverStore {
+
+    private final String fileUploadPath;
+    private final Path uploadRoot;
+
+    public LocalCoverStore(String fileUploadPath) {
+        this.fileUploadPath = fileUploadPath;
+        this.uploadRoot = Paths.get(fileUploadPath).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public OptionalLong findSize(String key) throws IOException {
+        Path file = resolve(key);
+        if (file == null || !Files.isRegularFile(file)) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(Files.size(file));
+    }
+
+    @Override
+    public Optional<Instant> findLastModified(String key) throws IOException {
+        Path file = resolve(key);
+        if (file == null || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(Files.getLastModifiedTime(file).toInstant());
+    }
+
+    @Override
+    public Optional<Path> findLocalFile(String key) {
+        Path file = resolve(key);
+        return file == null || !Files.isRegularFile(file) ? Optional.empty() : Optional.of(file);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = resolveExisting(key, false);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void touch(String key) throws IOException {
+        Files.setLastModifiedTime(resolveExisting(key, true), FileTime.from(Instant.now()));
+    }
+
+    @Override
+    public void move(String sourceKey, String targetKey) throws IOException {
+        put(targetKey, resolveExisting(sourceKey, true));
+    }
+
+    @Override
+    public InputStream openStream(String key) throws IOException {
+        return Files.newInputStream(resolveExisting(key, true));
+    }
+
+    @Override
+    public void transferTo(String key, long position, long count, OutputStream target) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolveExisting(key, true), StandardOpenOption.READ)) {
+            // the servlet stream is not a socket channel, so this copies through a buffer; the zero-copy path
+            // is the container's sendfile, see FileStreamingService
+            WritableByteChannel targetChannel = Channels.newChannel(target);
+            while (count > 0) {
+                long transferred = channel.transferTo(position, count, targetChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path file = resolve(key);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public Stream<StoredCover> listCovers() throws IOException {
+        if (!Files.isDirectory(uploadRoot)) {
+            return Stream.empty();
+        }
+        return Files.walk(uploadRoot).filter(Files::isRegularFile).map(file -> {
+            String key = uploadRoot.relativize(file).toString().replace('\\', '/');
+            try {
+                return new StoredCover(key, Files.getLastModifiedTime(file).toInstant());
+            } catch (IOException e) {
+                return new StoredCover(key, Instant.now());
+            }
+        });
+    }
+
+    private Path resolveExisting(String key, boolean mustExist) throws IOException {
+        Path file = resolve(key);
+        if (file == null || (mustExist && !Files.isRegularFile(file))) {
+            throw new NoSuchFileException(key);
+        }
+        return file;
+    }
+
+    private Path resolve(String key) {
+        Path file = key.startsWith(fileUploadPath)
+                // covers uploaded before content addressing stored the full path
+                ? Paths.get(key).toAbsolutePath().normalize()
+                : uploadRoot.resolve(key).normalize();
+        if (!file.startsWith(uploadRoot)) {
+            log.warn("Rejected file path outside of the upload folder {}", key);
+            return null;
+        }
+        return file;
+    }
+}
@@ -0,0 +1,136 @@
+package com.bullionder.book_network.book.file;
+
+import com.bullionder.book_network.book.BookRepository;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrphanFileCollector {
+
+    private static final Pattern FILE_KEY_PATTERN =
+            Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}(\\.[a-z0-9]+)?");
+
+    private final CoverStore coverStore;
+    private final CoverCache coverCache;
+    private final CoverFileLocks coverFileLocks;
+    private final FileStorageService fileStorageService;
+    private final BookRepository bookRepository;
+    private final CoverUploadSessionRepository uploadSessionRepository;
+
+    @Value("${application.file.upload.orphan-collector.grace-period:PT1H}")
+    private Duration gracePeriod;
+
+    @Value("${application.file.upload.orphan-collector.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(
+            initialDelayString = "${application.file.upload.orphan-collector.initial-delay:PT10M}",
+            fixedDelayString = "${application.file.upload.orphan-collector.interval:PT6H}")
+    public void collectOrphanFiles() {
+        Instant threshold = Instant.now().minus(gracePeriod);
+        int deleted = deleteStaleTempFiles(threshold);
+        List<String> batch = new ArrayList<>(batchSize);
+        try (Stream<CoverStore.StoredCover> covers = coverStore.listCovers()) {
+            for (CoverStore.StoredCover cover : (Iterable<CoverStore.StoredCover>) covers::iterator) {
+                // staged uploads are renamed into place within seconds, one this old belongs to a failed upload
+                if (cover.key().startsWith(FileStorageService.STAGING_PREFIX)
+                        && cover.lastModified().isBefore(threshold)) {
+                    coverStore.delete(cover.key());
+                    deleted++;
+                    continue;
+                }
+                // a part is removed with its session, one left behind was stored when the session was already gone
+                if (CoverUploadService.isUploadPart(cover.key())) {
+                    if (cover.lastModified().isBefore(threshold)
+                            && !uploadSessionRepository.exists(CoverUploadService.sessionIdOf(cover.key()))) {
+                        coverStore.delete(cover.key());
+                        deleted++;
+                    }
+                    continue;
+                }
+                if (!cover.lastModified().isBefore(threshold)
+                        || !FILE_KEY_PATTERN.matcher(cover.key()).matches()) {
+                    continue;
+                }
+                batch.add(cover.key());
+                if (batch.size() >= batchSize) {
+                    deleted += deleteUnreferenced(batch, threshold);
+                    batch.clear();
+                }
+            }
+            deleted += deleteUnreferenced(batch, threshold);
+        } catch (IOException e) {
+            log.error("Orphan file collection failed", e);
+        }
+        log.info("Orphan file collection removed {} files", deleted);
+    }
+
+    private int deleteUnreferenced(List<String> fileKeys, Instant threshold) throws IOException {
+        if (fileKeys.isEmpty()) {
+            return 0;
+        }
+        Set<String> referenced = bookRepository.findReferencedBookCovers(fileKeys);
+        int deleted = 0;
+        for (String fileKey : fileKeys) {
+            if (!referenced.contains(fileKey) && deleteIfStillUnreferenced(fileKey, threshold)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // an upload of the same content may have claimed the file since it was listed: it touches the file under the
+    // shared lock, so the file is only deleted if it is still old and unreferenced while this node holds the lock
+    private boolean deleteIfStillUnreferenced(String fileKey, Instant threshold) throws IOException {
+        return coverFileLocks.whileDeleting(fileKey, () -> {
+            Optional<Instant> lastModified = coverStore.findLastModified(fileKey);
+            if (lastModified.isEmpty()
+                    || !lastModified.get().isBefore(threshold)
+                    || !bookRepository
+                            .findReferencedBookCovers(List.of(fileKey))
+                            .isEmpty()) {
+                return false;
+            }
+            coverStore.delete(fileKey);
+            coverCache.invalidateCover(fileKey);
+            for (CoverSize size : CoverSize.values()) {
+                coverStore.delete(FileUtils.thumbnailLocation(fileKey, size));
+            }
+            return true;
+        });
+    }
+
+    private int deleteStaleTempFiles(Instant threshold) {
+        Path tempFolder = fileStorageService.getTempFolder();
+        if (!Files.isDirectory(tempFolder)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(threshold) && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Stale temporary files could not be deleted", e);
+        }
+        return deleted;
+    }
+}
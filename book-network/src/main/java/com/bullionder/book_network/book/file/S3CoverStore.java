@@ -0,0 +1,348 @@
+package com.bullionder.book_network.book.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+@Slf4j
+public class S3CoverStore implements CoverStore {
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String keyPrefix;
+    private final long partSize;
+    private final int readChunkSize;
+    private final Semaphore inFlightRequests;
+    private final Duration acquireTimeout;
+
+    public S3CoverStore(
+            S3Client s3Client,
+            String bucket,
+            String keyPrefix,
+            long partSize,
+            int readChunkSize,
+            int maxInFlightRequests,
+            Duration acquireTimeout) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+        this.partSize = partSize;
+        this.readChunkSize = readChunkSize;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests, true);
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public OptionalLong findSize(String key) throws IOException {
+        acquire();
+        try {
+            return OptionalLong.of(
+                    s3Client.headObject(request -> request.bucket(bucket).key(objectKey(key)))
+                            .contentLength());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return OptionalLong.empty();
+            }
+            throw new IOException("Could not read the size of " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not read the size of " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    @Override
+    public Optional<Instant> findLastModified(String key) throws IOException {
+        acquire();
+        try {
+            return Optional.of(
+                    s3Client.headObject(request -> request.bucket(bucket).key(objectKey(key)))
+                            .lastModified());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not read the modification time of " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not read the modification time of " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        acquire();
+        try {
+            if (size <= partSize) {
+                s3Client.putObject(request -> request.bucket(bucket).key(objectKey(key)), RequestBody.fromFile(source));
+            } else {
+                putMultipart(objectKey(key), source, size);
+            }
+        } catch (SdkException | UncheckedIOException e) {
+            throw new IOException("Could not store " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    @Override
+    public void touch(String key) throws IOException {
+        acquire();
+        try {
+            // copying an object onto itself is the only way to refresh its modification time
+            s3Client.copyObject(request -> request.sourceBucket(bucket)
+                    .sourceKey(objectKey(key))
+                    .destinationBucket(bucket)
+                    .destinationKey(objectKey(key))
+                    .metadata(Map.of("touched-at", Instant.now().toString()))
+                    .metadataDirective(MetadataDirective.REPLACE));
+        } catch (SdkException e) {
+            throw new IOException("Could not touch " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    @Override
+    public void move(String sourceKey, String targetKey) throws IOException {
+        acquire();
+        try {
+            // a server-side copy, the bytes do not pass through this node again
+            s3Client.copyObject(request -> request.sourceBucket(bucket)
+                    .sourceKey(objectKey(sourceKey))
+                    .destinationBucket(bucket)
+                    .destinationKey(objectKey(targetKey)));
+            s3Client.deleteObject(request -> request.bucket(bucket).key(objectKey(sourceKey)));
+        } catch (SdkException e) {
+            throw new IOException("Could not move " + sourceKey + " to " + targetKey, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    // the first chunk is read right away, so a missing cover fails here and not on the first read
+    @Override
+    public InputStream openStream(String key) throws IOException {
+        return new ChunkedObjectInputStream(key, readChunk(key, 0, readChunkSize, true));
+    }
+
+    // a slow client must not hold a request slot or a pooled S3 connection, so the range is read chunk by chunk
+    // into memory and each chunk is written after its request completed
+    @Override
+    public void transferTo(String key, long position, long count, OutputStream target) throws IOException {
+        while (count > 0) {
+            byte[] chunk = readChunk(key, position, (int) Math.min(count, readChunkSize), true);
+            if (chunk.length == 0) {
+                return;
+            }
+            target.write(chunk);
+            position += chunk.length;
+            count -= chunk.length;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        acquire();
+        try {
+            s3Client.deleteObject(request -> request.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    @Override
+    public Stream<StoredCover> listCovers() {
+        return s3Client.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(keyPrefix)).contents().stream()
+                .map(object -> new StoredCover(object.key().substring(keyPrefix.length()), object.lastModified()));
+    }
+
+    private void putMultipart(String objectKey, Path source, long size) {
+        String uploadId = s3Client.createMultipartUpload(
+                        request -> request.bucket(bucket).key(objectKey))
+                .uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                final int currentPart = partNumber;
+                final long partOffset = offset;
+                final long partLength = Math.min(partSize, size - offset);
+                String etag = s3Client.uploadPart(
+                                request -> request.bucket(bucket)
+                                        .key(objectKey)
+                                        .uploadId(uploadId)
+                                        .partNumber(currentPart),
+                                RequestBody.fromContentProvider(
+                                        () -> new FileSliceInputStream(source, partOffset, partLength),
+                                        partLength,
+                                        "application/octet-stream"))
+                        .eTag();
+                parts.add(CompletedPart.builder()
+                        .partNumber(currentPart)
+                        .eTag(etag)
+                        .build());
+            }
+            s3Client.completeMultipartUpload(request -> request.bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(
+                            CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (SdkException | UncheckedIOException e) {
+            log.warn("Aborting multipart upload of {}", objectKey);
+            s3Client.abortMultipartUpload(
+                    request -> request.bucket(bucket).key(objectKey).uploadId(uploadId));
+            throw e;
+        }
+    }
+
+    private byte[] readChunk(String key, long position, int length, boolean mustExist) throws IOException {
+        acquire();
+        try (ResponseInputStream<GetObjectResponse> stream = s3Client.getObject(request -> request.bucket(bucket)
+                .key(objectKey(key))
+                .range("bytes=" + position + "-" + (position + length - 1)))) {
+            return stream.readAllBytes();
+        } catch (S3Exception e) {
+            // a range that starts at the end of the object, the previous chunk ended exactly there
+            if (e.statusCode() == 416 && (position > 0 || !mustExist)) {
+                return new byte[0];
+            }
+            throw new IOException("Could not read " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + key, e);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+
+    private void acquire() throws IOException {
+        try {
+            if (!inFlightRequests.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new CoverStoreBusyException(
+                        "No S3 request slot became free within " + acquireTimeout + ", try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an S3 request slot");
+        }
+    }
+
+    private class ChunkedObjectInputStream extends InputStream {
+
+        private final String key;
+        private byte[] chunk;
+        private int offset;
+        private long chunkPosition;
+
+        ChunkedObjectInputStream(String key, byte[] firstChunk) {
+            this.key = key;
+            this.chunk = firstChunk;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (offset == chunk.length) {
+                // a short chunk was the last one
+                if (chunk.length < readChunkSize) {
+                    return -1;
+                }
+                chunkPosition += chunk.length;
+                chunk = readChunk(key, chunkPosition, readChunkSize, false);
+                offset = 0;
+                if (chunk.length == 0) {
+                    return -1;
+                }
+            }
+            int read = Math.min(len, chunk.length - offset);
+            System.arraycopy(chunk, offset, b, off, read);
+            offset += read;
+            return read;
+        }
+    }
+
+    private static class FileSliceInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        FileSliceInputStream(Path source, long position, long length) {
+            try {
+                this.channel = FileChannel.open(source, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
@@ -37,7 +38,7 @@ public class BaseEntity {
     @Column(nullable = false, updatable = false)
     private Integer createdBy;
 
-    @LastModifiedDate
+    @LastModifiedBy
     @Column(insertable = false)
     private Integer lastModifiedBy;
 }
@@ -0,0 +1,39 @@
+package com.bullionder.book_network.common;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// Caffeine runs a mapping function under a map lock, which pins a virtual thread to its carrier for as long as
+// the load blocks; here the map only receives a future, the caller loads outside the lock
+// and concurrent callers for the same key wait on that future instead of loading again
+public final class CacheLoads {
+
+    private CacheLoads() {}
+
+    public static <K, V> V get(AsyncCache<K, V> cache, K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> value = cache.get(key, (k, executor) -> loading);
+        if (value == loading) {
+            try {
+                loading.complete(loader.apply(key));
+            } catch (RuntimeException | Error e) {
+                // a failed future leaves the cache, the next caller loads again
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.bullionder.book_network.common;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+public class ConditionalRequests {
+
+    private static final String REVALIDATE =
+            CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    public static boolean checkNotModified(ServletWebRequest request, ContentVersion version) {
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+            // the same URL returns a different body for every user
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        }
+        String etag = "\""
+                + DigestUtils.md5DigestAsHex((version.lastModified() + "|" + version.count() + "|" + version.version())
+                        .getBytes(StandardCharsets.UTF_8))
+                + "\"";
+        if (version.lastModified() == null) {
+            return request.checkNotModified(etag);
+        }
+        return request.checkNotModified(
+                etag,
+                version.lastModified()
+                        .atZone(ZoneId.systemDefault())
+                        .toInstant()
+                        .toEpochMilli());
+    }
+}
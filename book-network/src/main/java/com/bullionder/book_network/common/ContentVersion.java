@@ -0,0 +1,6 @@
+package com.bullionder.book_network.common;
+
+import java.time.LocalDateTime;
+
+// the version moves on every conditional update, even when two of them share the same modification time
+public record ContentVersion(LocalDateTime lastModified, long count, long version) {}
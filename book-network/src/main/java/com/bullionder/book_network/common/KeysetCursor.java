@@ -0,0 +1,38 @@
+package com.bullionder.book_network.common;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+public record KeysetCursor(LocalDateTime createdDate, Integer id) {
+
+    // a position after every row, so the first page runs the same query as the following ones
+    public static final KeysetCursor START = new KeysetCursor(LocalDateTime.of(9999, 12, 31, 0, 0), Integer.MAX_VALUE);
+
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return START;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf('|');
+            return new KeysetCursor(
+                    LocalDateTime.parse(value.substring(0, separator)),
+                    Integer.valueOf(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new OperationNotPermittedException("The page cursor is invalid");
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((createdDate + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isStart() {
+        return START.equals(this);
+    }
+}
@@ -2,6 +2,7 @@ package com.bullionder.book_network.common;
 
 import java.util.List;
 import lombok.*;
+import org.springframework.data.domain.Slice;
 
 @Getter
 @Setter
@@ -13,8 +14,41 @@ public class PageResponse<T> {
     private List<T> content;
     private int number;
     private int size;
-    private long totalElements;
-    private int totalPages;
+    private Long totalElements;
+    private Integer totalPages;
+    private boolean totalElementsExact;
     private boolean first;
     private boolean last;
+    private String nextCursor;
+
+    public static <T> PageResponse<T> ofSlice(List<T> content, Slice<?> slice, Long totalElements, boolean exact) {
+        Integer totalPages = null;
+        if (totalElements != null) {
+            totalPages = slice.getSize() == 0 ? 1 : (int) Math.ceil((double) totalElements / slice.getSize());
+        }
+        return PageResponse.<T>builder()
+                .content(content)
+                .number(slice.getNumber())
+                .size(slice.getSize())
+                .totalElements(totalElements)
+                .totalPages(totalPages)
+                .totalElementsExact(totalElements != null && exact)
+                .first(slice.isFirst())
+                .last(slice.isLast())
+                .build();
+    }
+
+    public static <T> PageResponse<T> ofCursor(List<T> content, int size, KeysetCursor cursor, KeysetCursor next) {
+        return ofCursor(content, size, cursor.isStart(), next == null ? null : next.encode());
+    }
+
+    public static <T> PageResponse<T> ofCursor(List<T> content, int size, boolean first, String nextCursor) {
+        return PageResponse.<T>builder()
+                .content(content)
+                .size(size)
+                .first(first)
+                .last(nextCursor == null)
+                .nextCursor(nextCursor)
+                .build();
+    }
 }
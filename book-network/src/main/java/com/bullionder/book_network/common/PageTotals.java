@@ -0,0 +1,66 @@
+package com.bullionder.book_network.common;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+@Component
+public class PageTotals {
+
+    private final AsyncLoadingCache<CountKey, Long> approximateCounts;
+
+    public PageTotals(
+            MeterRegistry meterRegistry,
+            @Value("${application.pagination.count-cache.max-size:10000}") long maxSize,
+            @Value("${application.pagination.count-cache.refresh-after:PT1M}") Duration refreshAfter,
+            @Value("${application.pagination.count-cache.expire-after:PT30M}") Duration expireAfter) {
+        // a stale count is served while the refresh runs in the background, so only the first request waits
+        this.approximateCounts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .buildAsync(key -> key.counter().getAsLong());
+        CaffeineCacheMetrics.monitor(meterRegistry, approximateCounts, "page.count.cache");
+    }
+
+    public <T> PageResponse<T> toPageResponse(
+            Slice<?> slice, List<T> content, TotalMode mode, String query, Object argument, LongSupplier counter) {
+        if (slice.isFirst() && !slice.hasNext()) {
+            return PageResponse.ofSlice(content, slice, (long) slice.getNumberOfElements(), true);
+        }
+        return switch (mode) {
+            case EXACT -> PageResponse.ofSlice(content, slice, counter.getAsLong(), true);
+            case APPROXIMATE -> PageResponse.ofSlice(
+                    content, slice, approximateCount(new CountKey(query, argument, counter)), false);
+            case NONE -> PageResponse.ofSlice(content, slice, null, false);
+        };
+    }
+
+    // the first count runs on the caller, which keeps its transaction, only refreshes go to the cache's executor
+    private long approximateCount(CountKey key) {
+        return CacheLoads.get(
+                approximateCounts, key, countKey -> countKey.counter().getAsLong());
+    }
+
+    private record CountKey(String query, Object argument, LongSupplier counter) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CountKey key && query.equals(key.query) && Objects.equals(argument, key.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, argument);
+        }
+    }
+}
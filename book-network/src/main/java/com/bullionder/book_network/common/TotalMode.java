@@ -0,0 +1,7 @@
+package com.bullionder.book_network.common;
+
+public enum TotalMode {
+    EXACT,
+    APPROXIMATE,
+    NONE
+}
@@ -0,0 +1,43 @@
+package com.bullionder.book_network.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// a request that may change data pins its user to the primary, from its start until the window after it ends
+@RequiredArgsConstructor
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReplicaStickiness stickiness;
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain chain)
+            throws ServletException, IOException {
+        if (SAFE_METHODS.contains(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        recordWrite();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    private void recordWrite() {
+        Integer userId = ReplicaRoutingDataSource.currentUserId();
+        if (userId != null) {
+            stickiness.recordWrite(userId);
+        }
+    }
+}
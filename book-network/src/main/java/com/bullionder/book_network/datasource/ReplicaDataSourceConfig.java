@@ -0,0 +1,89 @@
+package com.bullionder.book_network.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+// only active with application.datasource.replica.urls set, without it the single pooled primary stays as is
+@Configuration
+@ConditionalOnProperty(name = "application.datasource.replica.urls")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    @Bean
+    public ReplicaStickiness replicaStickiness(
+            @Value("${application.datasource.replica.sticky-window:PT10S}") Duration stickyWindow,
+            @Value("${application.datasource.replica.sticky-max-users:100000}") long maxUsers) {
+        return new ReplicaStickiness(stickyWindow, maxUsers);
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            ReplicaStickiness replicaStickiness,
+            MeterRegistry meterRegistry,
+            @Value("${application.datasource.replica.urls}") List<String> urls,
+            @Value("${application.datasource.replica.username:${spring.datasource.username:}}") String username,
+            @Value("${application.datasource.replica.password:${spring.datasource.password:}}") String password,
+            @Value("${application.datasource.replica.pool-size:10}") int poolSize,
+            @Value("${application.datasource.replica.connection-timeout:PT2S}") Duration connectionTimeout,
+            @Value("${application.datasource.replica.max-lag:PT5S}") Duration maxLag) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int index = 0; index < urls.size(); index++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + index);
+            replica.setJdbcUrl(urls.get(index));
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setMaximumPoolSize(poolSize);
+            // a replica that stops answering must not hold up a read that the primary can serve
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setInitializationFailTimeout(-1);
+            replica.setReadOnly(true);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        ReplicaRoutingDataSource routing =
+                new ReplicaRoutingDataSource(primaryDataSource, replicas, replicaStickiness, maxLag);
+        routing.findReplicaNames()
+                .forEach(name -> Gauge.builder("datasource.replica.lag", routing, r -> r.findReplicaLag(name))
+                        .description("Seconds the replica is behind the primary, NaN when it did not answer")
+                        .tag("replica", name)
+                        .baseUnit("seconds")
+                        .register(meterRegistry));
+        return routing;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(ReplicaStickiness replicaStickiness) {
+        // the default order puts it behind the security filters, so the caller is known
+        return new FilterRegistrationBean<>(new ReadYourWritesFilter(replicaStickiness));
+    }
+}
@@ -0,0 +1,187 @@
+package com.bullionder.book_network.datasource;
+
+import com.bullionder.book_network.user.User;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// read-only transactions go to a replica that is close enough to the primary, everything else to the primary;
+// it has to sit behind a LazyConnectionDataSourceProxy, which defers the choice until the transaction is set up
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    // a replica that replayed everything it received is current even when the primary has been idle for a while
+    private static final String FIND_REPLICA_LAG =
+            """
+            SELECT CASE
+                WHEN NOT pg_is_in_recovery() THEN 0
+                WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+            END
+            """;
+
+    private final List<Replica> replicas;
+    private final ReplicaStickiness stickiness;
+    private final Duration maxLag;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(
+            DataSource primary, Map<String, DataSource> replicas, ReplicaStickiness stickiness, Duration maxLag) {
+        this.replicas = replicas.entrySet().stream()
+                .map(replica -> new Replica(replica.getKey(), replica.getValue()))
+                .toList();
+        this.stickiness = stickiness;
+        this.maxLag = maxLag;
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        // replicas only take reads once they were seen to keep up
+        checkReplicas();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        Integer userId = currentUserId();
+        if (userId != null && stickiness.isSticky(userId)) {
+            return PRIMARY;
+        }
+        Replica replica = nextUsableReplica();
+        return replica == null ? PRIMARY : replica.name;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return getResolvedDefaultDataSource().getConnection();
+        }
+        Replica replica = findReplica(key);
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            // the read still succeeds on the primary, the next check decides when the replica takes reads again
+            replica.lag = LagReading.unknown();
+            log.warn("Replica {} is unreachable, reading from the primary until it recovers", replica.name, e);
+            return getResolvedDefaultDataSource().getConnection();
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${application.datasource.replica.lag-check-interval:PT2S}",
+            fixedDelayString = "${application.datasource.replica.lag-check-interval:PT2S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                Double lag = new JdbcTemplate(replica.dataSource).queryForObject(FIND_REPLICA_LAG, Double.class);
+                replica.lag = new LagReading(lag == null ? 0 : lag, System.nanoTime());
+            } catch (RuntimeException e) {
+                replica.lag = LagReading.unknown();
+                log.warn("Lag of replica {} could not be read, it takes no reads until it answers", replica.name, e);
+            }
+        }
+    }
+
+    public List<String> findReplicaNames() {
+        return replicas.stream().map(replica -> replica.name).toList();
+    }
+
+    // NaN for a replica that did not answer its last check
+    public double findReplicaLag(String name) {
+        return findReplica(name).lag.seconds();
+    }
+
+    // the primary is a bean of its own and closed by the context
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    void recordLag(String name, Duration lag) {
+        recordLag(name, lag, Duration.ZERO);
+    }
+
+    void recordLag(String name, Duration lag, Duration age) {
+        findReplica(name).lag = new LagReading(lag.toMillis() / 1000.0, System.nanoTime() - age.toNanos());
+    }
+
+    private Replica nextUsableReplica() {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int offset = 0; offset < replicas.size(); offset++) {
+            Replica replica = replicas.get((start + offset) % replicas.size());
+            if (replica.lag.isWithin(maxLag)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private Replica findReplica(Object name) {
+        return replicas.stream()
+                .filter(replica -> replica.name.equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No replica named " + name));
+    }
+
+    static Integer currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            return user.getId();
+        }
+        return null;
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile LagReading lag = LagReading.unknown();
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    // a checker that stopped running leaves its last reading behind, so a reading older than the allowed lag
+    // says nothing about the replica anymore
+    private record LagReading(double seconds, long measuredAt) {
+
+        static LagReading unknown() {
+            return new LagReading(Double.NaN, 0);
+        }
+
+        boolean isWithin(Duration maxLag) {
+            return seconds * 1000 <= maxLag.toMillis() && System.nanoTime() - measuredAt <= maxLag.toNanos();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.bullionder.book_network.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+
+// users who just wrote read from the primary until the replicas have caught up with their change;
+// kept per node, so a load balancer without session affinity shortens the guarantee to the node that took the write
+public class ReplicaStickiness {
+
+    private final Cache<Integer, Boolean> recentWriters;
+
+    public ReplicaStickiness(Duration window, long maxUsers) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxUsers)
+                .build();
+    }
+
+    public void recordWrite(Integer userId) {
+        recentWriters.put(userId, Boolean.TRUE);
+    }
+
+    public boolean isSticky(Integer userId) {
+        return recentWriters.getIfPresent(userId) != null;
+    }
+}
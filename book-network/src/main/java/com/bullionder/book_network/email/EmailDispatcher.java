@@ -0,0 +1,255 @@
+package com.bullionder.book_network.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+// sends the outbox in batches, each batch over one SMTP connection; delivery is at least once,
+// an email whose send succeeded but whose deletion did not is sent again when its lease runs out
+@Component
+@Slf4j
+public class EmailDispatcher {
+
+    private final EmailOutbox outbox;
+    private final JavaMailSender mailSender;
+    private final SpringTemplateEngine templateEngine;
+    private final String from;
+    private final int batchSize;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration maxRetryDelay;
+    private final Duration failedRetention;
+    private final ThreadPoolExecutor executor;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+    private final AtomicLong pending = new AtomicLong();
+    private final Timer sendTimer;
+    private final Timer deliveryTimer;
+    private final Counter retries;
+    private final Counter abandoned;
+
+    public EmailDispatcher(
+            EmailOutbox outbox,
+            JavaMailSender mailSender,
+            SpringTemplateEngine templateEngine,
+            MeterRegistry meterRegistry,
+            @Value("${application.mailing.from:hubertmatlak13@gmail.com}") String from,
+            @Value("${application.mailing.outbox.batch-size:50}") int batchSize,
+            @Value("${application.mailing.outbox.lease:PT5M}") Duration lease,
+            @Value("${application.mailing.outbox.max-attempts:10}") int maxAttempts,
+            @Value("${application.mailing.outbox.retry-delay:PT30S}") Duration retryDelay,
+            @Value("${application.mailing.outbox.max-retry-delay:PT1H}") Duration maxRetryDelay,
+            @Value("${application.mailing.outbox.failed-retention:P7D}") Duration failedRetention) {
+        this.outbox = outbox;
+        this.mailSender = mailSender;
+        this.templateEngine = templateEngine;
+        this.from = from;
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.failedRetention = failedRetention;
+        // Jakarta Mail holds a monitor for the whole SMTP exchange, which would pin a virtual thread to its carrier,
+        // so sending stays on one platform thread whichever mode the requests run in
+        this.executor = new ThreadPoolExecutor(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1),
+                new CustomizableThreadFactory("email-dispatcher-"));
+        Gauge.builder("email.outbox.pending", pending, AtomicLong::get)
+                .description("Emails waiting in the outbox, measured on every poll")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("email.outbox.send")
+                .description("Time spent sending one batch over an SMTP connection")
+                .register(meterRegistry);
+        this.deliveryTimer = Timer.builder("email.outbox.delivery")
+                .description("Time from writing an email to the outbox until the mail server accepted it")
+                .register(meterRegistry);
+        this.retries = Counter.builder("email.outbox.retries")
+                .description("Failed sends that are tried again later")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder("email.outbox.abandoned")
+                .description("Emails given up on after their last attempt")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    // picks up retries that became due and emails of other nodes that were not woken up
+    @Scheduled(
+            initialDelayString = "${application.mailing.outbox.poll-interval:PT5S}",
+            fixedDelayString = "${application.mailing.outbox.poll-interval:PT5S}")
+    public void poll() {
+        wakeUp();
+    }
+
+    // abandoned emails are kept long enough to look into the failure, then their content goes
+    @Scheduled(
+            initialDelayString = "${application.mailing.outbox.purge-interval:PT1H}",
+            fixedDelayString = "${application.mailing.outbox.purge-interval:PT1H}")
+    public void purgeAbandonedEmails() {
+        int deleted = outbox.deleteFailedBefore(failedRetention);
+        if (deleted > 0) {
+            log.info("Deleted {} abandoned emails", deleted);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailQueued(EmailQueuedEvent event) {
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        wakeUpRequested.set(true);
+        if (!draining.compareAndSet(false, true)) {
+            // the running drain looks at the outbox once more before it stops
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    void drain() {
+        try {
+            while (wakeUpRequested.getAndSet(false)) {
+                List<OutboxEmail> batch;
+                do {
+                    batch = outbox.claim(batchSize, lease);
+                    if (!batch.isEmpty()) {
+                        send(batch);
+                    }
+                } while (batch.size() == batchSize);
+            }
+            pending.set(outbox.countPending());
+        } catch (RuntimeException e) {
+            log.warn("Email outbox could not be drained, the next poll tries again", e);
+        } finally {
+            draining.set(false);
+        }
+        if (wakeUpRequested.get()) {
+            wakeUp();
+        }
+    }
+
+    private void send(List<OutboxEmail> batch) {
+        // rendering first keeps the SMTP connection open only for the exchange itself
+        Map<MimeMessage, OutboxEmail> messages = new IdentityHashMap<>();
+        List<MimeMessage> ordered = new ArrayList<>();
+        for (OutboxEmail email : batch) {
+            try {
+                MimeMessage message = render(email);
+                messages.put(message, email);
+                ordered.add(message);
+            } catch (MessagingException | RuntimeException e) {
+                // a template that does not render now will not render on a later attempt either
+                abandon(email, e);
+            }
+        }
+        if (ordered.isEmpty()) {
+            return;
+        }
+        Map<Object, Exception> failures = Map.of();
+        Timer.Sample sample = Timer.start();
+        try {
+            mailSender.send(ordered.toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            // without failed messages only closing the connection went wrong, every message was accepted
+            failures = e.getFailedMessages();
+        } catch (MailException e) {
+            failures = new IdentityHashMap<>();
+            for (MimeMessage message : ordered) {
+                failures.put(message, e);
+            }
+        }
+        sample.stop(sendTimer);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> sentIds = new ArrayList<>();
+        for (MimeMessage message : ordered) {
+            OutboxEmail email = messages.get(message);
+            Exception failure = failures.get(message);
+            if (failure == null) {
+                sentIds.add(email.id());
+                deliveryTimer.record(Duration.between(email.createdDate(), now));
+            } else {
+                retryOrAbandon(email, failure);
+            }
+        }
+        outbox.delete(sentIds);
+    }
+
+    private MimeMessage render(OutboxEmail email) throws MessagingException {
+        Context context = new Context();
+        context.setVariables(email.variables());
+        String html = templateEngine.process(email.template(), context);
+
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(
+                mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED, StandardCharsets.UTF_8.name());
+        helper.setFrom(from);
+        helper.setTo(email.recipient());
+        helper.setSubject(email.subject());
+        helper.setText(html, true);
+        return mimeMessage;
+    }
+
+    private void retryOrAbandon(OutboxEmail email, Exception failure) {
+        int attempts = email.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            abandon(email, failure);
+            return;
+        }
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempts - 1, 30));
+        if (delay.compareTo(maxRetryDelay) > 0) {
+            delay = maxRetryDelay;
+        }
+        retries.increment();
+        log.warn("Email {} to {} failed on attempt {}, retrying in {}", email.id(), email.recipient(), attempts, delay);
+        outbox.retry(email.id(), delay, failure.getMessage());
+    }
+
+    private void abandon(OutboxEmail email, Exception failure) {
+        abandoned.increment();
+        log.error("Email {} to {} is given up on", email.id(), email.recipient(), failure);
+        outbox.abandon(email.id(), failure.getMessage());
+    }
+}
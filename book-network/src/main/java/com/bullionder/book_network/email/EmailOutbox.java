@@ -0,0 +1,160 @@
+package com.bullionder.book_network.email;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class EmailOutbox {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final TypeReference<Map<String, Object>> VARIABLES = new TypeReference<>() {};
+
+    // the lease hides the claimed emails from other dispatchers, and hands them back if this one dies while sending
+    private static final String CLAIM =
+            """
+            UPDATE email_outbox outbox
+            SET next_attempt_date = LOCALTIMESTAMP + make_interval(secs => :leaseSeconds)
+            FROM (
+                SELECT id
+                FROM email_outbox
+                WHERE failed_date IS NULL
+                AND next_attempt_date <= LOCALTIMESTAMP
+                ORDER BY next_attempt_date
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            ) claimed
+            WHERE outbox.id = claimed.id
+            RETURNING outbox.id, outbox.recipient, outbox.subject, outbox.template, outbox.variables,
+                outbox.attempts, outbox.created_date
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void insert(String recipient, String subject, String template, Map<String, Object> variables) {
+        jdbcTemplate.update(
+                """
+                INSERT INTO email_outbox (recipient, subject, template, variables, next_attempt_date, created_date)
+                VALUES (:recipient, :subject, :template, CAST(:variables AS jsonb), LOCALTIMESTAMP, LOCALTIMESTAMP)
+                """,
+                new MapSqlParameterSource()
+                        .addValue("recipient", recipient)
+                        .addValue("subject", subject)
+                        .addValue("template", template)
+                        .addValue("variables", toJson(variables)));
+    }
+
+    public List<OutboxEmail> claim(int limit, Duration lease) {
+        Map<Long, String> unreadable = new LinkedHashMap<>();
+        List<OutboxEmail> claimed = jdbcTemplate
+                .query(
+                        CLAIM,
+                        new MapSqlParameterSource()
+                                .addValue("limit", limit)
+                                .addValue("leaseSeconds", lease.toSeconds()),
+                        (resultSet, rowNumber) -> {
+                            long id = resultSet.getLong("id");
+                            Map<String, Object> variables;
+                            try {
+                                variables = objectMapper.readValue(resultSet.getString("variables"), VARIABLES);
+                            } catch (JsonProcessingException e) {
+                                unreadable.put(id, "Email variables cannot be read: " + e.getOriginalMessage());
+                                return null;
+                            }
+                            return new OutboxEmail(
+                                    id,
+                                    resultSet.getString("recipient"),
+                                    resultSet.getString("subject"),
+                                    resultSet.getString("template"),
+                                    variables,
+                                    resultSet.getInt("attempts"),
+                                    resultSet.getObject("created_date", LocalDateTime.class));
+                        })
+                .stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(OutboxEmail::id))
+                .toList();
+        // one unreadable email must not hold back the batch, nor come back with every lease
+        unreadable.forEach((id, error) -> {
+            log.error("Email {} is given up on: {}", id, error);
+            abandon(id, error);
+        });
+        return claimed;
+    }
+
+    public void delete(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM email_outbox WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids));
+    }
+
+    public void retry(Long id, Duration delay, String error) {
+        jdbcTemplate.update(
+                """
+                UPDATE email_outbox
+                SET attempts = attempts + 1,
+                    next_attempt_date = LOCALTIMESTAMP + make_interval(secs => :delaySeconds),
+                    last_error = :error
+                WHERE id = :id
+                """,
+                new MapSqlParameterSource()
+                        .addValue("id", id)
+                        .addValue("delaySeconds", delay.toMillis() / 1000.0)
+                        .addValue("error", truncate(error)));
+    }
+
+    public void abandon(Long id, String error) {
+        jdbcTemplate.update(
+                """
+                UPDATE email_outbox
+                SET attempts = attempts + 1, failed_date = LOCALTIMESTAMP, last_error = :error
+                WHERE id = :id
+                """,
+                new MapSqlParameterSource().addValue("id", id).addValue("error", truncate(error)));
+    }
+
+    // abandoned emails still hold their variables, activation codes among them
+    public int deleteFailedBefore(Duration retention) {
+        return jdbcTemplate.update(
+                """
+                DELETE FROM email_outbox
+                WHERE failed_date < LOCALTIMESTAMP - make_interval(secs => :retentionSeconds)
+                """,
+                new MapSqlParameterSource("retentionSeconds", retention.toSeconds()));
+    }
+
+    public long countPending() {
+        Long pending = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM email_outbox WHERE failed_date IS NULL", Map.of(), Long.class);
+        return pending == null ? 0 : pending;
+    }
+
+    private String toJson(Map<String, Object> variables) {
+        try {
+            return objectMapper.writeValueAsString(variables);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email variables cannot be written as JSON", e);
+        }
+    }
+
+    private static String truncate(String error) {
+        return error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
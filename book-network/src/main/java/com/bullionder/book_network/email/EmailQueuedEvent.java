@@ -0,0 +1,3 @@
+package com.bullionder.book_network.email;
+
+public record EmailQueuedEvent() {}
@@ -1,59 +1,42 @@
 package com.bullionder.book_network.email;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
-    private final JavaMailSender mailSender;
-    private final SpringTemplateEngine templateEngine;
+    private final EmailOutbox outbox;
+    private final ApplicationEventPublisher eventPublisher;
 
-    @Async
+    // joins the caller's transaction, so an email only goes out once what it announces was committed;
+    // EmailDispatcher renders and sends it afterwards
+    @Transactional
     public void sendEmail(
             String to,
             String username,
             EmailTemplateName emailTemplate,
             String confirmationUrl,
             String activationCode,
-            String subject)
-            throws MessagingException {
+            String subject) {
         String templateName;
         if (emailTemplate == null) {
             templateName = "confirm-email";
         } else {
-            templateName = emailTemplate.name();
+            templateName = emailTemplate.getName();
         }
 
-        MimeMessage mimeMessage = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(
-                mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED, StandardCharsets.UTF_8.name());
         Map<String, Object> properties = new HashMap<>();
         properties.put("username", username);
         properties.put("confirmationUrl", confirmationUrl);
         properties.put("activation_code", activationCode);
 
-        Context context = new Context();
-        context.setVariables(properties);
-        helper.setFrom("hubertmatlak13@gmail.com");
-        helper.setTo(to);
-        helper.setSubject(subject);
-
-        String template = templateEngine.process(templateName, context);
-
-        helper.setText(template, true);
-
-        mailSender.send(mimeMessage);
+        outbox.insert(to, subject, templateName, properties);
+        eventPublisher.publishEvent(new EmailQueuedEvent());
     }
 }
@@ -0,0 +1,13 @@
+package com.bullionder.book_network.email;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public record OutboxEmail(
+        Long id,
+        String recipient,
+        String subject,
+        String template,
+        Map<String, Object> variables,
+        int attempts,
+        LocalDateTime createdDate) {}
@@ -10,6 +10,7 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 
 @Entity
+@Table(indexes = @Index(name = "idx_feedback_book_created_date_id", columnList = "book_id, created_date, id"))
 @Getter
 @Setter
 @SuperBuilder
@@ -1,6 +1,7 @@
 package com.bullionder.book_network.feedback;
 
 import com.bullionder.book_network.common.PageResponse;
+import com.bullionder.book_network.common.TotalMode;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -27,7 +28,12 @@ public class FeedbackController {
             @PathVariable("book-id") Integer bookId,
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            @RequestParam(name = "total", defaultValue = "EXACT", required = false) TotalMode total,
+            @RequestParam(name = "cursor", required = false) String cursor,
             Authentication connectedUser) {
-        return ResponseEntity.ok(service.findAllFeedbacksByBook(bookId, page, size, connectedUser));
+        if (cursor != null) {
+            return ResponseEntity.ok(service.findAllFeedbacksByBook(bookId, cursor, size, connectedUser));
+        }
+        return ResponseEntity.ok(service.findAllFeedbacksByBook(bookId, page, size, total, connectedUser));
     }
 }
@@ -5,11 +5,12 @@ import org.springframework.stereotype.Service;
 
 @Service
 public class FeedbackMapper {
-    public Feedback toFeedback(FeedbackRequest request) {
+    // the loaded book, a reference built from the id alone lacks the version Hibernate needs to tell it is not new
+    public Feedback toFeedback(FeedbackRequest request, Book book) {
         return Feedback.builder()
                 .note(request.note())
                 .comment(request.comment())
-                .book(Book.builder().id(request.bookId()).build())
+                .book(book)
                 .build();
     }
 
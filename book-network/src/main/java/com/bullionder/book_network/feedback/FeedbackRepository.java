@@ -1,7 +1,8 @@
 package com.bullionder.book_network.feedback;
 
-import org.springframework.data.domain.Page;
+import java.time.LocalDateTime;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -13,5 +14,18 @@ public interface FeedbackRepository extends JpaRepository<Feedback, Integer> {
                 FROM Feedback feedback
                 WHERE feedback.book.id = :bookId
             """)
-    Page<Feedback> findAllByBookId(Integer bookId, Pageable pageable);
+    Slice<Feedback> findAllByBookId(Integer bookId, Pageable pageable);
+
+    @Query(
+            """
+            SELECT feedback
+            FROM Feedback feedback
+            WHERE feedback.book.id = :bookId
+            AND feedback.createdDate <= :createdDate
+            AND (feedback.createdDate < :createdDate OR feedback.id < :id)
+            ORDER BY feedback.createdDate DESC, feedback.id DESC
+            """)
+    Slice<Feedback> findAllByBookIdAfter(Integer bookId, LocalDateTime createdDate, Integer id, Pageable pageable);
+
+    long countByBookId(Integer bookId);
 }
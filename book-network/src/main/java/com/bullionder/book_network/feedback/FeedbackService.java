@@ -1,19 +1,26 @@
 package com.bullionder.book_network.feedback;
 
 import com.bullionder.book_network.book.Book;
+import com.bullionder.book_network.book.BookChangedEvent;
 import com.bullionder.book_network.book.BookRepository;
+import com.bullionder.book_network.common.KeysetCursor;
 import com.bullionder.book_network.common.PageResponse;
+import com.bullionder.book_network.common.PageTotals;
+import com.bullionder.book_network.common.TotalMode;
 import com.bullionder.book_network.exception.OperationNotPermittedException;
 import com.bullionder.book_network.user.User;
 import jakarta.persistence.EntityNotFoundException;
+import java.time.LocalDateTime;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
@@ -21,7 +28,10 @@ public class FeedbackService {
     private final BookRepository bookRepository;
     private final FeedbackMapper feedbackMapper;
     private final FeedbackRepository feedbackRepository;
+    private final PageTotals pageTotals;
+    private final ApplicationEventPublisher eventPublisher;
 
+    @Transactional
     public Integer save(FeedbackRequest request, Authentication connectedUser) {
         Book book = bookRepository
                 .findById(request.bookId())
@@ -32,30 +42,50 @@ public class FeedbackService {
         }
 
         User user = (User) connectedUser.getPrincipal();
-        if (!book.getOwner().getId().equals(user.getId())) {
+        if (book.getOwner().getId().equals(user.getId())) {
             throw new OperationNotPermittedException("You cannot give a feedback to your own book");
         }
 
-        Feedback feedback = feedbackMapper.toFeedback(request);
-        return feedbackRepository.save(feedback).getId();
+        Feedback feedback = feedbackMapper.toFeedback(request, book);
+        Integer feedbackId = feedbackRepository.save(feedback).getId();
+        bookRepository.addRating(book.getId(), feedback.getNote(), LocalDateTime.now());
+        eventPublisher.publishEvent(new BookChangedEvent(book.getId()));
+        return feedbackId;
     }
 
+    @Transactional(readOnly = true)
     public PageResponse<FeedbackResponse> findAllFeedbacksByBook(
-            Integer bookId, int page, int size, Authentication connectedUser) {
+            Integer bookId, int page, int size, TotalMode total, Authentication connectedUser) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
         User user = (User) connectedUser.getPrincipal();
-        Page<Feedback> feedbacks = feedbackRepository.findAllByBookId(bookId, pageable);
+        Slice<Feedback> feedbacks = feedbackRepository.findAllByBookId(bookId, pageable);
         List<FeedbackResponse> feedbackResponses = feedbacks.stream()
                 .map(feedback -> feedbackMapper.toFeedbackResponse(feedback, user.getId()))
                 .toList();
-
-        return new PageResponse<>(
+        return pageTotals.toPageResponse(
+                feedbacks,
                 feedbackResponses,
-                feedbacks.getNumber(),
-                feedbacks.getSize(),
-                feedbacks.getTotalElements(),
-                feedbacks.getTotalPages(),
-                feedbacks.isFirst(),
-                feedbacks.isLast());
+                total,
+                "feedbacks.book",
+                bookId,
+                () -> feedbackRepository.countByBookId(bookId));
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponse<FeedbackResponse> findAllFeedbacksByBook(
+            Integer bookId, String cursor, int size, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        Slice<Feedback> feedbacks = feedbackRepository.findAllByBookIdAfter(
+                bookId, after.createdDate(), after.id(), PageRequest.ofSize(size));
+        List<FeedbackResponse> feedbackResponses = feedbacks.stream()
+                .map(feedback -> feedbackMapper.toFeedbackResponse(feedback, user.getId()))
+                .toList();
+        KeysetCursor next = null;
+        if (feedbacks.hasNext()) {
+            Feedback last = feedbacks.getContent().get(feedbacks.getNumberOfElements() - 1);
+            next = new KeysetCursor(last.getCreatedDate(), last.getId());
+        }
+        return PageResponse.ofCursor(feedbackResponses, size, after, next);
     }
 }
@@ -0,0 +1,54 @@
+package com.bullionder.book_network.feedback;
+
+import com.bullionder.book_network.book.BookRepository;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RatingReconciler {
+
+    private final BookRepository bookRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.feedback.rating-reconciler.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(
+            initialDelayString = "${application.feedback.rating-reconciler.initial-delay:PT15M}",
+            fixedDelayString = "${application.feedback.rating-reconciler.interval:PT24H}")
+    public void reconcileRatings() {
+        int afterId = 0;
+        int repaired = 0;
+        while (true) {
+            final int lastId = afterId;
+            // the book rows are locked before the feedbacks are aggregated, so a concurrent feedback either
+            // is already committed and counted, or waits for the lock and applies its increment afterwards
+            ReconciledBatch batch = transactionTemplate.execute(status -> {
+                List<Integer> bookIds = bookRepository.lockBookIdsAfter(lastId, batchSize);
+                if (bookIds.isEmpty()) {
+                    return null;
+                }
+                return new ReconciledBatch(bookIds.get(bookIds.size() - 1), bookRepository.reconcileRatings(bookIds));
+            });
+            if (batch == null) {
+                break;
+            }
+            afterId = batch.lastBookId();
+            repaired += batch.repairedBooks();
+        }
+        if (repaired > 0) {
+            log.warn("Rating reconciliation repaired {} books", repaired);
+        } else {
+            log.info("Rating reconciliation found no drift");
+        }
+    }
+
+    private record ReconciledBatch(int lastBookId, int repairedBooks) {}
+}
@@ -2,12 +2,15 @@ package com.bullionder.book_network.handler;
 
 import static com.bullionder.book_network.handler.BusinessErrorCodes.*;
 
+import com.bullionder.book_network.book.file.CoverStoreBusyException;
 import com.bullionder.book_network.exception.OperationNotPermittedException;
 import jakarta.mail.MessagingException;
 import java.util.HashSet;
 import java.util.Set;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.LockedException;
@@ -65,6 +68,27 @@ public class GlobalExceptionHandler {
                 .body(ExceptionResponse.builder().validationErrors(errors).build());
     }
 
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<ExceptionResponse> handleException(ObjectOptimisticLockingFailureException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ExceptionResponse.builder()
+                        .businessErrorDescription("The book was changed by another request, reload it and try again")
+                        .error(ex.getMessage())
+                        .build());
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ExceptionResponse> handleException(AccessDeniedException ex) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(ExceptionResponse.builder().error(ex.getMessage()).build());
+    }
+
+    @ExceptionHandler(CoverStoreBusyException.class)
+    public ResponseEntity<ExceptionResponse> handleException(CoverStoreBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ExceptionResponse.builder().error(ex.getMessage()).build());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ExceptionResponse> handleException(Exception ex) {
         // log the exception
@@ -0,0 +1,54 @@
+package com.bullionder.book_network.history;
+
+import com.bullionder.book_network.book.Book;
+import com.bullionder.book_network.user.User;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// closed loans moved out of book_transaction_history, so the hot indexes only cover loans still in use
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "book_transaction_history_archive",
+        indexes = {
+            @Index(name = "idx_history_archive_user_created_date_id", columnList = "user_id, created_date, id"),
+            @Index(name = "idx_history_archive_book_created_date_id", columnList = "book_id, created_date, id")
+        })
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedBookTransactionHistory {
+
+    // keeps the id of the original row, so links to a loan survive its archival
+    @Id
+    private Integer id;
+
+    @ManyToOne
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @ManyToOne
+    @JoinColumn(name = "book_id")
+    private Book book;
+
+    private boolean returned;
+    private boolean returnApproved;
+    private LocalDateTime returnedDate;
+    private LocalDateTime returnApprovedDate;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdDate;
+
+    @Column(nullable = false, updatable = false)
+    private Integer createdBy;
+
+    private LocalDateTime lastModifiedDate;
+    private Integer lastModifiedBy;
+
+    @Column(nullable = false)
+    private LocalDateTime archivedDate;
+}
@@ -0,0 +1,82 @@
+package com.bullionder.book_network.history;
+
+import com.bullionder.book_network.book.BorrowedBookSummary;
+import java.time.LocalDateTime;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface ArchivedBookTransactionHistoryRepository
+        extends JpaRepository<ArchivedBookTransactionHistory, Integer> {
+
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM ArchivedBookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
+            """)
+    Slice<BorrowedBookSummary> findBorrowedBooks(Pageable pageable, Integer userId);
+
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM ArchivedBookTransactionHistory history
+            JOIN history.book book
+            WHERE book.owner.id = :userId
+            """)
+    Slice<BorrowedBookSummary> findReturnedBooks(Pageable pageable, Integer userId);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM ArchivedBookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
+            AND history.createdDate <= :createdDate
+            AND (history.createdDate < :createdDate OR history.id < :id)
+            ORDER BY history.createdDate DESC, history.id DESC
+            """)
+    Slice<BorrowedBookSummary> findBorrowedBooksAfter(
+            Integer userId, LocalDateTime createdDate, Integer id, Pageable pageable);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM ArchivedBookTransactionHistory history
+            JOIN history.book book
+            WHERE book.owner.id = :userId
+            AND history.createdDate <= :createdDate
+            AND (history.createdDate < :createdDate OR history.id < :id)
+            ORDER BY history.createdDate DESC, history.id DESC
+            """)
+    Slice<BorrowedBookSummary> findReturnedBooksAfter(
+            Integer userId, LocalDateTime createdDate, Integer id, Pageable pageable);
+
+    @Query(
+            """
+            SELECT COUNT(history)
+            FROM ArchivedBookTransactionHistory history
+            WHERE history.user.id = :userId
+            """)
+    long countBorrowedBooks(Integer userId);
+
+    @Query(
+            """
+            SELECT COUNT(history)
+            FROM ArchivedBookTransactionHistory history
+            WHERE history.book.owner.id = :userId
+            """)
+    long countReturnedBooks(Integer userId);
+}
@@ -4,8 +4,11 @@ import com.bullionder.book_network.book.Book;
 import com.bullionder.book_network.common.BaseEntity;
 import com.bullionder.book_network.user.User;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -16,6 +19,11 @@ import lombok.experimental.SuperBuilder;
 @Setter
 @SuperBuilder
 @Entity
+@Table(
+        indexes = {
+            @Index(name = "idx_history_user_created_date_id", columnList = "user_id, created_date, id"),
+            @Index(name = "idx_history_book_created_date_id", columnList = "book_id, created_date, id")
+        })
 @NoArgsConstructor
 @AllArgsConstructor
 public class BookTransactionHistory extends BaseEntity {
@@ -30,4 +38,6 @@ public class BookTransactionHistory extends BaseEntity {
 
     private boolean returned;
     private boolean returnApproved;
+    private LocalDateTime returnedDate;
+    private LocalDateTime returnApprovedDate;
 }
@@ -0,0 +1,81 @@
+package com.bullionder.book_network.history;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+@Slf4j
+public class BookTransactionHistoryArchiver {
+
+    // one statement per batch, so a loan is never visible in both tables or in neither
+    private static final String ARCHIVE_CLOSED_LOANS =
+            """
+            WITH moved AS (
+                DELETE FROM book_transaction_history history
+                WHERE history.id IN (
+                    SELECT id FROM book_transaction_history
+                    WHERE return_approved = true
+                    AND created_date < ?
+                    ORDER BY created_date, id
+                    LIMIT ?
+                )
+                AND history.created_date < ?
+                AND history.return_approved = true
+                RETURNING history.id, history.user_id, history.book_id, history.returned, history.return_approved,
+                    history.returned_date, history.return_approved_date,
+                    history.created_date, history.created_by, history.last_modified_date, history.last_modified_by
+            )
+            INSERT INTO book_transaction_history_archive (
+                id, user_id, book_id, returned, return_approved, returned_date, return_approved_date,
+                created_date, created_by, last_modified_date, last_modified_by, archived_date)
+            SELECT id, user_id, book_id, returned, return_approved, returned_date, return_approved_date,
+                created_date, created_by, last_modified_date, last_modified_by, LOCALTIMESTAMP
+            FROM moved
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BookTransactionHistoryPartitioner partitioner;
+    private final Duration minAge;
+    private final int batchSize;
+
+    public BookTransactionHistoryArchiver(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            BookTransactionHistoryPartitioner partitioner,
+            @Value("${application.history.archive.min-age:P180D}") Duration minAge,
+            @Value("${application.history.archive.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.partitioner = partitioner;
+        this.minAge = minAge;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(
+            initialDelayString = "${application.history.archive.initial-delay:PT10M}",
+            fixedDelayString = "${application.history.archive.interval:PT24H}")
+    public void archiveClosedLoans() {
+        if (!partitioner.isPartitioned()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(minAge);
+        long archived = 0;
+        int moved;
+        do {
+            // short transactions, so borrowers never wait on a lock held for the whole run
+            moved = transactionTemplate.execute(
+                    status -> jdbcTemplate.update(ARCHIVE_CLOSED_LOANS, cutoff, batchSize, cutoff));
+            archived += moved;
+        } while (moved == batchSize);
+        int dropped = partitioner.dropEmptyPartitionsBefore(cutoff);
+        log.info("Archived {} closed loans created before {}, dropped {} empty partitions", archived, cutoff, dropped);
+    }
+}
@@ -0,0 +1,195 @@
+package com.bullionder.book_network.history;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class BookTransactionHistoryPartitioner implements ApplicationRunner {
+
+    static final String TABLE = "book_transaction_history";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String IS_PARTITIONED =
+            """
+            SELECT EXISTS (
+                SELECT 1 FROM pg_partitioned_table
+                WHERE partrelid = to_regclass(?)
+            )
+            """;
+
+    private static final String FIND_PARTITIONS =
+            """
+            SELECT child.relname
+            FROM pg_inherits
+            JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+            WHERE pg_inherits.inhparent = to_regclass(?)
+            AND child.relname LIKE ?
+            ORDER BY child.relname
+            """;
+
+    private static final String HAS_DEFAULT_PARTITION =
+            """
+            SELECT partdefid <> 0 FROM pg_partitioned_table
+            WHERE partrelid = to_regclass(?)
+            """;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final Duration lockTimeout;
+    private volatile boolean partitioned;
+
+    public BookTransactionHistoryPartitioner(
+            DataSource dataSource,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${application.history.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${application.history.partitions.lock-timeout:PT2S}") Duration lockTimeout) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.lockTimeout = lockTimeout;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        String database = JdbcUtils.extractDatabaseMetaData(dataSource, metaData -> metaData.getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            log.warn("Range partitioning needs PostgreSQL, keeping {} as a single table on {}", TABLE, database);
+            return;
+        }
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED, Boolean.class, TABLE))) {
+            log.warn("{} is not partitioned, check the applied migrations", TABLE);
+            return;
+        }
+        partitioned = true;
+        createUpcomingPartitions();
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    // rows that find no monthly partition land in the default one, which is slow to split, so stay ahead of time
+    @Scheduled(
+            initialDelayString = "${application.history.partitions.interval:PT24H}",
+            fixedDelayString = "${application.history.partitions.interval:PT24H}")
+    public void createUpcomingPartitions() {
+        if (!partitioned) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int month = 0; month <= monthsAhead; month++) {
+            try {
+                createPartition(current.plusMonths(month));
+            } catch (DataAccessException e) {
+                log.error("Partition of {} for {} could not be created", TABLE, current.plusMonths(month), e);
+            }
+        }
+    }
+
+    // a month older than the cutoff that holds no open loan anymore is dropped whole instead of vacuumed
+    public int dropEmptyPartitionsBefore(LocalDateTime cutoff) {
+        if (!partitioned) {
+            return 0;
+        }
+        YearMonth cutoffMonth = YearMonth.from(cutoff);
+        int dropped = 0;
+        List<String> partitions =
+                jdbcTemplate.queryForList(FIND_PARTITIONS, String.class, TABLE, PARTITION_PREFIX + "%");
+        for (String partition : partitions) {
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(cutoffMonth)) {
+                continue;
+            }
+            Boolean empty =
+                    jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class);
+            if (Boolean.TRUE.equals(empty) && dropPartition(partition)) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    // dropping an attached partition holds an exclusive lock on the whole table, which queues every borrow
+    // behind the longest running query; PostgreSQL only detaches concurrently when there is no default partition
+    private boolean dropPartition(String partition) {
+        try {
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_DEFAULT_PARTITION, Boolean.class, TABLE))) {
+                // runs outside of a transaction, the detached table is dropped without touching the parent
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition + " CONCURRENTLY");
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                return true;
+            }
+            // the lock is given up quickly instead of blocking the table, the next run tries again
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.queryForObject(
+                        "SELECT set_config('lock_timeout', ?, true)", String.class, lockTimeout.toMillis() + "ms");
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+            });
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Partition {} could not be dropped, retrying with the next archive run", partition, e);
+            return false;
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String partition = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        LocalDate from = month.atDay(1);
+        LocalDate to = from.plusMonths(1);
+        String bounds = " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        String defaultPartition = TABLE + "_default";
+        Boolean landedInDefault = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NULL AND to_regclass(?) IS NOT NULL",
+                Boolean.class,
+                partition,
+                defaultPartition);
+        if (Boolean.TRUE.equals(landedInDefault)
+                && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + defaultPartition
+                                + " WHERE created_date >= ? AND created_date < ?)",
+                        Boolean.class,
+                        from.atStartOfDay(),
+                        to.atStartOfDay()))) {
+            // a partition over rows that sit in the default one is rejected, they move over before it is attached
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute(
+                        "CREATE TABLE " + partition + " (LIKE " + TABLE + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+                int moved = jdbcTemplate.update(
+                        "WITH moved AS (DELETE FROM " + defaultPartition
+                                + " WHERE created_date >= ? AND created_date < ? RETURNING *)"
+                                + " INSERT INTO " + partition + " SELECT * FROM moved",
+                        from.atStartOfDay(),
+                        to.atStartOfDay());
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + partition + bounds);
+                log.info("Moved {} rows of {} out of the default partition into {}", moved, month, partition);
+            });
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + TABLE + bounds);
+    }
+}
@@ -1,69 +1,136 @@
 package com.bullionder.book_network.history;
 
+import com.bullionder.book_network.book.BorrowedBookSummary;
+import com.bullionder.book_network.common.ContentVersion;
+import java.time.LocalDateTime;
 import java.util.Optional;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
 public interface BookTransactionHistoryRepository extends JpaRepository<BookTransactionHistory, Integer> {
 
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
+            """)
+    Slice<BorrowedBookSummary> findBorrowedBooks(Pageable pageable, Integer userId);
+
+    @Query(
+            value =
+                    """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE book.owner.id = :userId
+            """)
+    Slice<BorrowedBookSummary> findReturnedBooks(Pageable pageable, Integer userId);
+
+    @Modifying
+    @Query(
+            """
+            UPDATE BookTransactionHistory history
+            SET history.returned = true,
+                history.returnedDate = :modifiedAt,
+                history.lastModifiedDate = :modifiedAt,
+                history.lastModifiedBy = :userId
+            WHERE history.book.id = :bookId
+            AND history.user.id = :userId
+            AND history.returned = false
+            AND history.returnApproved = false
+            """)
+    int markReturned(Integer bookId, Integer userId, LocalDateTime modifiedAt);
+
     @Query(
             """
-            SELECT history
+            SELECT new com.bullionder.book_network.history.OpenBorrow(history.id, history.createdDate)
             FROM BookTransactionHistory history
+            WHERE history.book.id = :bookId
+            AND history.returnApproved = false
+            """)
+    Optional<OpenBorrow> findOpenBorrow(Integer bookId);
+
+    @Query(
+            """
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
+            FROM BookTransactionHistory history
+            JOIN history.book book
             WHERE history.user.id = :userId
+            AND history.createdDate <= :createdDate
+            AND (history.createdDate < :createdDate OR history.id < :id)
+            ORDER BY history.createdDate DESC, history.id DESC
             """)
-    Page<BookTransactionHistory> findBorrowedBooks(Pageable pageable, Integer userId);
+    Slice<BorrowedBookSummary> findBorrowedBooksAfter(
+            Integer userId, LocalDateTime createdDate, Integer id, Pageable pageable);
 
     @Query(
             """
-            SELECT history
+            SELECT new com.bullionder.book_network.book.BorrowedBookSummary(
+                history.id, book.id, book.title, book.authorName, book.isbn, book.ratingSum, book.ratingCount,
+                history.returned, history.returnApproved, history.createdDate)
             FROM BookTransactionHistory history
-            WHERE history.book.owner.id = :userId
+            JOIN history.book book
+            WHERE book.owner.id = :userId
+            AND history.createdDate <= :createdDate
+            AND (history.createdDate < :createdDate OR history.id < :id)
+            ORDER BY history.createdDate DESC, history.id DESC
             """)
-    Page<BookTransactionHistory> findReturnedBooks(Pageable pageable, Integer userId);
+    Slice<BorrowedBookSummary> findReturnedBooksAfter(
+            Integer userId, LocalDateTime createdDate, Integer id, Pageable pageable);
 
     @Query(
             """
-            SELECT
-            (COUNT(*) > 0) AS isBorrowed
+            SELECT COUNT(history)
             FROM BookTransactionHistory history
             WHERE history.user.id = :userId
-            AND history.book.id = :bookId
-            AND history.returnApproved = false
             """)
-    boolean isAlreadyBorrowedByUser(Integer bookId, Integer userId);
+    long countBorrowedBooks(Integer userId);
 
     @Query(
             """
-            SELECT
-            (COUNT(*) > 0) isBorrowed
+            SELECT COUNT(history)
             FROM BookTransactionHistory history
-            WHERE history.book.id = :bookId
-            AND history.returnApproved = false
+            WHERE history.book.owner.id = :userId
             """)
-    boolean isAlreadyBorrowed(Integer bookId);
+    long countReturnedBooks(Integer userId);
 
     @Query(
             """
-            SELECT transaction
-            FROM BookTransactionHistory transaction
-            WHERE transaction.book.id = :bookId
-            AND transaction.user.id = :userId
-            AND transaction.returned = false
-            AND transaction.returnApproved = false
+            SELECT new com.bullionder.book_network.common.ContentVersion(
+                MAX(GREATEST(
+                    COALESCE(history.lastModifiedDate, history.createdDate),
+                    COALESCE(book.lastModifiedDate, book.createdDate))),
+                COUNT(history),
+                COALESCE(SUM(CAST(COALESCE(book.version, 0) AS Long)), 0L))
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
             """)
-    Optional<BookTransactionHistory> findByBookIdAndUserId(Integer bookId, Integer userId);
+    ContentVersion findBorrowedBooksVersion(Integer userId);
 
     @Query(
             """
-            SELECT transaction
-            FROM BookTransactionHistory transaction
-            WHERE transaction.book.id = :bookId
-            AND transaction.user.id = :ownerId
-            AND transaction.returned = true
-            AND transaction.returnApproved = false
+            SELECT new com.bullionder.book_network.common.ContentVersion(
+                MAX(GREATEST(
+                    COALESCE(history.lastModifiedDate, history.createdDate),
+                    COALESCE(book.lastModifiedDate, book.createdDate))),
+                COUNT(history),
+                COALESCE(SUM(CAST(COALESCE(book.version, 0) AS Long)), 0L))
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE book.owner.id = :userId
             """)
-    Optional<BookTransactionHistory> findByBookIdAndOwnerId(Integer bookId, Integer ownerId);
+    ContentVersion findReturnedBooksVersion(Integer userId);
 }
@@ -0,0 +1,5 @@
+package com.bullionder.book_network.history;
+
+import java.time.LocalDateTime;
+
+public record OpenBorrow(Integer historyId, LocalDateTime createdDate) {}
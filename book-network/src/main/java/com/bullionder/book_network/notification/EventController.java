@@ -0,0 +1,25 @@
+package com.bullionder.book_network.notification;
+
+import com.bullionder.book_network.user.User;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("events")
+@RequiredArgsConstructor
+@Tag(name = "Event")
+public class EventController {
+
+    private final LendingEventStream stream;
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return stream.subscribe(user.getId(), lastEventId);
+    }
+}
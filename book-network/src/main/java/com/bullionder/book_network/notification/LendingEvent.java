@@ -0,0 +1,40 @@
+package com.bullionder.book_network.notification;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// the id doubles as the SSE event id, so a reconnecting client resumes with the events after it
+@Entity
+@Table(name = "lending_event", indexes = @Index(name = "idx_lending_event_recipient", columnList = "recipient_id, id"))
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LendingEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "recipient_id", nullable = false)
+    private Integer recipientId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private LendingEventType type;
+
+    @Column(name = "book_id", nullable = false)
+    private Integer bookId;
+
+    @Column(name = "history_id", nullable = false)
+    private Integer historyId;
+
+    @Column(name = "created_date", nullable = false)
+    private LocalDateTime createdDate;
+}
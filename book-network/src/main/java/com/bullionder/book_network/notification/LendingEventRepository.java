@@ -0,0 +1,87 @@
+package com.bullionder.book_network.notification;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class LendingEventRepository {
+
+    // identity values are drawn before commit, so a lower id may become visible after a higher one; events are
+    // ordered by their transaction id instead and only handed out once every transaction below the snapshot xmin
+    // has ended, after which no event can appear before the cursor
+    private static final String FIND_EVENTS_AFTER =
+            """
+            SELECT lending.id, lending.type, lending.book_id, book.title, lending.history_id, lending.created_date
+            FROM lending_event lending
+            LEFT JOIN book ON book.id = lending.book_id
+            WHERE lending.recipient_id = :recipientId
+            AND (lending.transaction_id, lending.id) > (
+                coalesce((SELECT transaction_id FROM lending_event WHERE id = :afterId), '0'::xid8), :afterId)
+            AND lending.transaction_id < pg_snapshot_xmin(pg_current_snapshot())
+            ORDER BY lending.transaction_id, lending.id
+            LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void insert(Collection<LendingEvent> events) {
+        jdbcTemplate.batchUpdate(
+                """
+                INSERT INTO lending_event (recipient_id, type, book_id, history_id, created_date)
+                VALUES (:recipientId, :type, :bookId, :historyId, :createdDate)
+                """,
+                events.stream()
+                        .map(event -> new MapSqlParameterSource()
+                                .addValue("recipientId", event.getRecipientId())
+                                .addValue("type", event.getType().name())
+                                .addValue("bookId", event.getBookId())
+                                .addValue("historyId", event.getHistoryId())
+                                .addValue("createdDate", event.getCreatedDate()))
+                        .toArray(SqlParameterSource[]::new));
+    }
+
+    public List<LendingEventResponse> findAfter(Integer recipientId, long afterId, int limit) {
+        return jdbcTemplate.query(
+                FIND_EVENTS_AFTER,
+                new MapSqlParameterSource()
+                        .addValue("recipientId", recipientId)
+                        .addValue("afterId", afterId)
+                        .addValue("limit", limit),
+                (resultSet, rowNumber) -> LendingEventResponse.builder()
+                        .id(resultSet.getLong("id"))
+                        .type(LendingEventType.valueOf(resultSet.getString("type")))
+                        .bookId(resultSet.getInt("book_id"))
+                        .bookTitle(resultSet.getString("title"))
+                        .historyId(resultSet.getInt("history_id"))
+                        .createdDate(resultSet.getObject("created_date", LocalDateTime.class))
+                        .build());
+    }
+
+    public long findLatestId(Integer recipientId) {
+        List<Long> latestId = jdbcTemplate.queryForList(
+                """
+                SELECT id
+                FROM lending_event
+                WHERE recipient_id = :recipientId
+                AND transaction_id < pg_snapshot_xmin(pg_current_snapshot())
+                ORDER BY transaction_id DESC, id DESC
+                LIMIT 1
+                """,
+                new MapSqlParameterSource("recipientId", recipientId),
+                Long.class);
+        return latestId.isEmpty() ? 0 : latestId.get(0);
+    }
+
+    public int deleteCreatedBefore(LocalDateTime createdDate) {
+        return jdbcTemplate.update(
+                "DELETE FROM lending_event WHERE created_date < :createdDate",
+                new MapSqlParameterSource("createdDate", createdDate));
+    }
+}
@@ -0,0 +1,19 @@
+package com.bullionder.book_network.notification;
+
+import java.time.LocalDateTime;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LendingEventResponse {
+
+    private Long id;
+    private LendingEventType type;
+    private Integer bookId;
+    private String bookTitle;
+    private Integer historyId;
+    private LocalDateTime createdDate;
+}
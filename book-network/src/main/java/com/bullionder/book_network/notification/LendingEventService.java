@@ -0,0 +1,36 @@
+package com.bullionder.book_network.notification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+public class LendingEventService {
+
+    private final LendingEventRepository repository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // written in the caller's transaction, so an event exists exactly when its lending change committed
+    public void record(Integer recipientId, LendingEventType type, Integer bookId, Integer historyId) {
+        recordAll(List.of(LendingEvent.builder()
+                .recipientId(recipientId)
+                .type(type)
+                .bookId(bookId)
+                .historyId(historyId)
+                .build()));
+    }
+
+    public void recordAll(List<LendingEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        events.forEach(event -> event.setCreatedDate(now));
+        repository.insert(events);
+        eventPublisher.publishEvent(new LendingEventsRecordedEvent(
+                events.stream().map(LendingEvent::getRecipientId).distinct().toList()));
+    }
+}
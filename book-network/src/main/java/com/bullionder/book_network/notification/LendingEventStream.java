@@ -0,0 +1,232 @@
+package com.bullionder.book_network.notification;
+
+import com.bullionder.book_network.book.BookChangeChannel;
+import com.bullionder.book_network.book.BookChangeChannel.BookChangesMissedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LendingEventStream {
+
+    private final LendingEventRepository repository;
+    private final BookChangeChannel changeChannel;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    @Value("${application.events.timeout:PT30M}")
+    private Duration timeout;
+
+    @Value("${application.events.reconnect-delay:PT5S}")
+    private Duration reconnectDelay;
+
+    @Value("${application.events.batch-size:100}")
+    private int batchSize;
+
+    @Value("${application.events.retention:P7D}")
+    private Duration retention;
+
+    @Value("${application.events.delivery.pool-size:4}")
+    private int poolSize;
+
+    @Value("${application.events.delivery.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        // the connections themselves are async requests, threads are only borrowed while events are written
+        executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("lending-event-"));
+        Gauge.builder("lending.events.subscriptions", subscriptions, connected -> connected.values().stream()
+                        .mapToInt(Set::size)
+                        .sum())
+                .description("Open lending event streams on this node")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        subscriptions.values().forEach(connected -> connected.forEach(subscription -> subscription.emitter.complete()));
+    }
+
+    public SseEmitter subscribe(Integer userId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        // without a Last-Event-ID the stream starts now instead of replaying the whole retention window
+        long afterId = lastEventId != null ? lastEventId : repository.findLatestId(userId);
+        Subscription subscription = new Subscription(userId, emitter, afterId);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(error -> unsubscribe(subscription));
+        subscriptions
+                .computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet())
+                .add(subscription);
+        send(subscription, SseEmitter.event().comment("connected").reconnectTime(reconnectDelay.toMillis()));
+        // an event committed after the latest id was read found no subscription to notify, this delivery picks it up
+        scheduleDelivery(subscription);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsRecorded(LendingEventsRecordedEvent event) {
+        if (!event.remote()) {
+            changeChannel.publishRecipients(event.recipientIds());
+        }
+        for (Integer recipientId : event.recipientIds()) {
+            subscriptions.getOrDefault(recipientId, Set.of()).forEach(this::scheduleDelivery);
+        }
+    }
+
+    // notifications sent while the listener was reconnecting are lost, every stream checks for missed events
+    @EventListener
+    public void onChangesMissed(BookChangesMissedEvent event) {
+        subscriptions.values().forEach(connected -> connected.forEach(this::scheduleDelivery));
+    }
+
+    // proxies drop connections that stay silent, and a failed write is how a closed client is noticed;
+    // the writes run on the delivery threads, and each heartbeat also picks up events that were held back
+    // because an older transaction was still running when their own notification arrived
+    @Scheduled(
+            initialDelayString = "${application.events.heartbeat-interval:PT20S}",
+            fixedDelayString = "${application.events.heartbeat-interval:PT20S}")
+    public void sendHeartbeats() {
+        subscriptions
+                .values()
+                .forEach(connected -> connected.forEach(subscription -> {
+                    subscription.heartbeatDue.set(true);
+                    scheduleDelivery(subscription);
+                }));
+    }
+
+    @Scheduled(
+            initialDelayString = "${application.events.purge-interval:PT1H}",
+            fixedDelayString = "${application.events.purge-interval:PT1H}")
+    public void purgeExpiredEvents() {
+        int deleted = repository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Deleted {} expired lending events", deleted);
+        }
+    }
+
+    private void scheduleDelivery(Subscription subscription) {
+        // a delivery already waiting will read every event committed before it runs
+        if (!subscription.deliveryPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> deliver(subscription));
+        } catch (RejectedExecutionException e) {
+            subscription.deliveryPending.set(false);
+            log.warn(
+                    "Lending event queue is full, user {} receives the events with the next delivery",
+                    subscription.userId);
+        }
+    }
+
+    private void deliver(Subscription subscription) {
+        subscription.deliveryPending.set(false);
+        boolean heartbeat = subscription.heartbeatDue.getAndSet(false);
+        subscription.lock.lock();
+        try {
+            if (heartbeat && !send(subscription, SseEmitter.event().comment("heartbeat"))) {
+                return;
+            }
+            List<LendingEventResponse> events;
+            do {
+                if (subscription.closed) {
+                    return;
+                }
+                events = repository.findAfter(subscription.userId, subscription.lastEventId, batchSize);
+                for (LendingEventResponse event : events) {
+                    if (!send(
+                            subscription,
+                            SseEmitter.event()
+                                    .id(String.valueOf(event.getId()))
+                                    .name(event.getType().name())
+                                    .data(event, MediaType.APPLICATION_JSON))) {
+                        return;
+                    }
+                    subscription.lastEventId = event.getId();
+                }
+            } while (events.size() == batchSize);
+        } finally {
+            subscription.lock.unlock();
+        }
+    }
+
+    private boolean send(Subscription subscription, SseEmitter.SseEventBuilder event) {
+        subscription.lock.lock();
+        try {
+            if (subscription.closed) {
+                return false;
+            }
+            subscription.emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Lending event stream of user {} is closed", subscription.userId);
+            unsubscribe(subscription);
+            return false;
+        } finally {
+            subscription.lock.unlock();
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscription.closed = true;
+        subscriptions.computeIfPresent(subscription.userId, (userId, connected) -> {
+            connected.remove(subscription);
+            return connected.isEmpty() ? null : connected;
+        });
+    }
+
+    private static final class Subscription {
+
+        private final Integer userId;
+        private final SseEmitter emitter;
+        private final AtomicBoolean deliveryPending = new AtomicBoolean();
+        private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+        // a monitor held across the socket write would pin a virtual thread to its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private long lastEventId;
+        private volatile boolean closed;
+
+        private Subscription(Integer userId, SseEmitter emitter, long lastEventId) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+    }
+}
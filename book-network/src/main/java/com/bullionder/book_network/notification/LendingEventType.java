@@ -0,0 +1,7 @@
+package com.bullionder.book_network.notification;
+
+public enum LendingEventType {
+    BOOK_BORROWED,
+    BOOK_RETURNED,
+    RETURN_APPROVED
+}
@@ -0,0 +1,10 @@
+package com.bullionder.book_network.notification;
+
+import java.util.List;
+
+public record LendingEventsRecordedEvent(List<Integer> recipientIds, boolean remote) {
+
+    public LendingEventsRecordedEvent(List<Integer> recipientIds) {
+        this(recipientIds, false);
+    }
+}
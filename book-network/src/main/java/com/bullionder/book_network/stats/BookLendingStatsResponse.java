@@ -0,0 +1,18 @@
+package com.bullionder.book_network.stats;
+
+import java.time.LocalDate;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookLendingStatsResponse {
+
+    private Integer bookId;
+    private String title;
+    private LocalDate from;
+    private LocalDate to;
+    private LendingTotalsResponse totals;
+}
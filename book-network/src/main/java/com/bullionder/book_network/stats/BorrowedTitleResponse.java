@@ -0,0 +1,16 @@
+package com.bullionder.book_network.stats;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BorrowedTitleResponse {
+
+    private Integer bookId;
+    private String title;
+    private String authorName;
+    private long borrowCount;
+}
@@ -0,0 +1,59 @@
+package com.bullionder.book_network.stats;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// what one lending step adds to the daily rollups of its book and of its borrower
+public record LendingDelta(
+        Integer bookId,
+        Integer borrowerId,
+        LocalDate day,
+        int borrowCount,
+        int returnCount,
+        long loanSeconds,
+        int approvalCount,
+        long approvalSeconds) {
+
+    public static LendingDelta borrow(Integer bookId, Integer borrowerId, LocalDateTime borrowedAt) {
+        return new LendingDelta(bookId, borrowerId, borrowedAt.toLocalDate(), 1, 0, 0, 0, 0);
+    }
+
+    public static LendingDelta returned(
+            Integer bookId, Integer borrowerId, LocalDateTime borrowedAt, LocalDateTime returnedAt) {
+        return new LendingDelta(
+                bookId,
+                borrowerId,
+                returnedAt.toLocalDate(),
+                0,
+                1,
+                Duration.between(borrowedAt, returnedAt).toSeconds(),
+                0,
+                0);
+    }
+
+    // loans returned before return times were kept have no latency, the backfill leaves their approvals out as well
+    public static LendingDelta approval(
+            Integer bookId, Integer borrowerId, LocalDateTime returnedAt, LocalDateTime approvedAt) {
+        if (returnedAt == null) {
+            return new LendingDelta(bookId, borrowerId, approvedAt.toLocalDate(), 0, 0, 0, 0, 0);
+        }
+        return new LendingDelta(
+                bookId,
+                borrowerId,
+                approvedAt.toLocalDate(),
+                0,
+                0,
+                0,
+                1,
+                Duration.between(returnedAt, approvedAt).toSeconds());
+    }
+
+    boolean isEmpty() {
+        return borrowCount == 0 && returnCount == 0 && approvalCount == 0;
+    }
+
+    boolean countsForBorrower() {
+        return borrowCount != 0 || returnCount != 0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.bullionder.book_network.stats;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.stats.LendingStatsRepository.BackfillState;
+import java.time.LocalDate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+@Slf4j
+public class LendingStatsBackfill {
+
+    private final LendingStatsRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkDays;
+
+    public LendingStatsBackfill(
+            LendingStatsRepository repository,
+            PlatformTransactionManager transactionManager,
+            @Value("${application.lending-stats.backfill.chunk-days:31}") int chunkDays) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkDays = chunkDays;
+    }
+
+    // the state row is locked per chunk, so nodes starting together take turns instead of rebuilding the same days
+    @Scheduled(
+            initialDelayString = "${application.lending-stats.backfill.initial-delay:PT1M}",
+            fixedDelayString = "${application.lending-stats.backfill.interval:PT1H}")
+    public void backfill() {
+        int chunks = 0;
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillNextChunk()))) {
+            chunks++;
+        }
+        if (chunks > 0) {
+            log.info("Lending statistics backfilled in {} chunks", chunks);
+        }
+    }
+
+    // repairs the rollups of a range, the lending steps recorded while it runs are kept
+    public void rebuild(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new OperationNotPermittedException("The start of the range must not be after its end");
+        }
+        for (LocalDate start = from; !start.isAfter(to); start = start.plusDays(chunkDays)) {
+            LocalDate until = min(start.plusDays(chunkDays), to.plusDays(1));
+            LocalDate chunkStart = start;
+            // short transactions, so lending steps never wait on the rollup lock for the whole range
+            transactionTemplate.executeWithoutResult(status -> repository.rebuild(chunkStart, until));
+        }
+        log.info("Lending statistics rebuilt from {} to {}", from, to);
+    }
+
+    private boolean backfillNextChunk() {
+        BackfillState state = repository.lockBackfillState();
+        if (state.isComplete()) {
+            return false;
+        }
+        LocalDate from;
+        if (state.rebuiltThrough() != null) {
+            from = state.rebuiltThrough().plusDays(1);
+        } else {
+            LocalDate firstLoanDay = repository.findFirstLoanDay();
+            from = firstLoanDay == null ? state.rebuildThrough() : min(firstLoanDay, state.rebuildThrough());
+        }
+        LocalDate until = min(from.plusDays(chunkDays), state.rebuildThrough().plusDays(1));
+        repository.rebuild(from, until);
+        repository.updateRebuiltThrough(until.minusDays(1));
+        return true;
+    }
+
+    private static LocalDate min(LocalDate first, LocalDate second) {
+        return first.isBefore(second) ? first : second;
+    }
+}
@@ -0,0 +1,72 @@
+package com.bullionder.book_network.stats;
+
+import com.bullionder.book_network.user.User;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("stats")
+@RequiredArgsConstructor
+@Tag(name = "Statistics")
+public class LendingStatsController {
+
+    private final LendingStatsService service;
+    private final LendingStatsBackfill backfill;
+
+    @GetMapping("/books/{book-id}")
+    public ResponseEntity<BookLendingStatsResponse> findBookStats(
+            @PathVariable("book-id") Integer bookId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Authentication connectedUser) {
+        return ResponseEntity.ok(service.findBookStats(bookId, from, to, connectedUser));
+    }
+
+    @GetMapping("/me")
+    public ResponseEntity<UserLendingStatsResponse> findOwnStats(
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return ResponseEntity.ok(service.findUserStats(user.getId(), from, to, connectedUser));
+    }
+
+    @GetMapping("/users/{user-id}")
+    @Secured(LendingStatsService.ADMIN_ROLE)
+    public ResponseEntity<UserLendingStatsResponse> findUserStats(
+            @PathVariable("user-id") Integer userId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Authentication connectedUser) {
+        return ResponseEntity.ok(service.findUserStats(userId, from, to, connectedUser));
+    }
+
+    @GetMapping("/books/most-borrowed")
+    @Secured(LendingStatsService.ADMIN_ROLE)
+    public ResponseEntity<List<BorrowedTitleResponse>> findMostBorrowedBooks(
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size) {
+        return ResponseEntity.ok(service.findMostBorrowedBooks(from, to, size));
+    }
+
+    @PostMapping("/rebuild")
+    @Secured(LendingStatsService.ADMIN_ROLE)
+    public ResponseEntity<Void> rebuild(
+            @RequestParam(name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        backfill.rebuild(from, to);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,266 @@
+package com.bullionder.book_network.stats;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class LendingStatsRepository {
+
+    private static final String ADD_TO_BOOK_DAY =
+            """
+            INSERT INTO book_lending_day (
+                book_id, day, borrow_count, return_count, loan_seconds, approval_count, approval_seconds)
+            VALUES (:bookId, :day, :borrowCount, :returnCount, :loanSeconds, :approvalCount, :approvalSeconds)
+            ON CONFLICT (book_id, day) DO UPDATE
+            SET borrow_count = book_lending_day.borrow_count + EXCLUDED.borrow_count,
+                return_count = book_lending_day.return_count + EXCLUDED.return_count,
+                loan_seconds = book_lending_day.loan_seconds + EXCLUDED.loan_seconds,
+                approval_count = book_lending_day.approval_count + EXCLUDED.approval_count,
+                approval_seconds = book_lending_day.approval_seconds + EXCLUDED.approval_seconds
+            """;
+
+    private static final String ADD_TO_USER_DAY =
+            """
+            INSERT INTO user_lending_day (user_id, day, borrow_count, return_count, loan_seconds)
+            VALUES (:borrowerId, :day, :borrowCount, :returnCount, :loanSeconds)
+            ON CONFLICT (user_id, day) DO UPDATE
+            SET borrow_count = user_lending_day.borrow_count + EXCLUDED.borrow_count,
+                return_count = user_lending_day.return_count + EXCLUDED.return_count,
+                loan_seconds = user_lending_day.loan_seconds + EXCLUDED.loan_seconds
+            """;
+
+    private static final String SUM_TOTALS =
+            """
+            SELECT COALESCE(SUM(lending.borrow_count), 0) AS borrow_count,
+                COALESCE(SUM(lending.return_count), 0) AS return_count,
+                COALESCE(SUM(lending.loan_seconds), 0) AS loan_seconds,
+                %s
+            """;
+
+    private static final String SUM_APPROVALS =
+            """
+            COALESCE(SUM(lending.approval_count), 0) AS approval_count,
+                COALESCE(SUM(lending.approval_seconds), 0) AS approval_seconds
+            """;
+
+    private static final String FIND_MOST_BORROWED =
+            """
+            SELECT book.id, book.title, book.author_name, SUM(lending.borrow_count) AS borrow_count
+            FROM book_lending_day lending
+            JOIN book ON book.id = lending.book_id
+            WHERE lending.day BETWEEN :from AND :to
+            AND lending.borrow_count > 0
+            %s
+            GROUP BY book.id, book.title, book.author_name
+            ORDER BY borrow_count DESC, book.id
+            LIMIT :limit
+            """;
+
+    // one pass over the loans that had any step in the range, archived ones included; a loan adds its borrow,
+    // return and approval each to the day it happened, as the live recording does
+    private static final String REBUILD_DAYS =
+            """
+            WITH loans AS (
+                SELECT book_id, user_id, created_date, returned_date, return_approved_date
+                FROM book_transaction_history
+                WHERE created_date < :until
+                AND (created_date >= :from OR returned_date >= :from OR return_approved_date >= :from)
+                UNION ALL
+                SELECT book_id, user_id, created_date, returned_date, return_approved_date
+                FROM book_transaction_history_archive
+                WHERE created_date < :until
+                AND (created_date >= :from OR returned_date >= :from OR return_approved_date >= :from)
+            ), steps AS (
+                SELECT book_id, user_id, CAST(created_date AS date) AS day,
+                    1 AS borrow_count, 0 AS return_count, CAST(0 AS bigint) AS loan_seconds,
+                    0 AS approval_count, CAST(0 AS bigint) AS approval_seconds
+                FROM loans
+                WHERE created_date >= :from
+                UNION ALL
+                SELECT book_id, user_id, CAST(returned_date AS date),
+                    0, 1, CAST(FLOOR(EXTRACT(EPOCH FROM returned_date - created_date)) AS bigint), 0, 0
+                FROM loans
+                WHERE returned_date >= :from AND returned_date < :until
+                UNION ALL
+                SELECT book_id, user_id, CAST(return_approved_date AS date),
+                    0, 0, 0, 1, CAST(FLOOR(EXTRACT(EPOCH FROM return_approved_date - returned_date)) AS bigint)
+                FROM loans
+                WHERE return_approved_date >= :from AND return_approved_date < :until
+                AND returned_date IS NOT NULL
+            ), book_days AS (
+                INSERT INTO book_lending_day (
+                    book_id, day, borrow_count, return_count, loan_seconds, approval_count, approval_seconds)
+                SELECT book_id, day, SUM(borrow_count), SUM(return_count), SUM(loan_seconds),
+                    SUM(approval_count), SUM(approval_seconds)
+                FROM steps
+                WHERE book_id IS NOT NULL
+                GROUP BY book_id, day
+                HAVING SUM(borrow_count) + SUM(return_count) + SUM(approval_count) > 0
+            )
+            INSERT INTO user_lending_day (user_id, day, borrow_count, return_count, loan_seconds)
+            SELECT user_id, day, SUM(borrow_count), SUM(return_count), SUM(loan_seconds)
+            FROM steps
+            WHERE user_id IS NOT NULL
+            GROUP BY user_id, day
+            HAVING SUM(borrow_count) + SUM(return_count) > 0
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // rows are written in key order, so concurrent lending steps lock the shared day rows in the same order
+    public void add(Collection<LendingDelta> deltas) {
+        jdbcTemplate.batchUpdate(
+                ADD_TO_BOOK_DAY,
+                deltas.stream()
+                        .filter(delta -> delta.bookId() != null)
+                        .sorted(Comparator.comparing(LendingDelta::bookId).thenComparing(LendingDelta::day))
+                        .map(LendingStatsRepository::toParameters)
+                        .toArray(SqlParameterSource[]::new));
+        jdbcTemplate.batchUpdate(
+                ADD_TO_USER_DAY,
+                deltas.stream()
+                        .filter(delta -> delta.borrowerId() != null && delta.countsForBorrower())
+                        .sorted(Comparator.comparing(LendingDelta::borrowerId).thenComparing(LendingDelta::day))
+                        .map(LendingStatsRepository::toParameters)
+                        .toArray(SqlParameterSource[]::new));
+    }
+
+    public LendingTotals findBookTotals(Integer bookId, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForObject(
+                SUM_TOTALS.formatted(SUM_APPROVALS)
+                        + """
+                        FROM book_lending_day lending
+                        WHERE lending.book_id = :id
+                        AND lending.day BETWEEN :from AND :to
+                        """,
+                rangeParameters(bookId, from, to),
+                LendingStatsRepository::toTotals);
+    }
+
+    public LendingTotals findOwnerTotals(Integer ownerId, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForObject(
+                SUM_TOTALS.formatted(SUM_APPROVALS)
+                        + """
+                        FROM book
+                        JOIN book_lending_day lending ON lending.book_id = book.id
+                        WHERE book.owner_id = :id
+                        AND lending.day BETWEEN :from AND :to
+                        """,
+                rangeParameters(ownerId, from, to),
+                LendingStatsRepository::toTotals);
+    }
+
+    public LendingTotals findBorrowerTotals(Integer borrowerId, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForObject(
+                SUM_TOTALS.formatted("0 AS approval_count, 0 AS approval_seconds")
+                        + """
+                        FROM user_lending_day lending
+                        WHERE lending.user_id = :id
+                        AND lending.day BETWEEN :from AND :to
+                        """,
+                rangeParameters(borrowerId, from, to),
+                LendingStatsRepository::toTotals);
+    }
+
+    public List<BorrowedTitleResponse> findMostBorrowedBooks(Integer ownerId, LocalDate from, LocalDate to, int limit) {
+        MapSqlParameterSource parameters = rangeParameters(ownerId, from, to).addValue("limit", limit);
+        return jdbcTemplate.query(
+                FIND_MOST_BORROWED.formatted(ownerId == null ? "" : "AND book.owner_id = :id"),
+                parameters,
+                (resultSet, rowNumber) -> BorrowedTitleResponse.builder()
+                        .bookId(resultSet.getInt("id"))
+                        .title(resultSet.getString("title"))
+                        .authorName(resultSet.getString("author_name"))
+                        .borrowCount(resultSet.getLong("borrow_count"))
+                        .build());
+    }
+
+    // the lock waits for lending transactions that already wrote to the rollups and holds back new ones, so each
+    // loan step is either in the history this rebuild reads or added to the rows it writes, never both
+    public void rebuild(LocalDate from, LocalDate until) {
+        MapSqlParameterSource parameters =
+                new MapSqlParameterSource().addValue("from", from).addValue("until", until);
+        jdbcTemplate.update("LOCK TABLE book_lending_day, user_lending_day IN SHARE ROW EXCLUSIVE MODE", parameters);
+        jdbcTemplate.update("DELETE FROM book_lending_day WHERE day >= :from AND day < :until", parameters);
+        jdbcTemplate.update("DELETE FROM user_lending_day WHERE day >= :from AND day < :until", parameters);
+        jdbcTemplate.update(
+                REBUILD_DAYS,
+                new MapSqlParameterSource()
+                        .addValue("from", from.atStartOfDay())
+                        .addValue("until", until.atStartOfDay()));
+    }
+
+    public LocalDate findFirstLoanDay() {
+        return jdbcTemplate.queryForObject(
+                """
+                SELECT CAST(MIN(first_loan) AS date)
+                FROM (
+                    SELECT MIN(created_date) AS first_loan FROM book_transaction_history
+                    UNION ALL
+                    SELECT MIN(created_date) FROM book_transaction_history_archive
+                ) loans
+                """,
+                new MapSqlParameterSource(),
+                LocalDate.class);
+    }
+
+    public BackfillState lockBackfillState() {
+        return jdbcTemplate.queryForObject(
+                "SELECT rebuild_through, rebuilt_through FROM lending_stats_backfill WHERE id = 1 FOR UPDATE",
+                new MapSqlParameterSource(),
+                (resultSet, rowNumber) -> new BackfillState(
+                        resultSet.getObject("rebuild_through", LocalDate.class),
+                        resultSet.getObject("rebuilt_through", LocalDate.class)));
+    }
+
+    public void updateRebuiltThrough(LocalDate rebuiltThrough) {
+        jdbcTemplate.update(
+                "UPDATE lending_stats_backfill SET rebuilt_through = :rebuiltThrough WHERE id = 1",
+                new MapSqlParameterSource("rebuiltThrough", rebuiltThrough));
+    }
+
+    private static MapSqlParameterSource rangeParameters(Integer id, LocalDate from, LocalDate to) {
+        return new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("from", from)
+                .addValue("to", to);
+    }
+
+    private static SqlParameterSource toParameters(LendingDelta delta) {
+        return new MapSqlParameterSource()
+                .addValue("bookId", delta.bookId())
+                .addValue("borrowerId", delta.borrowerId())
+                .addValue("day", delta.day())
+                .addValue("borrowCount", delta.borrowCount())
+                .addValue("returnCount", delta.returnCount())
+                .addValue("loanSeconds", delta.loanSeconds())
+                .addValue("approvalCount", delta.approvalCount())
+                .addValue("approvalSeconds", delta.approvalSeconds());
+    }
+
+    private static LendingTotals toTotals(ResultSet resultSet, int rowNumber) throws SQLException {
+        return new LendingTotals(
+                resultSet.getLong("borrow_count"),
+                resultSet.getLong("return_count"),
+                resultSet.getLong("loan_seconds"),
+                resultSet.getLong("approval_count"),
+                resultSet.getLong("approval_seconds"));
+    }
+
+    public record BackfillState(LocalDate rebuildThrough, LocalDate rebuiltThrough) {
+
+        public boolean isComplete() {
+            return rebuiltThrough != null && !rebuiltThrough.isBefore(rebuildThrough);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.bullionder.book_network.stats;
+
+import com.bullionder.book_network.book.Book;
+import com.bullionder.book_network.book.BookRepository;
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.user.User;
+import jakarta.persistence.EntityNotFoundException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@RequiredArgsConstructor
+public class LendingStatsService {
+
+    public static final String ADMIN_ROLE = "ADMIN";
+    public static final int DEFAULT_RANGE_DAYS = 30;
+    public static final int MAX_RANGE_DAYS = 3660;
+    public static final int MAX_MOST_BORROWED_BOOKS = 100;
+    private static final int USER_MOST_BORROWED_BOOKS = 10;
+
+    private final LendingStatsRepository repository;
+    private final BookRepository bookRepository;
+
+    // called inside the lending transaction, so the rollups commit or roll back together with the history
+    public void record(LendingDelta delta) {
+        record(List.of(delta));
+    }
+
+    public void record(Collection<LendingDelta> deltas) {
+        List<LendingDelta> counted =
+                deltas.stream().filter(delta -> !delta.isEmpty()).toList();
+        if (!counted.isEmpty()) {
+            repository.add(counted);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public BookLendingStatsResponse findBookStats(
+            Integer bookId, LocalDate from, LocalDate to, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Book book = bookRepository
+                .findById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException("No book found with the ID:: " + bookId));
+        if (!book.getOwner().getId().equals(user.getId()) && !isAdmin(connectedUser)) {
+            throw new OperationNotPermittedException("You cannot see the lending statistics of others books");
+        }
+        DateRange range = DateRange.of(from, to);
+        return BookLendingStatsResponse.builder()
+                .bookId(bookId)
+                .title(book.getTitle())
+                .from(range.from())
+                .to(range.to())
+                .totals(toLentResponse(repository.findBookTotals(bookId, range.from(), range.to())))
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public UserLendingStatsResponse findUserStats(
+            Integer userId, LocalDate from, LocalDate to, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        if (!user.getId().equals(userId) && !isAdmin(connectedUser)) {
+            throw new OperationNotPermittedException("You cannot see the lending statistics of other users");
+        }
+        DateRange range = DateRange.of(from, to);
+        return UserLendingStatsResponse.builder()
+                .userId(userId)
+                .from(range.from())
+                .to(range.to())
+                .borrowed(toBorrowedResponse(repository.findBorrowerTotals(userId, range.from(), range.to())))
+                .lent(toLentResponse(repository.findOwnerTotals(userId, range.from(), range.to())))
+                .mostBorrowedBooks(
+                        repository.findMostBorrowedBooks(userId, range.from(), range.to(), USER_MOST_BORROWED_BOOKS))
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public List<BorrowedTitleResponse> findMostBorrowedBooks(LocalDate from, LocalDate to, int size) {
+        DateRange range = DateRange.of(from, to);
+        return repository.findMostBorrowedBooks(
+                null, range.from(), range.to(), Math.max(1, Math.min(size, MAX_MOST_BORROWED_BOOKS)));
+    }
+
+    private static boolean isAdmin(Authentication connectedUser) {
+        return connectedUser.getAuthorities().stream()
+                .anyMatch(authority -> ADMIN_ROLE.equals(authority.getAuthority()));
+    }
+
+    private static LendingTotalsResponse toBorrowedResponse(LendingTotals totals) {
+        return LendingTotalsResponse.builder()
+                .borrowCount(totals.borrowCount())
+                .returnCount(totals.returnCount())
+                .averageLoanDuration(totals.averageLoanDuration())
+                .build();
+    }
+
+    private static LendingTotalsResponse toLentResponse(LendingTotals totals) {
+        return LendingTotalsResponse.builder()
+                .borrowCount(totals.borrowCount())
+                .returnCount(totals.returnCount())
+                .averageLoanDuration(totals.averageLoanDuration())
+                .approvalCount(totals.approvalCount())
+                .averageApprovalLatency(totals.averageApprovalLatency())
+                .build();
+    }
+
+    private record DateRange(LocalDate from, LocalDate to) {
+
+        static DateRange of(LocalDate from, LocalDate to) {
+            LocalDate end = to == null ? LocalDate.now() : to;
+            LocalDate start = from == null ? end.minusDays(DEFAULT_RANGE_DAYS - 1) : from;
+            if (start.isAfter(end)) {
+                throw new OperationNotPermittedException("The start of the range must not be after its end");
+            }
+            if (ChronoUnit.DAYS.between(start, end) >= MAX_RANGE_DAYS) {
+                throw new OperationNotPermittedException("A range can cover at most " + MAX_RANGE_DAYS + " days");
+            }
+            return new DateRange(start, end);
+        }
+    }
+}
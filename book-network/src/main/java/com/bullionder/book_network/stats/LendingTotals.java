@@ -0,0 +1,15 @@
+package com.bullionder.book_network.stats;
+
+import java.time.Duration;
+
+public record LendingTotals(
+        long borrowCount, long returnCount, long loanSeconds, long approvalCount, long approvalSeconds) {
+
+    public Duration averageLoanDuration() {
+        return returnCount == 0 ? null : Duration.ofSeconds(loanSeconds / returnCount);
+    }
+
+    public Duration averageApprovalLatency() {
+        return approvalCount == 0 ? null : Duration.ofSeconds(approvalSeconds / approvalCount);
+    }
+}
@@ -0,0 +1,21 @@
+package com.bullionder.book_network.stats;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.Duration;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LendingTotalsResponse {
+
+    private long borrowCount;
+    private long returnCount;
+    private Duration averageLoanDuration;
+    // only owners approve returns, so the borrower side leaves these out
+    private Long approvalCount;
+    private Duration averageApprovalLatency;
+}
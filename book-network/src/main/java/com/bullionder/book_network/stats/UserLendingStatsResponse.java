@@ -0,0 +1,20 @@
+package com.bullionder.book_network.stats;
+
+import java.time.LocalDate;
+import java.util.List;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserLendingStatsResponse {
+
+    private Integer userId;
+    private LocalDate from;
+    private LocalDate to;
+    private LendingTotalsResponse borrowed;
+    private LendingTotalsResponse lent;
+    private List<BorrowedTitleResponse> mostBorrowedBooks;
+}
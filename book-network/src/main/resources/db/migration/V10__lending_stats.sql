@@ -0,0 +1,51 @@
+-- the moments a loan was returned and its return approved, which the loan duration and approval latency need
+ALTER TABLE book_transaction_history
+    ADD COLUMN returned_date timestamp(6),
+    ADD COLUMN return_approved_date timestamp(6);
+ALTER TABLE book_transaction_history_archive
+    ADD COLUMN returned_date timestamp(6),
+    ADD COLUMN return_approved_date timestamp(6);
+
+-- the last change of an open returned loan was its return, and the last change of an approved loan its approval;
+-- loans approved before this migration keep no return time and count as borrows only
+UPDATE book_transaction_history SET returned_date = last_modified_date
+WHERE returned = true AND return_approved = false;
+UPDATE book_transaction_history SET return_approved_date = last_modified_date
+WHERE return_approved = true;
+UPDATE book_transaction_history_archive SET return_approved_date = last_modified_date
+WHERE return_approved = true;
+
+-- daily rollups kept by the lending transactions themselves, the statistics endpoints read nothing else;
+-- a return counts on the day it happened with the whole loan duration, an approval with its latency
+CREATE TABLE book_lending_day (
+    book_id integer NOT NULL REFERENCES book (id),
+    day date NOT NULL,
+    borrow_count integer NOT NULL,
+    return_count integer NOT NULL,
+    loan_seconds bigint NOT NULL,
+    approval_count integer NOT NULL,
+    approval_seconds bigint NOT NULL,
+    PRIMARY KEY (book_id, day)
+);
+
+-- LendingStatsRepository.findMostBorrowedBooks over the whole catalog
+CREATE INDEX idx_book_lending_day_day ON book_lending_day (day);
+
+CREATE TABLE user_lending_day (
+    user_id integer NOT NULL REFERENCES _users (id),
+    day date NOT NULL,
+    borrow_count integer NOT NULL,
+    return_count integer NOT NULL,
+    loan_seconds bigint NOT NULL,
+    PRIMARY KEY (user_id, day)
+);
+
+-- LendingStatsBackfill rebuilds the days up to the one this migration ran on from the history, live recording
+-- only starts with this deployment; rebuilt_through is its progress, so a restart resumes where it stopped
+CREATE TABLE lending_stats_backfill (
+    id smallint PRIMARY KEY CHECK (id = 1),
+    rebuild_through date NOT NULL,
+    rebuilt_through date
+);
+
+INSERT INTO lending_stats_backfill (id, rebuild_through) VALUES (1, CURRENT_DATE);
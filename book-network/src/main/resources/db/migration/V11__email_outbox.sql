@@ -0,0 +1,17 @@
+-- emails are written in the transaction that causes them and sent afterwards by EmailDispatcher;
+-- sent emails are deleted, emails that ran out of attempts stay with failed_date set
+CREATE TABLE email_outbox (
+    id bigserial PRIMARY KEY,
+    recipient varchar(255) NOT NULL,
+    subject varchar(255) NOT NULL,
+    template varchar(64) NOT NULL,
+    variables jsonb NOT NULL,
+    attempts integer NOT NULL DEFAULT 0,
+    next_attempt_date timestamp(6) NOT NULL,
+    last_error varchar(1000),
+    created_date timestamp(6) NOT NULL,
+    failed_date timestamp(6)
+);
+
+-- EmailOutbox.claim and the pending count, abandoned emails drop out of the index
+CREATE INDEX idx_email_outbox_next_attempt ON email_outbox (next_attempt_date) WHERE failed_date IS NULL;
@@ -0,0 +1,27 @@
+-- resumable cover uploads, kept here so any instance can take the next chunk or complete the upload;
+-- the received bytes are parts in the cover store under uploads/<session id>/, listed in cover_upload_part
+CREATE TABLE cover_upload_session (
+    id varchar(36) PRIMARY KEY,
+    book_id integer NOT NULL,
+    user_id integer NOT NULL,
+    length bigint,
+    file_name varchar(255),
+    received bigint NOT NULL DEFAULT 0,
+    -- set while one instance assembles the parts, so chunks and a second completion are turned away
+    completing_until timestamp(6),
+    expires_at timestamp(6) NOT NULL,
+    created_date timestamp(6) NOT NULL
+);
+
+-- the per-user session limit in CoverUploadService.createSession
+CREATE INDEX idx_cover_upload_session_user ON cover_upload_session (user_id, expires_at);
+-- the global session limit and the purge of expired sessions
+CREATE INDEX idx_cover_upload_session_expires ON cover_upload_session (expires_at);
+
+CREATE TABLE cover_upload_part (
+    session_id varchar(36) NOT NULL REFERENCES cover_upload_session (id) ON DELETE CASCADE,
+    position bigint NOT NULL,
+    length bigint NOT NULL,
+    file_key varchar(255) NOT NULL,
+    PRIMARY KEY (session_id, position)
+);
@@ -0,0 +1,7 @@
+-- identity values are drawn before commit, so a stream cursor on the id alone skips a lower id that commits
+-- after a higher one; LendingEventRepository orders by the writing transaction instead.
+-- Existing rows get the id of this migration, which has ended before any stream reads them.
+ALTER TABLE lending_event ADD COLUMN transaction_id xid8 NOT NULL DEFAULT pg_current_xact_id();
+
+-- LendingEventRepository.findAfter and findLatestId
+CREATE INDEX idx_lending_event_recipient_transaction ON lending_event (recipient_id, transaction_id, id);
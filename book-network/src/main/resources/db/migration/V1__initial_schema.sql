@@ -0,0 +1,88 @@
+-- The schema Hibernate generated for the last release before the migrations. Databases created by that release
+-- are baselined at this version and take every later migration; see spring.flyway in application.yml.
+
+CREATE SEQUENCE _users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE book_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE book_transaction_history_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE feedback_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE role_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE token_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE _users (
+    id integer NOT NULL,
+    firstname varchar(255),
+    lastname varchar(255),
+    date_of_birth date,
+    email varchar(255) UNIQUE,
+    password varchar(255),
+    account_locked boolean NOT NULL,
+    enabled boolean NOT NULL,
+    created_date date NOT NULL,
+    last_modified_date date,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE role (
+    id integer NOT NULL,
+    name varchar(255) UNIQUE,
+    created_date date NOT NULL,
+    last_modified_date date,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE _users_roles (
+    users_id integer NOT NULL REFERENCES _users (id),
+    roles_id integer NOT NULL REFERENCES role (id)
+);
+
+CREATE TABLE token (
+    id integer NOT NULL,
+    token varchar(255),
+    created_at timestamp(6),
+    expires_at timestamp(6),
+    validated_at timestamp(6),
+    user_id integer NOT NULL REFERENCES _users (id),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE book (
+    id integer NOT NULL,
+    title varchar(255),
+    author_name varchar(255),
+    isbn varchar(255),
+    synopsis varchar(255),
+    book_cover varchar(255),
+    archived boolean NOT NULL,
+    shareable boolean NOT NULL,
+    owner_id integer REFERENCES _users (id),
+    created_date timestamp(6) NOT NULL,
+    created_by integer NOT NULL,
+    last_modified_date timestamp(6),
+    last_modified_by integer,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE book_transaction_history (
+    id integer NOT NULL,
+    user_id integer REFERENCES _users (id),
+    book_id integer REFERENCES book (id),
+    returned boolean NOT NULL,
+    return_approved boolean NOT NULL,
+    created_date timestamp(6) NOT NULL,
+    created_by integer NOT NULL,
+    last_modified_date timestamp(6),
+    last_modified_by integer,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE feedback (
+    id integer NOT NULL,
+    note float(53),
+    comment varchar(255),
+    book_id integer REFERENCES book (id),
+    created_date timestamp(6) NOT NULL,
+    created_by integer NOT NULL,
+    last_modified_date timestamp(6),
+    last_modified_by integer,
+    PRIMARY KEY (id)
+);
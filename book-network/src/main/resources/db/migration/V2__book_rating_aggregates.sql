@@ -0,0 +1,15 @@
+-- FeedbackService keeps both columns up to date with each new feedback, the books rated before start from
+-- their feedback rows; RatingReconciler repairs any drift afterwards
+ALTER TABLE book
+    ADD COLUMN rating_sum float(53) DEFAULT 0 NOT NULL,
+    ADD COLUMN rating_count integer DEFAULT 0 NOT NULL;
+
+UPDATE book
+SET rating_sum = aggregate.rating_sum,
+    rating_count = aggregate.rating_count
+FROM (
+    SELECT book_id, COALESCE(SUM(note), 0) AS rating_sum, COUNT(id) AS rating_count
+    FROM feedback
+    GROUP BY book_id
+) aggregate
+WHERE book.id = aggregate.book_id;
@@ -0,0 +1,2 @@
+-- the optimistic lock of Book, which the ETags and the cached read models are derived from
+ALTER TABLE book ADD COLUMN version integer DEFAULT 0;
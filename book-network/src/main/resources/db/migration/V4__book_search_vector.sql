@@ -0,0 +1,10 @@
+-- generated by Postgres on every write, so no code path can leave the vector out of date
+ALTER TABLE book ADD COLUMN search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple'::regconfig, coalesce(title, '')), 'A')
+    || setweight(to_tsvector('simple'::regconfig, coalesce(isbn, '')), 'A')
+    || setweight(to_tsvector('simple'::regconfig, coalesce(author_name, '')), 'B')
+    || setweight(to_tsvector('english'::regconfig, coalesce(title, '')), 'B')
+    || setweight(to_tsvector('english'::regconfig, coalesce(synopsis, '')), 'C')
+) STORED;
+
+CREATE INDEX idx_book_search_vector ON book USING GIN (search_vector);
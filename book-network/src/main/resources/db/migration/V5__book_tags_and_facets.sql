@@ -0,0 +1,24 @@
+CREATE TABLE book_tag (
+    book_id integer NOT NULL REFERENCES book (id),
+    tag varchar(50) NOT NULL,
+    PRIMARY KEY (book_id, tag)
+);
+
+CREATE INDEX idx_book_tag_tag_book_id ON book_tag (tag, book_id);
+
+-- both tables start empty, BookFacetCounter.reconcile counts the existing books on its first run
+CREATE TABLE book_facet_count (
+    facet varchar(20) NOT NULL CHECK (facet IN ('TAG', 'RATING', 'AVAILABLE')),
+    scope varchar(50) NOT NULL,
+    facet_value varchar(50) NOT NULL,
+    book_count bigint NOT NULL,
+    PRIMARY KEY (facet, facet_value, scope)
+);
+
+CREATE TABLE book_facet_member (
+    book_id integer NOT NULL,
+    facet varchar(20) NOT NULL CHECK (facet IN ('TAG', 'RATING', 'AVAILABLE')),
+    scope varchar(50) NOT NULL,
+    facet_value varchar(50) NOT NULL,
+    PRIMARY KEY (book_id, facet, facet_value, scope)
+);
@@ -0,0 +1,13 @@
+-- borrowing sets the column with a conditional update, which keeps one open borrow per book
+ALTER TABLE book ADD COLUMN current_borrower_id integer;
+
+-- books borrowed before only know their borrower through the open history entry
+UPDATE book
+SET current_borrower_id = open_borrow.user_id
+FROM (
+    SELECT DISTINCT ON (book_id) book_id, user_id
+    FROM book_transaction_history
+    WHERE return_approved = false
+    ORDER BY book_id, created_date DESC
+) open_borrow
+WHERE book.id = open_borrow.book_id;
@@ -0,0 +1,11 @@
+CREATE TABLE lending_event (
+    id bigint GENERATED BY DEFAULT AS IDENTITY,
+    recipient_id integer NOT NULL,
+    type varchar(20) NOT NULL CHECK (type IN ('BOOK_BORROWED', 'BOOK_RETURNED', 'RETURN_APPROVED')),
+    book_id integer NOT NULL,
+    history_id integer NOT NULL,
+    created_date timestamp(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_lending_event_recipient ON lending_event (recipient_id, id);
@@ -0,0 +1,65 @@
+-- The loan history becomes range-partitioned by month. A partitioned table can only hold keys that contain the
+-- partition column, so the primary key becomes (id, created_date). The loans are copied into the partitions of
+-- their months, BookTransactionHistoryPartitioner creates the current and upcoming ones.
+LOCK TABLE book_transaction_history IN ACCESS EXCLUSIVE MODE;
+ALTER TABLE book_transaction_history RENAME TO book_transaction_history_unpartitioned;
+ALTER TABLE book_transaction_history_unpartitioned
+    RENAME CONSTRAINT book_transaction_history_pkey TO book_transaction_history_unpartitioned_pkey;
+
+CREATE TABLE book_transaction_history (
+    id integer NOT NULL,
+    user_id integer REFERENCES _users (id),
+    book_id integer REFERENCES book (id),
+    returned boolean NOT NULL,
+    return_approved boolean NOT NULL,
+    created_date timestamp(6) NOT NULL,
+    created_by integer NOT NULL,
+    last_modified_date timestamp(6),
+    last_modified_by integer,
+    PRIMARY KEY (id, created_date)
+) PARTITION BY RANGE (created_date);
+
+CREATE TABLE book_transaction_history_default PARTITION OF book_transaction_history DEFAULT;
+
+-- one partition for each month that holds loans, an empty table gets none here
+DO $$
+DECLARE
+    month timestamp := date_trunc('month', (SELECT min(created_date) FROM book_transaction_history_unpartitioned));
+    last_month timestamp := (SELECT max(created_date) FROM book_transaction_history_unpartitioned);
+BEGIN
+    WHILE month <= last_month LOOP
+        EXECUTE format('CREATE TABLE book_transaction_history_p%s PARTITION OF book_transaction_history '
+                || 'FOR VALUES FROM (%L) TO (%L)',
+            to_char(month, 'YYYYMM'), month, month + interval '1 month');
+        month := month + interval '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO book_transaction_history (
+    id, user_id, book_id, returned, return_approved,
+    created_date, created_by, last_modified_date, last_modified_by)
+SELECT id, user_id, book_id, returned, return_approved,
+    created_date, created_by, last_modified_date, last_modified_by
+FROM book_transaction_history_unpartitioned;
+
+DROP TABLE book_transaction_history_unpartitioned;
+
+-- closed loans are moved here by BookTransactionHistoryArchiver
+CREATE TABLE book_transaction_history_archive (
+    id integer NOT NULL,
+    user_id integer REFERENCES _users (id),
+    book_id integer REFERENCES book (id),
+    returned boolean NOT NULL,
+    return_approved boolean NOT NULL,
+    created_date timestamp(6) NOT NULL,
+    created_by integer NOT NULL,
+    last_modified_date timestamp(6),
+    last_modified_by integer,
+    archived_date timestamp(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_history_archive_user_created_date_id
+    ON book_transaction_history_archive (user_id, created_date, id);
+CREATE INDEX idx_history_archive_book_created_date_id
+    ON book_transaction_history_archive (book_id, created_date, id);
@@ -0,0 +1,35 @@
+-- Each index below serves named repository queries; QueryPlanTest fails when one of them falls back to a
+-- sequential scan.
+
+-- the keyset pages of the catalog, the loan history and the feedback of a book, ordered by (created_date, id)
+CREATE INDEX idx_book_created_date_id ON book (created_date, id);
+CREATE INDEX idx_history_user_created_date_id ON book_transaction_history (user_id, created_date, id);
+CREATE INDEX idx_history_book_created_date_id ON book_transaction_history (book_id, created_date, id);
+CREATE INDEX idx_feedback_book_created_date_id ON feedback (book_id, created_date, id);
+
+-- BookRepository.findAllDisplayableBooks, findDisplayableBooksAfter and countDisplayableBooks: only shared,
+-- unarchived books are ever listed, so the catalog index leaves every private or archived book out
+CREATE INDEX idx_book_catalog_created_date_id ON book (created_date DESC, id DESC)
+    WHERE archived = false AND shareable = true;
+
+-- BookRepository.findAllByOwner, countByOwnerId, findOwnerBooksVersion and the owner-wide bulk updates
+CREATE INDEX idx_book_owner_created_date_id ON book (owner_id, created_date, id);
+
+-- BookTransactionHistoryRepository.markReturned and findOpenBorrow: the open loan of a book is the only
+-- row these ever touch, so the closed loans, nearly the whole table, stay out of the index
+CREATE INDEX idx_history_open_book_user ON book_transaction_history (book_id, user_id, returned)
+    WHERE return_approved = false;
+
+-- TokenRepository.findByToken runs on every activation. The six-digit codes of a baselined database can repeat,
+-- only the newest token of a code can still be looked up, so the older ones go
+DELETE FROM token USING token newer WHERE newer.token = token.token AND newer.id > token.id;
+CREATE UNIQUE INDEX uk_token_token ON token (token);
+
+-- the roles of the connected user are loaded with every authenticated request
+CREATE INDEX idx_users_roles_users_id ON _users_roles (users_id, roles_id);
+
+-- BookFacetRepository.findCounts reads the largest counts of one facet and scope
+CREATE INDEX idx_book_facet_count_scope_count ON book_facet_count (facet, scope, book_count DESC);
+
+-- LendingEventStream.purgeExpiredEvents
+CREATE INDEX idx_lending_event_created_date ON lending_event (created_date);
@@ -0,0 +1,193 @@
+package com.bullionder.book_network;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bullionder.book_network.book.BookRepository;
+import com.bullionder.book_network.feedback.FeedbackRepository;
+import com.bullionder.book_network.history.BookTransactionHistoryRepository;
+import com.bullionder.book_network.user.TokenRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+// runs the migrations on a real Postgres and explains every statement the hot repository methods send;
+// with sequential scans disabled the planner still picks one when no index can answer the query
+@DataJpaTest(
+        properties = {
+            "spring.flyway.enabled=true",
+            "spring.jpa.hibernate.ddl-auto=validate",
+            "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                    + "com.bullionder.book_network.QueryPlanTest$RecordingInspector"
+        })
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class QueryPlanTest {
+
+    private static final Pageable PAGE =
+            PageRequest.of(0, 10, Sort.by("createdDate").descending());
+    private static final LocalDateTime NOW = LocalDateTime.now();
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private FeedbackRepository feedbackRepository;
+
+    @Autowired
+    private TokenRepository tokenRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        // a generic plan cannot lean on the parameter values, so it shows what the indexes alone allow
+        jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+        // NULL arguments would prune every partition at execution time and hide their scans
+        jdbcTemplate.execute("SET LOCAL enable_partition_pruning = off");
+        // the default partition holds nothing in production, the monthly ones are what queries should hit
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS book_transaction_history_p_test "
+                + "PARTITION OF book_transaction_history FOR VALUES FROM ('2000-01-01') TO ('2100-01-01')");
+    }
+
+    @Test
+    void catalogQueriesUseTheCatalogIndex() {
+        String catalogIndex = "idx_book_catalog_created_date_id";
+        assertUsesIndex(catalogIndex, () -> bookRepository.findAllDisplayableBooks(PAGE, 1, false));
+        assertUsesIndex(catalogIndex, () -> bookRepository.findAllDisplayableBooks(PAGE, 1, true));
+        assertUsesIndex(catalogIndex, () -> bookRepository.countDisplayableBooks(1, false));
+        assertUsesIndex(
+                catalogIndex, () -> bookRepository.findDisplayableBooksAfter(1, false, NOW, 1, PageRequest.ofSize(10)));
+        assertNoSequentialScan(() -> bookRepository.findDisplayableBooksByTag(PAGE, 1, "fantasy", false));
+        assertNoSequentialScan(() -> bookRepository.countDisplayableBooksByTag(1, "fantasy", false));
+        assertNoSequentialScan(() -> bookRepository.findTags(List.of(1, 2)));
+    }
+
+    @Test
+    void ownerAndBookQueriesUseTheirIndexes() {
+        String ownerIndex = "idx_book_owner_created_date_id";
+        assertUsesIndex(ownerIndex, () -> bookRepository.findAllByOwner(PAGE, 1));
+        assertUsesIndex(ownerIndex, () -> bookRepository.countByOwnerId(1));
+        assertUsesIndex(ownerIndex, () -> bookRepository.findOwnerBooksVersion(1));
+        assertNoSequentialScan(() -> bookRepository.findOwnerId(1));
+        assertNoSequentialScan(() -> bookRepository.markBorrowed(1, 2, NOW));
+    }
+
+    @Test
+    void historyQueriesUseTheirIndexes() {
+        assertNoSequentialScan(() -> historyRepository.findBorrowedBooks(PAGE, 1));
+        assertNoSequentialScan(() -> historyRepository.countBorrowedBooks(1));
+        assertNoSequentialScan(() -> historyRepository.findBorrowedBooksAfter(1, NOW, 1, PageRequest.ofSize(10)));
+        assertNoSequentialScan(() -> historyRepository.findReturnedBooks(PAGE, 1));
+        assertNoSequentialScan(() -> historyRepository.countReturnedBooks(1));
+        assertNoSequentialScan(() -> historyRepository.findBorrowedBooksVersion(1));
+        assertNoSequentialScan(() -> historyRepository.markReturned(1, 2, NOW));
+        assertNoSequentialScan(() -> historyRepository.findOpenBorrow(1));
+    }
+
+    @Test
+    void feedbackAndTokenQueriesUseTheirIndexes() {
+        assertNoSequentialScan(() -> feedbackRepository.findAllByBookId(1, PAGE));
+        assertNoSequentialScan(() -> feedbackRepository.findAllByBookIdAfter(1, NOW, 1, PageRequest.ofSize(10)));
+        assertNoSequentialScan(() -> feedbackRepository.countByBookId(1));
+        assertUsesIndex("uk_token_token", () -> tokenRepository.findByToken("token"));
+    }
+
+    private void assertUsesIndex(String index, Runnable query) {
+        assertThat(explainAll(query))
+                .allSatisfy(plan -> assertThat(plan).doesNotContain("Seq Scan").contains(index));
+    }
+
+    private void assertNoSequentialScan(Runnable query) {
+        assertThat(explainAll(query)).allSatisfy(plan -> assertThat(plan).doesNotContain("Seq Scan"));
+    }
+
+    private List<String> explainAll(Runnable query) {
+        RecordingInspector.STATEMENTS.clear();
+        query.run();
+        List<String> statements = List.copyOf(RecordingInspector.STATEMENTS);
+        assertThat(statements).isNotEmpty();
+        // the statement heads each plan, so a failure names the query that lost its index
+        return statements.stream()
+                .map(statement -> statement + "\n" + explain(statement))
+                .toList();
+    }
+
+    private String explain(String statement) {
+        int parameters = 0;
+        StringBuilder numbered = new StringBuilder();
+        for (char character : statement.toCharArray()) {
+            if (character == '?') {
+                numbered.append('$').append(++parameters);
+            } else {
+                numbered.append(character);
+            }
+        }
+        jdbcTemplate.execute("PREPARE plan_check AS " + numbered);
+        try {
+            String arguments = String.join(", ", Collections.nCopies(parameters, "NULL"));
+            List<String> plan = jdbcTemplate.queryForList(
+                    "EXPLAIN EXECUTE plan_check" + (parameters == 0 ? "" : "(" + arguments + ")"), String.class);
+            return String.join("\n", plan);
+        } finally {
+            jdbcTemplate.execute("DEALLOCATE plan_check");
+        }
+    }
+
+    public static class RecordingInspector implements StatementInspector {
+
+        static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.bullionder.book_network;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+// a database of the release before the migrations holds the V1 schema without any Flyway history
+class SchemaMigrationTest {
+
+    private EmbeddedPostgres postgres;
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__initial_schema.sql")).execute(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void baselinesAPreMigrationDatabaseAndBringsItsRowsAlong() {
+        LocalDateTime lastYear = LocalDateTime.now().minusYears(1);
+        jdbcTemplate.update("INSERT INTO _users (id, email, account_locked, enabled, created_date)"
+                + " VALUES (1, 'owner@mail.com', false, true, CURRENT_DATE),"
+                + " (2, 'reader@mail.com', false, true, CURRENT_DATE)");
+        jdbcTemplate.update(
+                "INSERT INTO book (id, title, archived, shareable, owner_id, created_date, created_by)"
+                        + " VALUES (1, 'Dune', false, true, 1, LOCALTIMESTAMP, 1), (2, 'Emma', false, true, 1, LOCALTIMESTAMP, 1)");
+        jdbcTemplate.update("INSERT INTO feedback (id, note, book_id, created_date, created_by)"
+                + " VALUES (1, 4, 1, LOCALTIMESTAMP, 2), (2, 3, 1, LOCALTIMESTAMP, 2)");
+        jdbcTemplate.update(
+                "INSERT INTO book_transaction_history"
+                        + " (id, user_id, book_id, returned, return_approved, created_date, created_by)"
+                        + " VALUES (1, 2, 2, true, true, ?, 2), (2, 2, 1, false, false, LOCALTIMESTAMP, 2)",
+                lastYear);
+        jdbcTemplate.update("INSERT INTO token (id, token, user_id) VALUES (1, '123456', 1), (2, '123456', 2)");
+
+        MigrateResult result = Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+
+        assertThat(result.success).isTrue();
+        assertThat(result.migrations).extracting(migration -> migration.version).doesNotContain("1");
+        assertThat(jdbcTemplate.queryForList(
+                        "SELECT rating_sum || '/' || rating_count || '/' || coalesce(current_borrower_id, 0)"
+                                + " FROM book ORDER BY id",
+                        String.class))
+                .containsExactly("7/2/2", "0/0/0");
+        assertThat(jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM book WHERE search_vector @@ plainto_tsquery('simple', 'dune')",
+                        Integer.class))
+                .isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table"
+                                + " WHERE partrelid = to_regclass('book_transaction_history'))",
+                        Boolean.class))
+                .isTrue();
+        assertThat(jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM book_transaction_history_p"
+                                + YearMonth.from(lastYear).format(DateTimeFormatter.ofPattern("yyyyMM")),
+                        Integer.class))
+                .isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM book_transaction_history", Integer.class))
+                .isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM book_transaction_history_default", Integer.class))
+                .isZero();
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM token", Integer.class))
+                .containsExactly(2);
+    }
+}
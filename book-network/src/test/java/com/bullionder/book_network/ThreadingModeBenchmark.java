@@ -0,0 +1,209 @@
+package com.bullionder.book_network;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.bullionder.book_network.security.JwtService;
+import com.bullionder.book_network.security.UserDetailsServiceImpl;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// compares the platform and the virtual thread request mode under the same load, it is not part of the regular build:
+//   ./mvnw -Pvirtual-threads test -Dtest=ThreadingModeBenchmark
+// the profile forks the tests on the Java 21 JDK of ~/.m2/toolchains.xml
+// both runs get the same connection pool size and Tomcat thread limit, only spring.threads.virtual.enabled differs
+@Slf4j
+class ThreadingModeBenchmark {
+
+    private static final int POOL_SIZE = Integer.getInteger("benchmark.pool-size", 20);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 200);
+    private static final Duration WARMUP = Duration.parse(System.getProperty("benchmark.warmup", "PT10S"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("benchmark.duration", "PT30S"));
+    private static final int BOOKS = 2000;
+    private static final int PAGE_SIZE = 20;
+    private static final String READER = "reader@benchmark.test";
+
+    @Test
+    void compareThreadingModes() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21");
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            Path covers = Files.createTempDirectory("benchmark-covers");
+            List<Result> results = List.of(run(postgres, covers, false), run(postgres, covers, true));
+
+            log.info("Pool size {}, {} concurrent clients, {} measured", POOL_SIZE, CONCURRENCY, DURATION);
+            log.info(String.format("%-10s %12s %10s %10s %8s", "mode", "requests/s", "p50 ms", "p99 ms", "errors"));
+            for (Result result : results) {
+                log.info(String.format(
+                        "%-10s %12.1f %10.2f %10.2f %8d",
+                        result.mode(), result.throughput(), result.p50Millis(), result.p99Millis(), result.errors()));
+            }
+            assertThat(results).allSatisfy(result -> {
+                assertThat(result.errors()).isZero();
+                assertThat(result.requests()).isPositive();
+            });
+        }
+    }
+
+    private Result run(EmbeddedPostgres postgres, Path covers, boolean virtual) throws Exception {
+        // command line arguments outrank the test application.properties, which turns Flyway off for the H2 tests
+        String[] args = {
+            "--server.port=0",
+            "--spring.threads.virtual.enabled=" + virtual,
+            "--server.tomcat.threads.max=" + POOL_SIZE,
+            "--server.tomcat.threads.min-spare=" + POOL_SIZE,
+            "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+            "--spring.datasource.hikari.minimum-idle=" + POOL_SIZE,
+            "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+            "--spring.datasource.username=postgres",
+            "--spring.datasource.password=",
+            "--spring.flyway.enabled=true",
+            "--spring.jpa.hibernate.ddl-auto=validate",
+            "--spring.mail.host=localhost",
+            "--application.security.jwt.secret-key=" + newSecretKey(),
+            "--application.security.jwt.expiration=3600000",
+            "--application.mailing.frontend.activation-url=http://localhost/activate",
+            "--application.file.upload.photos-output-path=" + covers,
+            "--logging.level.root=WARN",
+            "--logging.level." + ThreadingModeBenchmark.class.getName() + "=INFO"
+        };
+        try (ConfigurableApplicationContext context =
+                new SpringApplicationBuilder(BookNetworkApiApplication.class).run(args)) {
+            seed(context.getBean(JdbcTemplate.class));
+            String token = context.getBean(JwtService.class)
+                    .generateToken(context.getBean(UserDetailsServiceImpl.class).loadUserByUsername(READER));
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + context.getEnvironment().getProperty("server.servlet.context-path");
+            return load(virtual ? "virtual" : "platform", baseUrl, token);
+        }
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        Integer users = jdbcTemplate.queryForObject("SELECT count(*) FROM _users", Integer.class);
+        if (users != null && users > 0) {
+            return;
+        }
+        jdbcTemplate.update(
+                """
+                INSERT INTO _users (id, firstname, lastname, email, password, account_locked, enabled, created_date)
+                VALUES (1, 'Owner', 'Benchmark', 'owner@benchmark.test', 'unused', false, true, CURRENT_DATE),
+                       (2, 'Reader', 'Benchmark', ?, 'unused', false, true, CURRENT_DATE)
+                """,
+                READER);
+        jdbcTemplate.update("INSERT INTO _users_roles (users_id, roles_id) SELECT u.id, r.id FROM _users u, role r");
+        jdbcTemplate.update(
+                """
+                INSERT INTO book (id, title, author_name, isbn, synopsis, archived, shareable, owner_id,
+                                  created_date, created_by)
+                SELECT g, 'Title ' || g, 'Author ' || (g % 100), 'isbn-' || g, 'A book to read', false, true, 1,
+                       LOCALTIMESTAMP, 1
+                FROM generate_series(1, ?) g
+                """,
+                BOOKS);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    // half the requests page through the catalog, half read single books, which mostly come from the local cache
+    private static Result load(String mode, String baseUrl, String token) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        long measureFrom = System.nanoTime() + WARMUP.toNanos();
+        long measureUntil = measureFrom + DURATION.toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            List<Future<Client>> runs = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                runs.add(clients.submit(() -> {
+                    Client result = new Client();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long now;
+                    while ((now = System.nanoTime()) < measureUntil) {
+                        String path = random.nextBoolean()
+                                ? "/books?size=" + PAGE_SIZE + "&page=" + random.nextInt(BOOKS / PAGE_SIZE)
+                                : "/books/" + (1 + random.nextInt(BOOKS));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                                .header("Authorization", "Bearer " + token)
+                                .timeout(Duration.ofSeconds(30))
+                                .build();
+                        int status;
+                        try {
+                            status = client.send(request, HttpResponse.BodyHandlers.discarding())
+                                    .statusCode();
+                        } catch (IOException e) {
+                            status = -1;
+                        }
+                        long finished = System.nanoTime();
+                        if (now >= measureFrom && finished <= measureUntil) {
+                            result.latencies.add(finished - now);
+                            if (status != 200) {
+                                result.errors++;
+                            }
+                        }
+                    }
+                    return result;
+                }));
+            }
+            List<Long> latencies = new ArrayList<>();
+            long errors = 0;
+            for (Future<Client> run : runs) {
+                Client result = run.get();
+                latencies.addAll(result.latencies);
+                errors += result.errors;
+            }
+            latencies.sort(null);
+            return new Result(
+                    mode,
+                    latencies.size(),
+                    errors,
+                    latencies.size() / (DURATION.toNanos() / 1e9),
+                    percentile(latencies, 0.50),
+                    percentile(latencies, 0.99));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static double percentile(List<Long> sortedLatencies, double percentile) {
+        if (sortedLatencies.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.size()) - 1;
+        return sortedLatencies.get(Math.max(index, 0)) / 1e6;
+    }
+
+    private static String newSecretKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static final class Client {
+
+        private final List<Long> latencies = new ArrayList<>();
+        private long errors;
+    }
+
+    private record Result(
+            String mode, long requests, long errors, double throughput, double p50Millis, double p99Millis) {}
+}
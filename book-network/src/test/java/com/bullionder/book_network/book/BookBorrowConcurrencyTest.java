@@ -0,0 +1,178 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+import com.bullionder.book_network.book.file.CoverCache;
+import com.bullionder.book_network.book.file.CoverThumbnailService;
+import com.bullionder.book_network.book.file.CoverUploadService;
+import com.bullionder.book_network.book.file.FileStorageService;
+import com.bullionder.book_network.common.PageTotals;
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.history.BookTransactionHistoryRepository;
+import com.bullionder.book_network.notification.LendingEventService;
+import com.bullionder.book_network.notification.LendingEventType;
+import com.bullionder.book_network.stats.LendingStatsService;
+import com.bullionder.book_network.user.User;
+import com.bullionder.book_network.user.UserRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// every borrower needs its own committed transaction, so the test cannot run inside the usual rollback
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(BookService.class)
+class BookBorrowConcurrencyTest {
+
+    private static final int BORROWERS = 8;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockBean
+    private BookMapper bookMapper;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private CoverCache coverCache;
+
+    @MockBean
+    private CoverThumbnailService coverThumbnailService;
+
+    @MockBean
+    private CoverUploadService coverUploadService;
+
+    @MockBean
+    private PageTotals pageTotals;
+
+    @MockBean
+    private BookSearchRepository bookSearchRepository;
+
+    @MockBean
+    private BookBulkRepository bookBulkRepository;
+
+    @MockBean
+    private BookSuggestionIndex bookSuggestionIndex;
+
+    @MockBean
+    private BookResponseCache bookResponseCache;
+
+    @MockBean
+    private BookFacetCounter bookFacetCounter;
+
+    @MockBean
+    private LendingEventService lendingEventService;
+
+    @MockBean
+    private LendingStatsService lendingStatsService;
+
+    @AfterEach
+    void tearDown() {
+        historyRepository.deleteAll();
+        bookRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void onlyOneConcurrentBorrowerWins() throws Exception {
+        User owner = userRepository.save(user("owner"));
+        List<User> borrowers = new ArrayList<>();
+        for (int i = 0; i < BORROWERS; i++) {
+            borrowers.add(userRepository.save(user("borrower" + i)));
+        }
+        Book book = bookRepository.save(Book.builder()
+                .title("Contended")
+                .authorName("Author")
+                .isbn("isbn")
+                .shareable(true)
+                .owner(owner)
+                .build());
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(BORROWERS);
+        List<Future<Integer>> attempts = new ArrayList<>();
+        try {
+            for (User borrower : borrowers) {
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return bookService.borrowBook(
+                            new UsernamePasswordAuthenticationToken(borrower, null, List.of()), book.getId());
+                }));
+            }
+            start.countDown();
+            int won = 0;
+            int rejected = 0;
+            for (Future<Integer> attempt : attempts) {
+                try {
+                    attempt.get(30, TimeUnit.SECONDS);
+                    won++;
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(OperationNotPermittedException.class);
+                    rejected++;
+                }
+            }
+            assertThat(won).isEqualTo(1);
+            assertThat(rejected).isEqualTo(BORROWERS - 1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Book borrowed = bookRepository.findById(book.getId()).orElseThrow();
+        assertThat(borrowed.getCurrentBorrowerId()).isNotNull();
+        assertThat(historyRepository.count()).isEqualTo(1);
+        assertThat(historyRepository.findOpenBorrow(book.getId())).isPresent();
+        verify(lendingEventService)
+                .record(eq(owner.getId()), eq(LendingEventType.BOOK_BORROWED), eq(book.getId()), any());
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .firstname("first-" + name)
+                .lastname("last-" + name)
+                .email(name + "@mail.com")
+                .password("password")
+                .enabled(true)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bullionder.book_network.notification.LendingEventsRecordedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class BookChangeChannelTest {
+
+    private static EmbeddedPostgres postgres;
+
+    private final List<Object> firstNodeEvents = new CopyOnWriteArrayList<>();
+    private final List<Object> secondNodeEvents = new CopyOnWriteArrayList<>();
+    private BookChangeChannel firstNode;
+    private BookChangeChannel secondNode;
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        firstNode = startNode(firstNodeEvents);
+        secondNode = startNode(secondNodeEvents);
+        // each node reports the missed changes once its LISTEN is in place
+        await(() -> firstNodeEvents.contains(new BookChangeChannel.BookChangesMissedEvent())
+                && secondNodeEvents.contains(new BookChangeChannel.BookChangesMissedEvent()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        firstNode.stop();
+        secondNode.stop();
+    }
+
+    @Test
+    void deliversABookChangeToTheOtherNodes() throws InterruptedException {
+        firstNode.publish(7);
+
+        await(() -> secondNodeEvents.contains(new BookChangedEvent(7, true)));
+        // a node does not invalidate its own changes a second time
+        assertThat(firstNodeEvents).noneMatch(BookChangedEvent.class::isInstance);
+    }
+
+    @Test
+    void deliversChangedBooksAndRecipientsAsRanges() throws InterruptedException {
+        secondNode.publish(List.of(3, 1, 2, 9));
+        secondNode.publishRecipients(List.of(4, 5));
+
+        await(() -> firstNodeEvents.contains(new BooksChangedEvent(List.of(1, 2, 3, 9), true))
+                && firstNodeEvents.contains(new LendingEventsRecordedEvent(List.of(4, 5), true)));
+        assertThat(secondNodeEvents).noneMatch(BooksChangedEvent.class::isInstance);
+    }
+
+    @Test
+    void encodesIdsAsRanges() {
+        List<String> ranges = BookChangeChannel.toRanges(List.of(9, 1, 2, 3, 7, 10, 2), 100);
+
+        assertThat(ranges).containsExactly("1-3,7-7,9-10");
+        assertThat(BookChangeChannel.fromRanges(ranges.get(0))).containsExactly(1, 2, 3, 7, 9, 10);
+    }
+
+    @Test
+    void splitsRangesThatExceedThePayloadLimit() {
+        List<String> ranges = BookChangeChannel.toRanges(List.of(1, 3, 5, 7), 8);
+
+        assertThat(ranges).containsExactly("1-1,3-3", "5-5,7-7");
+    }
+
+    private static BookChangeChannel startNode(List<Object> events) {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        properties.setUsername("postgres");
+        properties.setPassword("");
+        BookChangeChannel channel = new BookChangeChannel(
+                new JdbcTemplate(postgres.getPostgresDatabase()),
+                properties,
+                events::add,
+                new SimpleMeterRegistry(),
+                Duration.ofMillis(50),
+                Duration.ofMillis(100));
+        channel.start();
+        return channel;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waiting for the notifications").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
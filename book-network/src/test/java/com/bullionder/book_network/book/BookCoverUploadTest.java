@@ -0,0 +1,84 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.bullionder.book_network.book.file.CoverUploadService;
+import com.bullionder.book_network.book.file.CoverUploadSession;
+import com.bullionder.book_network.book.file.FileStorageService;
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.user.User;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+@ExtendWith(MockitoExtension.class)
+class BookCoverUploadTest {
+
+    private static final Integer BOOK_ID = 5;
+
+    @Mock
+    private BookRepository repository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private CoverUploadService coverUploadService;
+
+    @InjectMocks
+    private BookService bookService;
+
+    private final User owner = User.builder().id(1).build();
+    private final Authentication stranger =
+            new UsernamePasswordAuthenticationToken(User.builder().id(2).build(), null);
+
+    @BeforeEach
+    void setUp() {
+        Book book = Book.builder().id(BOOK_ID).owner(owner).build();
+        when(repository.findById(BOOK_ID)).thenReturn(Optional.of(book));
+    }
+
+    @Test
+    void rejectsACoverUploadStartedByAnotherUser() {
+        assertThatThrownBy(() -> bookService.createCoverUpload(BOOK_ID, 100L, "cover.png", stranger))
+                .isInstanceOf(OperationNotPermittedException.class);
+
+        verifyNoInteractions(coverUploadService);
+    }
+
+    @Test
+    void rejectsCompletingAnUploadForAnotherUsersBook() throws Exception {
+        // the session belongs to the caller, but the book it was started for does not
+        CoverUploadSession session = mock(CoverUploadSession.class);
+        when(session.getBookId()).thenReturn(BOOK_ID);
+        when(coverUploadService.findSession("upload", 2)).thenReturn(session);
+
+        assertThatThrownBy(() -> bookService.completeCoverUpload("upload", stranger))
+                .isInstanceOf(OperationNotPermittedException.class);
+
+        verify(coverUploadService, never()).complete(any());
+    }
+
+    @Test
+    void rejectsADirectCoverUploadByAnotherUser() {
+        MockMultipartFile file = new MockMultipartFile("file", "cover.png", "image/png", new byte[] {1, 2, 3});
+
+        assertThatThrownBy(() -> bookService.uploadBookCoverPicture(file, stranger, BOOK_ID))
+                .isInstanceOf(OperationNotPermittedException.class);
+
+        verifyNoInteractions(fileStorageService);
+    }
+}
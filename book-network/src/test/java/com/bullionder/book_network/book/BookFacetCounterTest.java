@@ -0,0 +1,70 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bullionder.book_network.book.BookFacetRepository.FacetKey;
+import com.bullionder.book_network.book.BookFacetRepository.FacetState;
+import com.bullionder.book_network.book.BookFacetRepository.Membership;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+class BookFacetCounterTest {
+
+    private final BookFacetRepository facetRepository = mock(BookFacetRepository.class);
+    private final BookFacetCounter counter = new BookFacetCounter(
+            facetRepository, mock(BookRepository.class), mock(PlatformTransactionManager.class), 100);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void appliesOnlyTheDifferenceToTheStoredMemberships() {
+        FacetState rated = new FacetState(1, false, true, 9, 2, false);
+        when(facetRepository.lockFacetStates(any())).thenReturn(List.of(rated));
+        when(facetRepository.findTags(any())).thenReturn(Map.of(1, List.of("fantasy")));
+        // the book was rated 3 and tagged "classic" when its memberships were last stored
+        when(facetRepository.findMemberships(any()))
+                .thenReturn(
+                        BookFacetCounter.memberships(new FacetState(1, false, true, 6, 2, false), List.of("classic")));
+
+        counter.refresh(List.of(1));
+
+        ArgumentCaptor<Map<FacetKey, Long>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(facetRepository).addToCounts(deltas.capture());
+        assertThat(deltas.getValue())
+                .containsOnly(
+                        Map.entry(new FacetKey(BookFacet.RATING, "", "3"), -1L),
+                        Map.entry(new FacetKey(BookFacet.RATING, "", "4"), 1L),
+                        Map.entry(new FacetKey(BookFacet.TAG, "", "classic"), -1L),
+                        Map.entry(new FacetKey(BookFacet.TAG, "", "fantasy"), 1L),
+                        Map.entry(new FacetKey(BookFacet.RATING, "classic", "3"), -1L),
+                        Map.entry(new FacetKey(BookFacet.AVAILABLE, "classic", "true"), -1L),
+                        Map.entry(new FacetKey(BookFacet.RATING, "fantasy", "4"), 1L),
+                        Map.entry(new FacetKey(BookFacet.AVAILABLE, "fantasy", "true"), 1L));
+    }
+
+    @Test
+    void skipsTheCountsWhenNothingChanged() {
+        FacetState state = new FacetState(1, false, true, 9, 2, true);
+        Set<Membership> memberships = BookFacetCounter.memberships(state, List.of("fantasy"));
+        when(facetRepository.lockFacetStates(any())).thenReturn(List.of(state));
+        when(facetRepository.findTags(any())).thenReturn(Map.of(1, List.of("fantasy")));
+        when(facetRepository.findMemberships(any())).thenReturn(memberships);
+
+        assertThat(counter.refresh(List.of(1))).isZero();
+        verify(facetRepository, never()).addToCounts(any());
+    }
+
+    @Test
+    void archivedBooksLeaveEveryFacet() {
+        assertThat(BookFacetCounter.memberships(new FacetState(1, true, true, 9, 2, false), List.of("fantasy")))
+                .isEmpty();
+    }
+}
@@ -0,0 +1,230 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bullionder.book_network.user.User;
+import com.bullionder.book_network.user.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// imports share book_seq with the entities and commit chunk by chunk, so this runs on the migrated schema
+// and outside of a test transaction
+@DataJpaTest(properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class BookImportServiceTest {
+
+    private static final int CHUNK_SIZE = 3;
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Integer> importedIds = new ArrayList<>();
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    // runs first, so the import draws the first block of the sequence
+    @Test
+    @Order(1)
+    void importedIdsNeverCollideWithEntityIds() throws IOException {
+        User owner = userRepository.save(user("ids"));
+
+        BookImportResponse first =
+                importBooks("text/csv", "title,authorName,isbn,tags\nFirst,Author,isbn-1,Fantasy;classic\n", owner);
+        List<Integer> savedIds = new ArrayList<>();
+        savedIds.add(saveBook(owner, "Saved 1"));
+        BookImportResponse second = importBooks("application/x-ndjson", ndjson(60, "Bulk"), owner);
+        savedIds.add(saveBook(owner, "Saved 2"));
+        savedIds.add(saveBook(owner, "Saved 3"));
+        BookImportResponse third = importBooks(
+                "text/csv",
+                "title,authorName\n"
+                        + IntStream.range(0, 10)
+                                .mapToObj(i -> "Csv " + i + ",Author")
+                                .collect(Collectors.joining("\n")),
+                owner);
+
+        // on a fresh sequence nextval returns 1, which both sides treat as a block of that one id
+        assertThat(importedIds.get(0)).isEqualTo(1);
+        assertThat(first.getImported()).isEqualTo(1);
+        assertThat(second.getImported()).isEqualTo(60);
+        assertThat(third.getImported()).isEqualTo(10);
+        assertThat(first.getFailed() + second.getFailed() + third.getFailed()).isZero();
+        assertThat(importedIds).hasSize(71).doesNotHaveDuplicates().doesNotContainAnyElementsOf(savedIds);
+        assertThat(bookIdsOf(owner)).hasSize(74).containsAll(importedIds).containsAll(savedIds);
+        assertThat(tagsOf(importedIds.get(0))).containsExactly("classic", "fantasy");
+    }
+
+    @Test
+    @Order(2)
+    void reportsInvalidRowsAndKeepsTheRest() throws IOException {
+        User owner = userRepository.save(user("invalid"));
+
+        BookImportResponse response = importBooks(
+                "application/x-ndjson",
+                """
+                {"title":"Dune","authorName":"Herbert","tags":["Science  Fiction"]}
+                {"authorName":"No title"}
+                {"title":"Broken",
+                {"title":"Emma","authorName":"Austen","shareable":true}
+                """,
+                owner);
+
+        assertThat(response.getImported()).isEqualTo(2);
+        assertThat(response.getFailed()).isEqualTo(2);
+        assertThat(response.getErrors()).extracting(BookImportError::row).containsExactly(2L, 3L);
+        assertThat(response.getErrors().get(0).message()).isEqualTo("Title is required");
+        assertThat(response.getErrors().get(1).message()).startsWith("Malformed JSON");
+        assertThat(titlesOf(owner)).containsExactlyInAnyOrder("Dune", "Emma");
+        assertThat(tagsOf(importedIds.get(0))).containsExactly("science fiction");
+    }
+
+    @Test
+    @Order(3)
+    void rollsBackOnlyTheChunkThatFailed() throws IOException {
+        User owner = userRepository.save(user("chunks"));
+
+        // Postgres refuses the NUL character, so the second chunk fails in the database and not in validation
+        BookImportResponse response = importBooks(
+                "application/x-ndjson",
+                """
+                {"title":"One","authorName":"A","tags":["kept"]}
+                {"title":"Two","authorName":"A"}
+                {"title":"Three","authorName":"A"}
+                {"title":"Four","authorName":"A","tags":["lost"]}
+                {"title":"Fi\\u0000ve","authorName":"A"}
+                {"title":"Six","authorName":"A"}
+                {"title":"Seven","authorName":"A","tags":["kept"]}
+                """,
+                owner);
+
+        assertThat(response.getImported()).isEqualTo(4);
+        assertThat(response.getFailed()).isEqualTo(3);
+        assertThat(response.getErrors()).extracting(BookImportError::row).containsExactly(4L, 5L, 6L);
+        assertThat(response.getErrors())
+                .allSatisfy(error -> assertThat(error.message()).startsWith("Not stored: "));
+        assertThat(titlesOf(owner)).containsExactlyInAnyOrder("One", "Two", "Three", "Seven");
+        assertThat(importedIds).hasSize(4);
+        assertThat(jdbcTemplate.queryForList(
+                        "SELECT tag FROM book_tag JOIN book ON book.id = book_tag.book_id WHERE owner_id = ?",
+                        String.class,
+                        owner.getId()))
+                .containsExactly("kept", "kept");
+    }
+
+    private BookImportResponse importBooks(String contentType, String body, User owner) throws IOException {
+        BookImportService importService = new BookImportService(
+                jdbcTemplate,
+                new TransactionTemplate(transactionManager),
+                new ObjectMapper(),
+                event -> importedIds.addAll(((BooksChangedEvent) event).bookIds()),
+                2,
+                CHUNK_SIZE,
+                100,
+                65536,
+                "book_seq",
+                50);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(owner, null);
+        return importService.importBooks(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), contentType, authentication);
+    }
+
+    private Integer saveBook(User owner, String title) {
+        return bookRepository
+                .save(Book.builder()
+                        .title(title)
+                        .authorName("Author")
+                        .shareable(true)
+                        .owner(owner)
+                        .build())
+                .getId();
+    }
+
+    private List<Integer> bookIdsOf(User owner) {
+        return jdbcTemplate.queryForList("SELECT id FROM book WHERE owner_id = ?", Integer.class, owner.getId());
+    }
+
+    private List<String> titlesOf(User owner) {
+        return jdbcTemplate.queryForList("SELECT title FROM book WHERE owner_id = ?", String.class, owner.getId());
+    }
+
+    private List<String> tagsOf(Integer bookId) {
+        return jdbcTemplate.queryForList(
+                "SELECT tag FROM book_tag WHERE book_id = ? ORDER BY tag", String.class, bookId);
+    }
+
+    private static String ndjson(int rows, String title) {
+        return IntStream.range(0, rows)
+                .mapToObj(i -> "{\"title\":\"" + title + " " + i + "\",\"authorName\":\"Author\"}")
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .firstname("first-" + name)
+                .lastname("last-" + name)
+                .email(name + "@mail.com")
+                .password("password")
+                .enabled(true)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
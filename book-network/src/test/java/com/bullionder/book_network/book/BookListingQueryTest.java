@@ -0,0 +1,281 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bullionder.book_network.common.ContentVersion;
+import com.bullionder.book_network.common.KeysetCursor;
+import com.bullionder.book_network.history.ArchivedBookTransactionHistory;
+import com.bullionder.book_network.history.ArchivedBookTransactionHistoryRepository;
+import com.bullionder.book_network.history.BookTransactionHistory;
+import com.bullionder.book_network.history.BookTransactionHistoryRepository;
+import com.bullionder.book_network.user.User;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class BookListingQueryTest {
+
+    private static final int BOOKS = 15;
+    private static final Pageable FIRST_PAGE =
+            PageRequest.of(0, 10, Sort.by(BookService.CREATED_DATE).descending());
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private ArchivedBookTransactionHistoryRepository archivedHistoryRepository;
+
+    private final BookMapper bookMapper = new BookMapper();
+    private Statistics statistics;
+    private User reader;
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        reader = entityManager.persist(user("reader"));
+        owner = entityManager.persist(user("owner"));
+        for (int i = 0; i < BOOKS; i++) {
+            User bookOwner = i % 2 == 0 ? owner : entityManager.persist(user("owner" + i));
+            Book book = entityManager.persist(Book.builder()
+                    .title("Book " + i)
+                    .authorName("Author " + i)
+                    .isbn("isbn-" + i)
+                    .bookCover("ab/cd/" + "0".repeat(63) + i % 10 + ".png")
+                    .shareable(true)
+                    .ratingSum(9)
+                    .ratingCount(2)
+                    .owner(bookOwner)
+                    .tags(new LinkedHashSet<>(i % 3 == 0 ? List.of("fantasy", "classic") : List.of("classic")))
+                    .build());
+            entityManager.persist(
+                    BookTransactionHistory.builder().user(reader).book(book).build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void displayableBooksPageUsesOneQueryWithoutCounting() {
+        List<BookResponse> page = bookRepository
+                .findAllDisplayableBooks(FIRST_PAGE, reader.getId(), false)
+                .map(book -> bookMapper.toBookResponse(book, List.of(), null))
+                .getContent();
+
+        assertThat(page).hasSize(10).allSatisfy(book -> {
+            assertThat(book.getOwner()).startsWith("first-");
+            assertThat(book.getRate()).isEqualTo(4.5);
+            assertThat(book.getCoverUrl()).contains("/books/" + book.getId() + "/cover");
+        });
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void tagsOfAPageLoadInOneQuery() {
+        List<Integer> bookIds = bookRepository
+                .findAllDisplayableBooks(FIRST_PAGE, reader.getId(), false)
+                .map(BookSummary::id)
+                .getContent();
+
+        List<BookTag> tags = bookRepository.findTags(bookIds);
+
+        assertThat(tags).extracting(BookTag::bookId).containsOnlyElementsOf(bookIds);
+        assertThat(tags).filteredOn(tag -> tag.tag().equals("classic")).hasSize(bookIds.size());
+        assertThat(tags).filteredOn(tag -> tag.tag().equals("fantasy")).isNotEmpty();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void tagFilterKeepsOneRowPerBook() {
+        Slice<BookSummary> fantasy =
+                bookRepository.findDisplayableBooksByTag(FIRST_PAGE, reader.getId(), "fantasy", false);
+
+        assertThat(fantasy.getContent())
+                .extracting(BookSummary::title)
+                .containsExactlyInAnyOrder("Book 0", "Book 3", "Book 6", "Book 9", "Book 12");
+        assertThat(bookRepository.countDisplayableBooksByTag(reader.getId(), "classic", false))
+                .isEqualTo(BOOKS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void availableFilterSkipsBorrowedBooks() {
+        Book book = bookRepository.findAll().get(0);
+        assertThat(bookRepository.markBorrowed(book.getId(), reader.getId(), LocalDateTime.now()))
+                .isEqualTo(1);
+        assertThat(bookRepository.markBorrowed(book.getId(), reader.getId(), LocalDateTime.now()))
+                .isZero();
+        entityManager.clear();
+
+        assertThat(bookRepository.countDisplayableBooks(reader.getId(), false)).isEqualTo(BOOKS);
+        assertThat(bookRepository.countDisplayableBooks(reader.getId(), true)).isEqualTo(BOOKS - 1);
+        assertThat(bookRepository.findById(book.getId()).orElseThrow().getVersion())
+                .isEqualTo(book.getVersion() + 1);
+    }
+
+    @Test
+    void ownerBooksPageUsesOneQueryAndOneCount() {
+        Slice<BookSummary> page =
+                bookRepository.findAllByOwner(PageRequest.of(0, 5, FIRST_PAGE.getSort()), owner.getId());
+        page.map(book -> bookMapper.toBookResponse(book, List.of(), null)).getContent();
+
+        assertThat(page.hasNext()).isTrue();
+        assertThat(bookRepository.countByOwnerId(owner.getId())).isEqualTo(8);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void borrowedAndReturnedPagesUseOneQueryAndOneCountEach() {
+        List<BorrowedBookResponse> borrowed = historyRepository
+                .findBorrowedBooks(FIRST_PAGE, reader.getId())
+                .map(bookMapper::toBorrowedBookResponse)
+                .getContent();
+        assertThat(borrowed).hasSize(10).allSatisfy(book -> assertThat(book.getRate())
+                .isEqualTo(4.5));
+        assertThat(historyRepository.countBorrowedBooks(reader.getId())).isEqualTo(BOOKS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+
+        statistics.clear();
+        historyRepository
+                .findReturnedBooks(PageRequest.of(0, 5, FIRST_PAGE.getSort()), owner.getId())
+                .map(bookMapper::toBorrowedBookResponse)
+                .getContent();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void archivedLoansAreListedOnlyWhenAsked() {
+        Book book = bookRepository.findAll().get(0);
+        LocalDateTime longAgo = LocalDateTime.now().minusYears(1);
+        entityManager.persist(new ArchivedBookTransactionHistory(
+                1_000,
+                reader,
+                book,
+                true,
+                true,
+                longAgo,
+                longAgo,
+                longAgo,
+                reader.getId(),
+                longAgo,
+                owner.getId(),
+                LocalDateTime.now()));
+        entityManager.flush();
+        statistics.clear();
+
+        assertThat(archivedHistoryRepository.findBorrowedBooks(FIRST_PAGE, reader.getId()))
+                .extracting(BorrowedBookSummary::historyId)
+                .containsExactly(1_000);
+        assertThat(archivedHistoryRepository.countReturnedBooks(owner.getId())).isEqualTo(1);
+        assertThat(historyRepository.countBorrowedBooks(reader.getId())).isEqualTo(BOOKS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void keysetPagesWalkEveryBookOnceWithoutCounting() {
+        List<Integer> seen = new ArrayList<>();
+        KeysetCursor cursor = KeysetCursor.START;
+        int pages = 0;
+        while (cursor != null) {
+            Slice<BookSummary> page = bookRepository.findDisplayableBooksAfter(
+                    reader.getId(), false, cursor.createdDate(), cursor.id(), PageRequest.ofSize(4));
+            page.forEach(book -> seen.add(book.id()));
+            BookSummary last = page.getContent().get(page.getNumberOfElements() - 1);
+            cursor = page.hasNext()
+                    ? KeysetCursor.decode(new KeysetCursor(last.createdDate(), last.id()).encode())
+                    : null;
+            pages++;
+        }
+
+        assertThat(seen).hasSize(BOOKS).doesNotHaveDuplicates();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(pages);
+    }
+
+    @Test
+    void historyVersionChangesWhenABorrowedBookChanges() {
+        ContentVersion before = historyRepository.findBorrowedBooksVersion(reader.getId());
+        Book book = bookRepository.findAll().get(0);
+        bookRepository.addRating(book.getId(), 5, before.lastModified().plusSeconds(1));
+
+        ContentVersion after = historyRepository.findBorrowedBooksVersion(reader.getId());
+
+        assertThat(before.count()).isEqualTo(BOOKS);
+        assertThat(after.lastModified()).isAfter(before.lastModified());
+    }
+
+    @Test
+    void bookVersionChangesWhenAnUpdateKeepsTheModificationTime() {
+        Book book = bookRepository.findAll().stream()
+                .filter(candidate -> candidate.getOwner().getId().equals(owner.getId()))
+                .findFirst()
+                .orElseThrow();
+        LocalDateTime modifiedAt = LocalDateTime.now().withNano(0);
+        bookRepository.addRating(book.getId(), 5, modifiedAt);
+        ContentVersion before = bookRepository.findBookVersion(book.getId()).orElseThrow();
+        ContentVersion ownerBefore = bookRepository.findOwnerBooksVersion(owner.getId());
+
+        // a borrow in the same clock tick leaves the modification time where it was
+        bookRepository.markBorrowed(book.getId(), reader.getId(), modifiedAt);
+
+        ContentVersion after = bookRepository.findBookVersion(book.getId()).orElseThrow();
+        assertThat(after.lastModified()).isEqualTo(before.lastModified());
+        assertThat(after).isNotEqualTo(before);
+        assertThat(bookRepository.findOwnerBooksVersion(owner.getId())).isNotEqualTo(ownerBefore);
+    }
+
+    @Test
+    void emptyListsHaveAVersion() {
+        User newcomer = entityManager.persist(user("newcomer"));
+
+        assertThat(bookRepository.findOwnerBooksVersion(newcomer.getId())).isEqualTo(new ContentVersion(null, 0, 0));
+        assertThat(historyRepository.findBorrowedBooksVersion(newcomer.getId()))
+                .isEqualTo(new ContentVersion(null, 0, 0));
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .firstname("first-" + name)
+                .lastname("last-" + name)
+                .email(name + "@mail.com")
+                .password("password")
+                .enabled(true)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class BookResponseCacheTest {
+
+    private static final Integer BOOK_ID = 7;
+
+    private AnnotationConfigApplicationContext context;
+    private BookResponseCache cache;
+    private BookChangeChannel bookChangeChannel;
+    private TransactionTemplate transactionTemplate;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        context = new AnnotationConfigApplicationContext(CacheConfig.class);
+        cache = context.getBean(BookResponseCache.class);
+        bookChangeChannel = context.getBean(BookChangeChannel.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void keepsTheCachedBookUntilTheChangeCommits() {
+        load();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            context.publishEvent(new BookChangedEvent(BOOK_ID));
+            // a reader during the transaction must not reload and cache the uncommitted state
+            load();
+            assertThat(loads).hasValue(1);
+            verify(bookChangeChannel, never()).publish(BOOK_ID);
+        });
+
+        load();
+        assertThat(loads).hasValue(2);
+        verify(bookChangeChannel).publish(BOOK_ID);
+    }
+
+    @Test
+    void keepsTheCachedBookWhenTheChangeRollsBack() {
+        load();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            context.publishEvent(new BooksChangedEvent(List.of(BOOK_ID, 8)));
+            status.setRollbackOnly();
+        });
+
+        load();
+        assertThat(loads).hasValue(1);
+        verify(bookChangeChannel, never()).publish(List.of(BOOK_ID, 8));
+    }
+
+    @Test
+    void invalidatesARemoteChangeWithoutPublishingItAgain() {
+        load();
+
+        context.publishEvent(new BookChangedEvent(BOOK_ID, true));
+
+        load();
+        assertThat(loads).hasValue(2);
+        verify(bookChangeChannel, never()).publish(BOOK_ID);
+    }
+
+    private void load() {
+        cache.get(BOOK_ID, id -> {
+            loads.incrementAndGet();
+            return BookResponse.builder().id(id).build();
+        });
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class CacheConfig {
+
+        @Bean
+        BookChangeChannel bookChangeChannel() {
+            return mock(BookChangeChannel.class);
+        }
+
+        @Bean
+        BookResponseCache bookResponseCache(
+                BookChangeChannel bookChangeChannel, PlatformTransactionManager transactionManager) {
+            return new BookResponseCache(
+                    bookChangeChannel, transactionManager, new SimpleMeterRegistry(), 100, Duration.ofMinutes(5));
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(new DriverManagerDataSource("jdbc:h2:mem:book-response-cache"));
+        }
+    }
+}
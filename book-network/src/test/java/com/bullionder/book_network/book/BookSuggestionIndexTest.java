@@ -0,0 +1,117 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BookSuggestionIndexTest {
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final BookSuggestionIndex index = new BookSuggestionIndex(bookRepository, new SimpleMeterRegistry(), 2, 4);
+
+    @BeforeEach
+    void setUp() {
+        when(bookRepository.findSuggestionSourcesAfter(eq(0), any()))
+                .thenReturn(List.of(
+                        new BookSuggestionSource(1, "The Lord of the Rings", "J.R.R. Tolkien", 10, true, 0),
+                        new BookSuggestionSource(2, "The Hobbit", "J.R.R. Tolkien", 10, true, 0)));
+        when(bookRepository.findSuggestionSourcesAfter(eq(2), any()))
+                .thenReturn(List.of(new BookSuggestionSource(3, "Les Misérables", "Victor Hugo", 20, true, 0)));
+        index.rebuild();
+    }
+
+    @Test
+    void suggestsTitlesAndAuthorsByWordPrefix() {
+        assertThat(index.suggest("rin", null, 10))
+                .extracting(BookSuggestionResponse::getText)
+                .containsExactly("The Lord of the Rings");
+        assertThat(index.suggest("tolk", null, 10))
+                .extracting(BookSuggestionResponse::getText, BookSuggestionResponse::getType)
+                .containsExactly(tuple("J.R.R. Tolkien", SuggestionType.AUTHOR));
+        assertThat(index.suggest("miser", null, 10))
+                .extracting(BookSuggestionResponse::getBookId)
+                .containsExactly(3);
+    }
+
+    @Test
+    void toleratesOneTypoAndHidesTheCallersOwnBooks() {
+        assertThat(index.suggest("hobit", null, 10))
+                .extracting(BookSuggestionResponse::getText)
+                .containsExactly("The Hobbit");
+        assertThat(index.suggest("the", 10, 10)).isEmpty();
+    }
+
+    @Test
+    void dropsBooksThatAreNoLongerDisplayable() {
+        when(bookRepository.findSuggestionSource(2))
+                .thenReturn(Optional.of(new BookSuggestionSource(2, "The Hobbit", "J.R.R. Tolkien", 10, false, 1)));
+
+        index.onBookChanged(new BookChangedEvent(2));
+
+        assertThat(index.suggest("hobb", null, 10)).isEmpty();
+        assertThat(index.suggest("tolkien", null, 10))
+                .extracting(BookSuggestionResponse::getBookId)
+                .containsExactly(1);
+    }
+
+    @Test
+    void keepsTheNewerStateWhenChangesArriveOutOfOrder() {
+        BookSuggestionSource renamed = new BookSuggestionSource(2, "The Hobbit Revised", "J.R.R. Tolkien", 10, true, 3);
+        BookSuggestionSource archived = new BookSuggestionSource(2, "The Hobbit", "J.R.R. Tolkien", 10, false, 4);
+        BookSuggestionSource original = new BookSuggestionSource(2, "The Hobbit", "J.R.R. Tolkien", 10, true, 2);
+        // the second event read the book before the first one, but is applied after it
+        when(bookRepository.findSuggestionSource(2)).thenReturn(Optional.of(renamed), Optional.of(original));
+
+        index.onBookChanged(new BookChangedEvent(2));
+        index.onBookChanged(new BookChangedEvent(2));
+
+        assertThat(index.suggest("hobbit", null, 10))
+                .extracting(BookSuggestionResponse::getText)
+                .containsExactly("The Hobbit Revised");
+
+        when(bookRepository.findSuggestionSources(List.of(2))).thenReturn(List.of(archived), List.of(renamed));
+
+        index.onBooksChanged(new BooksChangedEvent(List.of(2)));
+        index.onBooksChanged(new BooksChangedEvent(List.of(2)));
+
+        assertThat(index.suggest("hobbit", null, 10)).isEmpty();
+    }
+
+    @Test
+    void matchesPrefixesLongerThanTheIndexedTerms() {
+        String title = "Harry Potter and the Philosopher's Stone";
+        when(bookRepository.findSuggestionSource(4))
+                .thenReturn(Optional.of(new BookSuggestionSource(4, title, "J.K. Rowling", 30, true, 0)));
+        index.onBookChanged(new BookChangedEvent(4));
+
+        assertThat(index.suggest("harry potter and the philosopher s st", null, 10))
+                .extracting(BookSuggestionResponse::getText)
+                .containsExactly(title);
+        assertThat(index.suggest("harry potter and the philosopher s xx", null, 10))
+                .isEmpty();
+    }
+
+    @Test
+    void releasesTheNodesOfRemovedBooks() {
+        int nodes = index.trieNodeCount();
+        when(bookRepository.findSuggestionSource(4))
+                .thenReturn(
+                        Optional.of(new BookSuggestionSource(4, "Anna Karenina", "Leo Tolstoy", 30, true, 0)),
+                        Optional.of(new BookSuggestionSource(4, "Anna Karenina", "Leo Tolstoy", 30, false, 1)));
+
+        index.onBookChanged(new BookChangedEvent(4));
+        assertThat(index.trieNodeCount()).isGreaterThan(nodes);
+        index.onBookChanged(new BookChangedEvent(4));
+
+        assertThat(index.trieNodeCount()).isEqualTo(nodes);
+    }
+}
@@ -0,0 +1,40 @@
+package com.bullionder.book_network.book;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+
+class CsvRecordReaderTest {
+
+    @Test
+    void readsQuotedFieldsSpanningLinesAndTracksRecordLines() throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(
+                new StringReader(
+                        "\uFEFFtitle,authorName\r\n\"Dune, Part \"\"One\"\"\",Herbert\n\n\"Multi\nline\",X\nLast,Y"),
+                1000);
+
+        assertThat(reader.next().fields()).containsExactly("title", "authorName");
+        CsvRecordReader.CsvRecord quoted = reader.next();
+        assertThat(quoted.fields()).containsExactly("Dune, Part \"One\"", "Herbert");
+        assertThat(quoted.line()).isEqualTo(2);
+        CsvRecordReader.CsvRecord multiline = reader.next();
+        assertThat(multiline.fields()).containsExactly("Multi\nline", "X");
+        assertThat(multiline.line()).isEqualTo(4);
+        CsvRecordReader.CsvRecord last = reader.next();
+        assertThat(last.fields()).containsExactly("Last", "Y");
+        assertThat(last.line()).isEqualTo(6);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void reportsOversizedRecordsAndResumesOnTheNextLine() throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader("a,b\n" + "x".repeat(50) + "\nc,d\n"), 10);
+
+        assertThat(reader.next().error()).isNull();
+        CsvRecordReader.CsvRecord oversized = reader.next();
+        assertThat(oversized.error()).contains("exceeds");
+        assertThat(reader.next().fields()).containsExactly("c", "d");
+    }
+}
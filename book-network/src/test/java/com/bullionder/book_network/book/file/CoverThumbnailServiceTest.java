@@ -0,0 +1,121 @@
+package com.bullionder.book_network.book.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CoverThumbnailServiceTest {
+
+    private static final String COVER = "ab/cd/abcdef.png";
+
+    @TempDir
+    Path tempDir;
+
+    private LocalCoverStore coverStore;
+    private CoverThumbnailService thumbnailService;
+
+    @BeforeEach
+    void setUp() {
+        coverStore = new LocalCoverStore(tempDir.resolve("covers").toString());
+        FileStorageService fileStorageService = new FileStorageService(coverStore, mock(CoverFileLocks.class));
+        ReflectionTestUtils.setField(
+                fileStorageService, "tempPath", tempDir.resolve("tmp").toString());
+        thumbnailService = new CoverThumbnailService(coverStore, fileStorageService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(thumbnailService, "poolSize", 1);
+        ReflectionTestUtils.setField(thumbnailService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(thumbnailService, "maxSourcePixels", 10_000_000L);
+        ReflectionTestUtils.setField(thumbnailService, "failureRetention", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(thumbnailService, "maxFailures", 100L);
+        thumbnailService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnailService.shutdown();
+    }
+
+    @Test
+    void queuesMissingThumbnailsThatNoWorkerKnowsAbout() throws Exception {
+        // the cover was stored by another node or before a restart, nothing is queued here
+        writeImage(COVER, 800, 1200);
+
+        assertThat(thumbnailService.getStatus(COVER))
+                .isIn(CoverProcessingStatus.PENDING, CoverProcessingStatus.PROCESSING);
+
+        await(() -> thumbnailService.getStatus(COVER) == CoverProcessingStatus.READY);
+        for (CoverSize size : CoverSize.values()) {
+            try (InputStream thumbnail = coverStore.openStream(FileUtils.thumbnailLocation(COVER, size))) {
+                assertThat(ImageIO.read(thumbnail).getWidth()).isEqualTo(size.getWidth());
+            }
+        }
+    }
+
+    @Test
+    void reportsAFailureUntilTheCoverIsUploadedAgain() throws Exception {
+        writeFile(COVER, "not an image");
+
+        thumbnailService.generateThumbnails(COVER);
+
+        await(() -> thumbnailService.getStatus(COVER) == CoverProcessingStatus.FAILED);
+        // a failed cover is not queued again on every status request
+        thumbnailService.requestThumbnails(COVER);
+        assertThat(thumbnailService.getStatus(COVER)).isEqualTo(CoverProcessingStatus.FAILED);
+
+        writeImage(COVER, 400, 600);
+        thumbnailService.generateThumbnails(COVER);
+
+        await(() -> thumbnailService.getStatus(COVER) == CoverProcessingStatus.READY);
+    }
+
+    @Test
+    void retriesAFailedCoverOnceTheFailureExpired() throws Exception {
+        ReflectionTestUtils.setField(thumbnailService, "failureRetention", Duration.ofMillis(100));
+        thumbnailService.shutdown();
+        thumbnailService.init();
+        writeFile(COVER, "not an image");
+        thumbnailService.generateThumbnails(COVER);
+        await(() -> thumbnailService.getStatus(COVER) == CoverProcessingStatus.FAILED);
+        writeImage(COVER, 400, 600);
+
+        Thread.sleep(200);
+
+        await(() -> thumbnailService.getStatus(COVER) == CoverProcessingStatus.READY);
+    }
+
+    private void writeImage(String key, int width, int height) throws IOException {
+        Path file = prepare(key);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+    }
+
+    private void writeFile(String key, String content) throws IOException {
+        Files.writeString(prepare(key), content);
+    }
+
+    private Path prepare(String key) throws IOException {
+        Path file = tempDir.resolve("covers").resolve(key);
+        Files.createDirectories(file.getParent());
+        return file;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waiting for the thumbnails").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
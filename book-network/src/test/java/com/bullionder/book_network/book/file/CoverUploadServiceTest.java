@@ -0,0 +1,206 @@
+package com.bullionder.book_network.book.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+// sessions are shared through PostgreSQL, so every test runs against the migrated schema
+class CoverUploadServiceTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalCoverStore coverStore;
+    private CoverUploadService uploadService;
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DataSource dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("TRUNCATE cover_upload_session CASCADE");
+        coverStore = new LocalCoverStore(tempDir.resolve("covers").toString());
+        uploadService = newInstance("instance-a");
+    }
+
+    // every instance has its own temp folder and shares the database and the cover store
+    private CoverUploadService newInstance(String name) {
+        CoverFileLocks coverFileLocks = mock(CoverFileLocks.class);
+        try {
+            when(coverFileLocks.whileStoring(any(), any())).thenAnswer(invocation -> invocation
+                    .<CoverFileLocks.LockedAction<?>>getArgument(1)
+                    .run());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        FileStorageService fileStorageService = new FileStorageService(coverStore, coverFileLocks);
+        ReflectionTestUtils.setField(
+                fileStorageService, "tempPath", tempDir.resolve(name).toString());
+        CoverUploadService service = new CoverUploadService(
+                fileStorageService,
+                coverStore,
+                new CoverUploadSessionRepository(new NamedParameterJdbcTemplate(jdbcTemplate)));
+        ReflectionTestUtils.setField(service, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "maxSessions", 10);
+        ReflectionTestUtils.setField(service, "maxSessionsPerUser", 2);
+        ReflectionTestUtils.setField(service, "expiration", Duration.ofMinutes(5));
+        return service;
+    }
+
+    @Test
+    void resumesFromTheLastReceivedOffset() throws IOException {
+        byte[] content = new byte[200_000];
+        new Random(42).nextBytes(content);
+        CoverUploadSession session = uploadService.createSession(1, 7, (long) content.length, "cover.PNG");
+
+        assertThatThrownBy(() -> uploadService.appendChunk(
+                        session.getId(), 7, 0, new BrokenInputStream(content, 0, 150_000, 70_000)))
+                .isInstanceOf(IOException.class);
+        long offset = uploadService.findSession(session.getId(), 7).getOffset();
+        assertThat(offset).isPositive().isLessThanOrEqualTo(70_000);
+        assertThatThrownBy(() -> uploadService.appendChunk(session.getId(), 7, 0, new ByteArrayInputStream(content)))
+                .isInstanceOf(OperationNotPermittedException.class);
+        uploadService.appendChunk(
+                session.getId(), 7, offset, new ByteArrayInputStream(content, (int) offset, content.length));
+
+        String fileKey = uploadService.complete(session);
+
+        String hash = HexFormat.of().formatHex(FileStorageService.newDigest().digest(content));
+        assertThat(fileKey).isEqualTo(FileStorageService.toFileKey(hash, "png"));
+        try (InputStream stored = coverStore.openStream(fileKey)) {
+            assertThat(stored.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(storedParts()).isEmpty();
+        assertThatThrownBy(() -> uploadService.findSession(session.getId(), 7))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    void continuesAnUploadOnAnotherInstance() throws IOException {
+        byte[] content = new byte[100_000];
+        new Random(7).nextBytes(content);
+        CoverUploadService otherInstance = newInstance("instance-b");
+        CoverUploadSession session = uploadService.createSession(1, 7, (long) content.length, "cover.png");
+
+        uploadService.appendChunk(session.getId(), 7, 0, new ByteArrayInputStream(content, 0, 60_000));
+        otherInstance.appendChunk(session.getId(), 7, 60_000, new ByteArrayInputStream(content, 60_000, 40_000));
+        String fileKey = otherInstance.complete(otherInstance.findSession(session.getId(), 7));
+
+        try (InputStream stored = coverStore.openStream(fileKey)) {
+            assertThat(stored.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(storedParts()).isEmpty();
+    }
+
+    @Test
+    void limitsTheSessionsOfOneUser() throws IOException {
+        uploadService.createSession(1, 7, 10L, "cover.png");
+        uploadService.createSession(2, 7, 10L, "cover.png");
+
+        assertThatThrownBy(() -> uploadService.createSession(3, 7, 10L, "cover.png"))
+                .isInstanceOf(OperationNotPermittedException.class);
+        assertThat(uploadService.createSession(3, 8, 10L, "cover.png")).isNotNull();
+    }
+
+    @Test
+    void purgesExpiredSessionsWithTheirParts() throws IOException {
+        CoverUploadSession session = uploadService.createSession(1, 7, 10L, "cover.png");
+        uploadService.appendChunk(session.getId(), 7, 0, new ByteArrayInputStream(new byte[4]));
+        assertThat(storedParts()).hasSize(1);
+        jdbcTemplate.update(
+                "UPDATE cover_upload_session SET expires_at = LOCALTIMESTAMP - interval '1 minute' WHERE id = ?",
+                session.getId());
+
+        uploadService.purgeExpiredSessions();
+
+        assertThat(storedParts()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM cover_upload_part", Long.class))
+                .isZero();
+    }
+
+    @Test
+    void rejectsCompletionBeforeAllBytesArrived() throws IOException {
+        CoverUploadSession session = uploadService.createSession(1, 7, 10L, "cover.png");
+        uploadService.appendChunk(session.getId(), 7, 0, new ByteArrayInputStream(new byte[4]));
+
+        assertThatThrownBy(() -> uploadService.complete(session)).isInstanceOf(OperationNotPermittedException.class);
+        assertThatThrownBy(
+                        () -> uploadService.appendChunk(session.getId(), 7, 4, new ByteArrayInputStream(new byte[7])))
+                .isInstanceOf(OperationNotPermittedException.class);
+    }
+
+    private List<String> storedParts() throws IOException {
+        try (Stream<CoverStore.StoredCover> covers = coverStore.listCovers()) {
+            return covers.map(CoverStore.StoredCover::key)
+                    .filter(CoverUploadService::isUploadPart)
+                    .toList();
+        }
+    }
+
+    private static class BrokenInputStream extends InputStream {
+
+        private final InputStream delegate;
+        private int remainingBeforeFailure;
+
+        BrokenInputStream(byte[] content, int offset, int length, int failAfter) {
+            this.delegate = new ByteArrayInputStream(Arrays.copyOfRange(content, offset, offset + length));
+            this.remainingBeforeFailure = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remainingBeforeFailure <= 0) {
+                throw new IOException("Connection reset");
+            }
+            int read = delegate.read(b, off, Math.min(len, remainingBeforeFailure));
+            remainingBeforeFailure -= read;
+            return read;
+        }
+    }
+}
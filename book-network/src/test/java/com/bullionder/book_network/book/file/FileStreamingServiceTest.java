@@ -0,0 +1,134 @@
+package com.bullionder.book_network.book.file;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.bullionder.book_network.book.BookController;
+import com.bullionder.book_network.book.BookImportService;
+import com.bullionder.book_network.book.BookService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+class FileStreamingServiceTest {
+
+    private static final String SMALL_COVER = "ab/abcdef.png";
+    private static final String LARGE_COVER = "cd/cdef01.png";
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path uploadRoot;
+
+    private Path largeFile;
+    private CoverStore coverStore;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write(SMALL_COVER, ALPHABET);
+        largeFile = write(LARGE_COVER, ALPHABET.repeat(4));
+        coverStore = spy(new LocalCoverStore(uploadRoot.toString()));
+        // the small cover is served from the cache, the large one from the store
+        CoverCache coverCache =
+                new CoverCache(coverStore, new SimpleMeterRegistry(), DataSize.ofKilobytes(1), DataSize.ofBytes(64));
+        BookService bookService = mock(BookService.class);
+        when(bookService.findBookCoverLocation(1)).thenReturn(SMALL_COVER);
+        when(bookService.findBookCoverLocation(2)).thenReturn(LARGE_COVER);
+        FileStreamingService fileStreamingService =
+                new FileStreamingService(coverStore, coverCache, mock(CoverThumbnailService.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                        new BookController(bookService, fileStreamingService, mock(BookImportService.class)))
+                .build();
+    }
+
+    @Test
+    void streamsTheWholeCover() throws Exception {
+        mockMvc.perform(get("/books/1/cover"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abcdef\""))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 26))
+                .andExpect(content().contentType("image/png"))
+                .andExpect(content().string(ALPHABET));
+    }
+
+    @Test
+    void answersASingleRangeWithPartialContent() throws Exception {
+        mockMvc.perform(get("/books/1/cover").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/26"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("cdef"));
+
+        mockMvc.perform(get("/books/2/cover").header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 101-103/104"))
+                .andExpect(content().string("xyz"));
+    }
+
+    @Test
+    void rejectsARangeBeyondTheEndOfTheCover() throws Exception {
+        mockMvc.perform(get("/books/1/cover").header(HttpHeaders.RANGE, "bytes=26-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */26"))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void answersAMatchingEtagWithNotModified() throws Exception {
+        mockMvc.perform(get("/books/1/cover").header(HttpHeaders.IF_NONE_MATCH, "\"abcdef\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/books/1/cover").header(HttpHeaders.IF_NONE_MATCH, "\"012345\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ALPHABET));
+    }
+
+    @Test
+    void remembersTheSizeOfACoverTooLargeToCache() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/books/2/cover"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 104));
+        }
+
+        verify(coverStore, times(1)).findSize(LARGE_COVER);
+    }
+
+    @Test
+    void handsLocalFilesToTheContainersSendfile() throws Exception {
+        mockMvc.perform(get("/books/2/cover")
+                        .header(HttpHeaders.RANGE, "bytes=10-19")
+                        .requestAttr(FileStreamingService.SENDFILE_SUPPORTED_ATTR, true))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(request().attribute(FileStreamingService.SENDFILE_FILENAME_ATTR, largeFile.toString()))
+                .andExpect(request().attribute(FileStreamingService.SENDFILE_START_ATTR, 10L))
+                .andExpect(request().attribute(FileStreamingService.SENDFILE_END_ATTR, 20L))
+                .andExpect(content().string(""));
+    }
+
+    private Path write(String key, String content) throws IOException {
+        Path file = uploadRoot.resolve(key);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
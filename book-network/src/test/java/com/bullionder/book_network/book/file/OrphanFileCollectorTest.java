@@ -0,0 +1,217 @@
+package com.bullionder.book_network.book.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import com.bullionder.book_network.book.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+// the locks are PostgreSQL advisory locks, so they run against a real server
+class OrphanFileCollectorTest {
+
+    private static final String ORPHAN = FileStorageService.toFileKey("a".repeat(64), "png");
+    private static final String REFERENCED = FileStorageService.toFileKey("b".repeat(64), "png");
+    private static final String FRESH = FileStorageService.toFileKey("c".repeat(64), "png");
+
+    private static EmbeddedPostgres postgres;
+
+    @TempDir
+    Path tempDir;
+
+    private final Set<String> referencedCovers = new HashSet<>();
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final CoverUploadSessionRepository uploadSessionRepository = mock(CoverUploadSessionRepository.class);
+    private LocalCoverStore coverStore;
+    private CoverFileLocks coverFileLocks;
+    private FileStorageService fileStorageService;
+    private OrphanFileCollector collector;
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DataSource dataSource = postgres.getPostgresDatabase();
+        coverStore = spy(new LocalCoverStore(tempDir.resolve("covers").toString()));
+        coverFileLocks = new CoverFileLocks(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource));
+        fileStorageService = new FileStorageService(coverStore, coverFileLocks);
+        ReflectionTestUtils.setField(
+                fileStorageService, "tempPath", tempDir.resolve("tmp").toString());
+        CoverCache coverCache = new CoverCache(
+                coverStore, new SimpleMeterRegistry(), DataSize.ofKilobytes(64), DataSize.ofKilobytes(8));
+        collector = new OrphanFileCollector(
+                coverStore, coverCache, coverFileLocks, fileStorageService, bookRepository, uploadSessionRepository);
+        ReflectionTestUtils.setField(collector, "gracePeriod", Duration.ofHours(1));
+        ReflectionTestUtils.setField(collector, "batchSize", 10);
+        when(bookRepository.findReferencedBookCovers(any()))
+                .thenAnswer(invocation -> referenced(invocation.getArgument(0)));
+
+        Instant old = Instant.now().minus(Duration.ofHours(2));
+        store(ORPHAN, old);
+        store(FileUtils.thumbnailLocation(ORPHAN, CoverSize.SMALL), old);
+        store(REFERENCED, old);
+        store(FRESH, Instant.now());
+        referencedCovers.add(REFERENCED);
+    }
+
+    @Test
+    void deletesOldUnreferencedFilesWithTheirThumbnails() throws IOException {
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(ORPHAN)).isFalse();
+        assertThat(coverStore.exists(FileUtils.thumbnailLocation(ORPHAN, CoverSize.SMALL)))
+                .isFalse();
+        assertThat(coverStore.exists(REFERENCED)).isTrue();
+        assertThat(coverStore.exists(FRESH)).isTrue();
+    }
+
+    @Test
+    void keepsAFileThatAnUploadClaimedAfterTheReferencesWereChecked() throws IOException {
+        // the same content is uploaded again between the batch reference check and the deletion,
+        // the book that will reference it is not saved yet
+        doAnswer(invocation -> {
+                    fileStorageService.storeFile(
+                            fileStorageService.createTempFile("upload-"), "a".repeat(64), "cover.png");
+                    return referenced(invocation.getArgument(0));
+                })
+                .doAnswer(invocation -> referenced(invocation.getArgument(0)))
+                .when(bookRepository)
+                .findReferencedBookCovers(any());
+
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(ORPHAN)).isTrue();
+    }
+
+    @Test
+    void skipsAFileWhileAnUploadHoldsIt() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> upload = CompletableFuture.supplyAsync(() -> {
+            try {
+                return coverFileLocks.whileStoring(ORPHAN, () -> {
+                    locked.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ORPHAN;
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(ORPHAN)).isTrue();
+        release.countDown();
+        upload.get(10, TimeUnit.SECONDS);
+
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(ORPHAN)).isFalse();
+    }
+
+    @Test
+    void uploadsTheContentOutsideOfTheLockAndItsTransaction() throws IOException {
+        AtomicBoolean uploadedInTransaction = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+                    // a long upload must not hold a pooled connection
+                    uploadedInTransaction.set(TransactionSynchronizationManager.isActualTransactionActive());
+                    return invocation.callRealMethod();
+                })
+                .when(coverStore)
+                .put(startsWith(FileStorageService.STAGING_PREFIX), any());
+
+        String fileKey =
+                fileStorageService.storeFile(fileStorageService.createTempFile("upload-"), "d".repeat(64), "cover.png");
+
+        assertThat(uploadedInTransaction).isFalse();
+        assertThat(coverStore.exists(fileKey)).isTrue();
+        assertThat(Files.exists(tempDir.resolve("covers").resolve("staging"))).isTrue();
+        try (Stream<Path> staged = Files.list(tempDir.resolve("covers").resolve("staging"))) {
+            assertThat(staged).isEmpty();
+        }
+    }
+
+    @Test
+    void deletesUploadsLeftInStagingByAFailedUpload() throws IOException {
+        store(FileStorageService.STAGING_PREFIX + "abandoned", Instant.now().minus(Duration.ofHours(2)));
+        store(FileStorageService.STAGING_PREFIX + "in-progress", Instant.now());
+
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(FileStorageService.STAGING_PREFIX + "abandoned"))
+                .isFalse();
+        assertThat(coverStore.exists(FileStorageService.STAGING_PREFIX + "in-progress"))
+                .isTrue();
+    }
+
+    @Test
+    void deletesUploadPartsOnlyOnceTheirSessionIsGone() throws IOException {
+        Instant old = Instant.now().minus(Duration.ofHours(2));
+        store(CoverUploadService.UPLOAD_PREFIX + "gone/part", old);
+        store(CoverUploadService.UPLOAD_PREFIX + "active/part", old);
+        when(uploadSessionRepository.exists("active")).thenReturn(true);
+
+        collector.collectOrphanFiles();
+
+        assertThat(coverStore.exists(CoverUploadService.UPLOAD_PREFIX + "gone/part"))
+                .isFalse();
+        assertThat(coverStore.exists(CoverUploadService.UPLOAD_PREFIX + "active/part"))
+                .isTrue();
+    }
+
+    private Set<String> referenced(Collection<String> fileKeys) {
+        return fileKeys.stream().filter(referencedCovers::contains).collect(Collectors.toSet());
+    }
+
+    private void store(String fileKey, Instant lastModified) throws IOException {
+        Path file = tempDir.resolve("covers").resolve(fileKey);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, fileKey);
+        Files.setLastModifiedTime(file, FileTime.from(lastModified));
+    }
+}
@@ -0,0 +1,330 @@
+package com.bullionder.book_network.book.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+class S3CoverStoreTest {
+
+    private static final long PART_SIZE = 1024;
+    private static final int READ_CHUNK_SIZE = 256;
+
+    @TempDir
+    Path tempDir;
+
+    private final InMemoryS3Client s3Client = new InMemoryS3Client();
+    private final S3CoverStore store =
+            new S3CoverStore(s3Client, "covers", "covers/", PART_SIZE, READ_CHUNK_SIZE, 2, Duration.ofSeconds(5));
+
+    @Test
+    void storesLargeFilesInPartsAndReadsRanges() throws IOException {
+        byte[] content = randomBytes(3 * PART_SIZE + 100);
+        Path source = Files.write(tempDir.resolve("cover.png"), content);
+
+        store.put("ab/cd/cover.png", source);
+
+        assertThat(s3Client.uploadedParts.get()).isEqualTo(4);
+        assertThat(store.findSize("ab/cd/cover.png")).hasValue(content.length);
+        try (InputStream in = store.openStream("ab/cd/cover.png")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        store.transferTo("ab/cd/cover.png", 1000, 200, range);
+        assertThat(range.toByteArray()).isEqualTo(Arrays.copyOfRange(content, 1000, 1200));
+    }
+
+    @Test
+    void readsAnObjectEndingOnAChunkBoundary() throws IOException {
+        byte[] content = randomBytes(2 * READ_CHUNK_SIZE);
+        store.put("ab/cd/cover.png", Files.write(tempDir.resolve("cover.png"), content));
+
+        try (InputStream in = store.openStream("ab/cd/cover.png")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        store.transferTo("ab/cd/cover.png", 0, content.length, whole);
+        assertThat(whole.toByteArray()).isEqualTo(content);
+        assertThatThrownBy(() -> store.openStream("missing")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void doesNotHoldARequestSlotWhileTheClientReads() throws Exception {
+        S3CoverStore singleSlot =
+                new S3CoverStore(s3Client, "covers", "covers/", PART_SIZE, READ_CHUNK_SIZE, 1, Duration.ofMillis(200));
+        byte[] content = randomBytes(3 * READ_CHUNK_SIZE);
+        singleSlot.put("ab/cd/cover.png", Files.write(tempDir.resolve("cover.png"), content));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream slowClient = new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> download = executor.submit(() -> {
+                singleSlot.transferTo("ab/cd/cover.png", 0, content.length, slowClient);
+                return null;
+            });
+            assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(singleSlot.findSize("ab/cd/cover.png")).hasValue(content.length);
+
+            release.countDown();
+            download.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givesUpWhenNoRequestSlotFreesUp() throws Exception {
+        S3CoverStore singleSlot =
+                new S3CoverStore(s3Client, "covers", "covers/", PART_SIZE, READ_CHUNK_SIZE, 1, Duration.ofMillis(50));
+        s3Client.headDelayMillis = 1000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> singleSlot.findSize("missing"));
+            while (s3Client.concurrentRequests.get() == 0) {
+                Thread.onSpinWait();
+            }
+
+            assertThatThrownBy(() -> singleSlot.findSize("missing")).isInstanceOf(CoverStoreBusyException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void storesSmallFilesInOneRequestAndListsThemWithoutPrefix() throws IOException {
+        Path source = Files.write(tempDir.resolve("cover.png"), randomBytes(10));
+
+        store.put("ab/cd/cover.png", source);
+
+        assertThat(s3Client.uploadedParts.get()).isZero();
+        assertThat(store.listCovers().map(CoverStore.StoredCover::key)).containsExactly("ab/cd/cover.png");
+        store.delete("ab/cd/cover.png");
+        assertThat(store.findSize("ab/cd/cover.png")).isEmpty();
+    }
+
+    @Test
+    void movesAStagedUploadWithAServerSideCopy() throws IOException {
+        byte[] content = randomBytes(10);
+        store.put("staging/upload", Files.write(tempDir.resolve("cover.png"), content));
+
+        store.move("staging/upload", "ab/cd/cover.png");
+
+        assertThat(store.findSize("staging/upload")).isEmpty();
+        try (InputStream in = store.openStream("ab/cd/cover.png")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void limitsConcurrentRequests() throws Exception {
+        s3Client.headDelayMillis = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return store.findSize("missing");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(s3Client.maxConcurrentRequests.get()).isLessThanOrEqualTo(2);
+    }
+
+    private static byte[] randomBytes(long size) {
+        byte[] bytes = new byte[(int) size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class InMemoryS3Client implements S3Client {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+        private final AtomicInteger uploadedParts = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+        private volatile long headDelayMillis;
+
+        @Override
+        public HeadObjectResponse headObject(HeadObjectRequest request) {
+            int current = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(headDelayMillis);
+                byte[] object = objects.get(request.key());
+                if (object == null) {
+                    throw NoSuchKeyException.builder().statusCode(404).build();
+                }
+                return HeadObjectResponse.builder()
+                        .contentLength((long) object.length)
+                        .build();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            objects.put(request.key(), read(body));
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            String uploadId = request.key() + "#" + System.nanoTime();
+            multipartUploads.put(uploadId, new TreeMap<>());
+            return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            multipartUploads.get(request.uploadId()).put(request.partNumber(), read(body));
+            uploadedParts.incrementAndGet();
+            return UploadPartResponse.builder()
+                    .eTag("part-" + request.partNumber())
+                    .build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            multipartUploads.remove(request.uploadId()).values().forEach(object::writeBytes);
+            objects.put(request.key(), object.toByteArray());
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public <ReturnT> ReturnT getObject(
+                GetObjectRequest request, ResponseTransformer<GetObjectResponse, ReturnT> transformer) {
+            byte[] object = objects.get(request.key());
+            if (object == null) {
+                throw NoSuchKeyException.builder().statusCode(404).build();
+            }
+            int start = 0;
+            int end = object.length - 1;
+            if (request.range() != null) {
+                String[] bounds = request.range().substring("bytes=".length()).split("-");
+                start = Integer.parseInt(bounds[0]);
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+                if (start >= object.length) {
+                    throw S3Exception.builder().statusCode(416).build();
+                }
+            }
+            InputStream content = new ByteArrayInputStream(object, start, end - start + 1);
+            try {
+                return transformer.transform(
+                        GetObjectResponse.builder()
+                                .contentLength((long) end - start + 1)
+                                .build(),
+                        AbortableInputStream.create(content));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+            return getObject(request, ResponseTransformer.toInputStream());
+        }
+
+        @Override
+        public CopyObjectResponse copyObject(CopyObjectRequest request) {
+            objects.put(request.destinationKey(), objects.get(request.sourceKey()));
+            return CopyObjectResponse.builder().build();
+        }
+
+        @Override
+        public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+            objects.remove(request.key());
+            return DeleteObjectResponse.builder().build();
+        }
+
+        @Override
+        public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+            List<S3Object> contents = objects.keySet().stream()
+                    .filter(key -> key.startsWith(request.prefix()))
+                    .map(key -> S3Object.builder()
+                            .key(key)
+                            .lastModified(Instant.now())
+                            .build())
+                    .toList();
+            return ListObjectsV2Response.builder()
+                    .contents(contents)
+                    .isTruncated(false)
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {}
+
+        private static byte[] read(RequestBody body) {
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.bullionder.book_network.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CacheLoadsTest {
+
+    private final AsyncCache<Integer, String> cache = Caffeine.newBuilder().buildAsync();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> CacheLoads.get(cache, 1, key -> {
+                loading.countDown();
+                await(release);
+                return load(key);
+            }));
+            loading.await();
+            Future<String> second = executor.submit(() -> CacheLoads.get(cache, 1, this::load));
+            release.countDown();
+
+            assertThat(first.get()).isEqualTo("book 1");
+            assertThat(second.get()).isEqualTo("book 1");
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedLoadsAreNotCached() {
+        assertThatThrownBy(() -> CacheLoads.get(cache, 2, key -> {
+                    throw new IllegalStateException("unavailable");
+                }))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(CacheLoads.get(cache, 2, this::load)).isEqualTo("book 2");
+        assertThat(loads).hasValue(1);
+    }
+
+    private String load(Integer key) {
+        loads.incrementAndGet();
+        return "book " + key;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
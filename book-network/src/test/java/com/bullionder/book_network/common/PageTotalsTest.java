@@ -0,0 +1,58 @@
+package com.bullionder.book_network.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+class PageTotalsTest {
+
+    private final PageTotals pageTotals =
+            new PageTotals(new SimpleMeterRegistry(), 100, Duration.ofHours(1), Duration.ofHours(2));
+    private final AtomicLong counted = new AtomicLong();
+
+    @Test
+    void skipsTheCountWhenTheFirstPageHoldsEverything() {
+        PageResponse<String> page = pageTotals.toPageResponse(
+                new SliceImpl<>(List.of("a", "b"), PageRequest.of(0, 10), false),
+                List.of("a", "b"),
+                TotalMode.EXACT,
+                "test",
+                1,
+                this::count);
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(page.isTotalElementsExact()).isTrue();
+        assertThat(counted).hasValue(0);
+    }
+
+    @Test
+    void servesApproximateTotalsFromTheCacheAndOmitsThemOnRequest() {
+        SliceImpl<String> slice = new SliceImpl<>(List.of("c"), PageRequest.of(1, 1), true);
+
+        PageResponse<String> first =
+                pageTotals.toPageResponse(slice, List.of("c"), TotalMode.APPROXIMATE, "test", 1, this::count);
+        PageResponse<String> second =
+                pageTotals.toPageResponse(slice, List.of("c"), TotalMode.APPROXIMATE, "test", 1, this::count);
+        PageResponse<String> none =
+                pageTotals.toPageResponse(slice, List.of("c"), TotalMode.NONE, "test", 1, this::count);
+
+        assertThat(first.getTotalElements()).isEqualTo(42);
+        assertThat(first.getTotalPages()).isEqualTo(42);
+        assertThat(first.isTotalElementsExact()).isFalse();
+        assertThat(second.getTotalElements()).isEqualTo(42);
+        assertThat(counted).hasValue(1);
+        assertThat(none.getTotalElements()).isNull();
+        assertThat(none.isLast()).isFalse();
+    }
+
+    private long count() {
+        counted.incrementAndGet();
+        return 42;
+    }
+}
@@ -0,0 +1,154 @@
+package com.bullionder.book_network.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.bullionder.book_network.book.BookChangeChannel;
+import com.bullionder.book_network.book.BookResponse;
+import com.bullionder.book_network.book.BookResponseCache;
+import com.bullionder.book_network.user.User;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// two independent local servers stand in for the primary and its replica, the port tells which one answered
+class ReplicaRoutingDataSourceTest {
+
+    private EmbeddedPostgres primary;
+    private EmbeddedPostgres replica;
+    private HikariDataSource replicaPool;
+    private ReplicaStickiness stickiness;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        primary = EmbeddedPostgres.builder().start();
+        replica = EmbeddedPostgres.builder().start();
+        replicaPool = new HikariDataSource();
+        replicaPool.setJdbcUrl(replica.getJdbcUrl("postgres", "postgres"));
+        replicaPool.setConnectionTimeout(250);
+        replicaPool.setInitializationFailTimeout(-1);
+        stickiness = new ReplicaStickiness(Duration.ofMinutes(1), 100);
+        routing = new ReplicaRoutingDataSource(
+                primary.getPostgresDatabase(), Map.of("replica-0", replicaPool), stickiness, Duration.ofSeconds(5));
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        routing.close();
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        assertThat(readOnlyPort()).isEqualTo(replica.getPort());
+        assertThat(readWritePort()).isEqualTo(primary.getPort());
+        assertThat(port()).isEqualTo(primary.getPort());
+    }
+
+    @Test
+    void usersWhoJustWroteReadFromThePrimary() {
+        authenticate(7);
+        stickiness.recordWrite(7);
+        assertThat(readOnlyPort()).isEqualTo(primary.getPort());
+
+        authenticate(8);
+        assertThat(readOnlyPort()).isEqualTo(replica.getPort());
+    }
+
+    @Test
+    void laggingReplicaIsSkippedUntilItCatchesUp() {
+        routing.recordLag("replica-0", Duration.ofSeconds(30));
+        assertThat(readOnlyPort()).isEqualTo(primary.getPort());
+
+        // a standalone server is never in recovery, so the check finds no lag
+        routing.checkReplicas();
+        assertThat(routing.findReplicaLag("replica-0")).isZero();
+        assertThat(readOnlyPort()).isEqualTo(replica.getPort());
+    }
+
+    @Test
+    void replicaWithAnOutdatedLagReadingIsSkippedUntilTheNextCheck() {
+        routing.recordLag("replica-0", Duration.ZERO, Duration.ofSeconds(6));
+        assertThat(readOnlyPort()).isEqualTo(primary.getPort());
+
+        routing.checkReplicas();
+        assertThat(readOnlyPort()).isEqualTo(replica.getPort());
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToThePrimary() throws IOException {
+        replicaPool.close();
+        replica.close();
+
+        assertThat(readOnlyPort()).isEqualTo(primary.getPort());
+        routing.checkReplicas();
+        assertThat(routing.findReplicaLag("replica-0")).isNaN();
+        assertThat(readOnlyPort()).isEqualTo(primary.getPort());
+    }
+
+    @Test
+    void bookCacheLoadsMissesFromThePrimary() {
+        // the replica has not replayed the rename yet, and a miss stays cached for the whole TTL
+        new JdbcTemplate(primary.getPostgresDatabase())
+                .execute("CREATE TABLE book AS SELECT 1 AS id, 'Renamed' AS title");
+        new JdbcTemplate(replicaPool).execute("CREATE TABLE book AS SELECT 1 AS id, 'Stale' AS title");
+        BookResponseCache cache = new BookResponseCache(
+                mock(BookChangeChannel.class),
+                transactionManager,
+                new SimpleMeterRegistry(),
+                100,
+                Duration.ofMinutes(5));
+
+        BookResponse book = readOnly.execute(status -> cache.get(1, id -> BookResponse.builder()
+                .id(id)
+                .title(jdbcTemplate.queryForObject("SELECT title FROM book WHERE id = ?", String.class, id))
+                .build()));
+
+        assertThat(book.getTitle()).isEqualTo("Renamed");
+    }
+
+    private int readOnlyPort() {
+        return readOnly.execute(status -> port());
+    }
+
+    private int readWritePort() {
+        return readWrite.execute(status -> port());
+    }
+
+    private int port() {
+        return Integer.parseInt(jdbcTemplate.queryForObject("SELECT current_setting('port')", String.class));
+    }
+
+    private static void authenticate(Integer userId) {
+        User user = User.builder().id(userId).roles(List.of()).build();
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+}
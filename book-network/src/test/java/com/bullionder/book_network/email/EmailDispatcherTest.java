@@ -0,0 +1,229 @@
+package com.bullionder.book_network.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.mail.Message;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+// the outbox runs on the migrated schema of a real server, GreenMail stands in for the mail server
+class EmailDispatcherTest {
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private static EmbeddedPostgres postgres;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private EmailOutbox outbox;
+    private JavaMailSenderImpl mailSender;
+    private EmailDispatcher dispatcher;
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM email_outbox");
+        outbox = new EmailOutbox(new NamedParameterJdbcTemplate(dataSource), new ObjectMapper());
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+        dispatcher = new EmailDispatcher(
+                outbox,
+                mailSender,
+                templateEngine(),
+                meterRegistry,
+                "library@example.test",
+                2,
+                Duration.ofMinutes(5),
+                3,
+                Duration.ofSeconds(30),
+                Duration.ofMinutes(10),
+                Duration.ofDays(7));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void sendsTheOutboxInBatches() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queue("reader" + i + "@example.test", "12345" + i);
+        }
+
+        dispatcher.poll();
+
+        assertThat(greenMail.waitForIncomingEmail(10_000, 5)).isTrue();
+        await(() -> outbox.countPending() == 0);
+        MimeMessage first = greenMail.getReceivedMessagesForDomain("reader0@example.test")[0];
+        assertThat(first.getSubject()).isEqualTo("Account activation");
+        assertThat(first.getRecipients(Message.RecipientType.TO)[0].toString()).isEqualTo("reader0@example.test");
+        assertThat(GreenMailUtil.getBody(first)).contains("Hello Reader,").contains("123450");
+        // batches of two, each over its own connection
+        assertThat(meterRegistry.get("email.outbox.send").timer().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("email.outbox.delivery").timer().count()).isEqualTo(5);
+        await(() -> meterRegistry.get("email.outbox.pending").gauge().value() == 0);
+    }
+
+    @Test
+    void retriesWithBackoffUntilTheMailServerAnswers() throws Exception {
+        mailSender.setPort(unusedPort());
+        queue("reader@example.test", "654321");
+
+        dispatcher.poll();
+
+        await(() -> attempts() == 1);
+        assertThat(jdbcTemplate.queryForObject(
+                        """
+                        SELECT next_attempt_date BETWEEN LOCALTIMESTAMP + interval '25 seconds'
+                            AND LOCALTIMESTAMP + interval '30 seconds'
+                        FROM email_outbox
+                        """,
+                        Boolean.class))
+                .isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT last_error FROM email_outbox", String.class))
+                .isNotBlank();
+        assertThat(meterRegistry.get("email.outbox.retries").counter().count()).isEqualTo(1);
+
+        mailSender.setPort(greenMail.getSmtp().getPort());
+        jdbcTemplate.update("UPDATE email_outbox SET next_attempt_date = LOCALTIMESTAMP");
+        dispatcher.poll();
+
+        assertThat(greenMail.waitForIncomingEmail(10_000, 1)).isTrue();
+        await(() -> outbox.countPending() == 0);
+    }
+
+    @Test
+    void abandonsEmailsThatCannotBeRenderedOrRanOutOfAttempts() throws Exception {
+        outbox.insert("reader@example.test", "Unknown", "no_such_template", Map.of());
+        mailSender.setPort(unusedPort());
+        queue("last@example.test", "111111");
+        jdbcTemplate.update("UPDATE email_outbox SET attempts = 2 WHERE recipient = 'last@example.test'");
+
+        dispatcher.poll();
+
+        await(() -> outbox.countPending() == 0);
+        assertThat(jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM email_outbox WHERE failed_date IS NOT NULL", Integer.class))
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("email.outbox.abandoned").counter().count())
+                .isEqualTo(2);
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    void abandonsAnEmailWhoseVariablesCannotBeReadWithoutHoldingBackTheBatch() throws Exception {
+        queue("reader@example.test", "222222");
+        outbox.insert(
+                "broken@example.test", "Account activation", EmailTemplateName.ACTIVATE_ACCOUNT.getName(), Map.of());
+        jdbcTemplate.update("UPDATE email_outbox SET variables = '[1, 2]' WHERE recipient = 'broken@example.test'");
+
+        dispatcher.poll();
+
+        assertThat(greenMail.waitForIncomingEmail(10_000, 1)).isTrue();
+        await(() -> outbox.countPending() == 0);
+        assertThat(jdbcTemplate.queryForObject(
+                        "SELECT last_error FROM email_outbox WHERE failed_date IS NOT NULL", String.class))
+                .startsWith("Email variables cannot be read");
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+    }
+
+    @Test
+    void purgesAbandonedEmailsAfterTheRetention() {
+        queue("old@example.test", "333333");
+        queue("recent@example.test", "444444");
+        queue("pending@example.test", "555555");
+        abandonedAgo("old@example.test", "8 days");
+        abandonedAgo("recent@example.test", "1 day");
+
+        dispatcher.purgeAbandonedEmails();
+
+        assertThat(jdbcTemplate.queryForList("SELECT recipient FROM email_outbox ORDER BY id", String.class))
+                .containsExactly("recent@example.test", "pending@example.test");
+    }
+
+    private void queue(String recipient, String activationCode) {
+        outbox.insert(
+                recipient,
+                "Account activation",
+                EmailTemplateName.ACTIVATE_ACCOUNT.getName(),
+                Map.of(
+                        "username", "Reader",
+                        "confirmationUrl", "http://localhost:4200/activate-account",
+                        "activation_code", activationCode));
+    }
+
+    private void abandonedAgo(String recipient, String interval) {
+        jdbcTemplate.update(
+                "UPDATE email_outbox SET failed_date = LOCALTIMESTAMP - CAST(? AS interval) WHERE recipient = ?",
+                interval,
+                recipient);
+    }
+
+    private int attempts() {
+        return jdbcTemplate.queryForObject("SELECT attempts FROM email_outbox", Integer.class);
+    }
+
+    private static SpringTemplateEngine templateEngine() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        return templateEngine;
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waiting for the dispatcher").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.bullionder.book_network.feedback;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.bullionder.book_network.book.Book;
+import com.bullionder.book_network.common.PageTotals;
+import com.bullionder.book_network.exception.OperationNotPermittedException;
+import com.bullionder.book_network.user.User;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+// the reconciliation is written for PostgreSQL, so the aggregates are checked on the migrated schema
+@DataJpaTest(properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({FeedbackService.class, FeedbackMapper.class, RatingReconciler.class})
+class BookRatingTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private FeedbackService feedbackService;
+
+    @Autowired
+    private RatingReconciler ratingReconciler;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private PageTotals pageTotals;
+
+    private User owner;
+    private Book book;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        owner = entityManager.persist(user("owner"));
+        book = entityManager.persist(Book.builder()
+                .title("Dune")
+                .authorName("Frank Herbert")
+                .isbn("isbn-1")
+                .shareable(true)
+                .owner(owner)
+                .build());
+        entityManager.flush();
+    }
+
+    @Test
+    void readersRatingsAddUpOnTheBook() {
+        feedbackService.save(new FeedbackRequest(4.0, "Great", book.getId()), reader("reader1"));
+        feedbackService.save(new FeedbackRequest(2.5, "Slow start", book.getId()), reader("reader2"));
+
+        assertThat(rating(book.getId())).containsEntry("rating_sum", 6.5).containsEntry("rating_count", 2);
+    }
+
+    @Test
+    void rejectsAFeedbackFromTheOwner() {
+        Authentication connectedOwner = new UsernamePasswordAuthenticationToken(owner, null);
+
+        assertThatThrownBy(() -> feedbackService.save(new FeedbackRequest(5.0, "Mine", book.getId()), connectedOwner))
+                .isInstanceOf(OperationNotPermittedException.class);
+
+        assertThat(rating(book.getId())).containsEntry("rating_sum", 0.0).containsEntry("rating_count", 0);
+    }
+
+    @Test
+    void reconcilerRepairsDriftedAggregates() {
+        feedbackService.save(new FeedbackRequest(4.0, "Great", book.getId()), reader("reader1"));
+        feedbackService.save(new FeedbackRequest(3.0, "Fine", book.getId()), reader("reader2"));
+        Book unrated = entityManager.persist(Book.builder()
+                .title("Emma")
+                .authorName("Jane Austen")
+                .isbn("isbn-2")
+                .shareable(true)
+                .owner(owner)
+                .build());
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE book SET rating_sum = 40, rating_count = 9 WHERE id = ?", book.getId());
+        jdbcTemplate.update("UPDATE book SET rating_sum = 5, rating_count = 1 WHERE id = ?", unrated.getId());
+        long version = version(book.getId());
+
+        ratingReconciler.reconcileRatings();
+
+        assertThat(rating(book.getId())).containsEntry("rating_sum", 7.0).containsEntry("rating_count", 2);
+        assertThat(rating(unrated.getId())).containsEntry("rating_sum", 0.0).containsEntry("rating_count", 0);
+        // the repaired book reads as changed, so cached copies and ETags move on
+        assertThat(version(book.getId())).isGreaterThan(version);
+    }
+
+    private Authentication reader(String name) {
+        return new UsernamePasswordAuthenticationToken(entityManager.persist(user(name)), null);
+    }
+
+    private Map<String, Object> rating(Integer bookId) {
+        return jdbcTemplate.queryForMap("SELECT rating_sum, rating_count FROM book WHERE id = ?", bookId);
+    }
+
+    private long version(Integer bookId) {
+        return jdbcTemplate.queryForObject("SELECT version FROM book WHERE id = ?", Long.class, bookId);
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .firstname("first-" + name)
+                .lastname("last-" + name)
+                .email(name + "@mail.com")
+                .password("password")
+                .enabled(true)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
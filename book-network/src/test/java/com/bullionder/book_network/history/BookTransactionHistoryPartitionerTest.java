@@ -0,0 +1,112 @@
+package com.bullionder.book_network.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+// partitions are PostgreSQL DDL, so they are checked on the migrated schema
+class BookTransactionHistoryPartitionerTest {
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private EmbeddedPostgres postgres;
+    private JdbcTemplate jdbcTemplate;
+    private BookTransactionHistoryPartitioner partitioner;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+        DataSource dataSource = postgres.getPostgresDatabase();
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        partitioner = new BookTransactionHistoryPartitioner(
+                dataSource, jdbcTemplate, new DataSourceTransactionManager(dataSource), 1, Duration.ofSeconds(2));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void movesRowsOutOfTheDefaultPartitionBeforeCreatingTheirMonth() throws Exception {
+        // the partitioner was not running when these loans were recorded
+        LocalDateTime now = LocalDateTime.now();
+        insertHistory(1, now);
+        insertHistory(2, now.plusMonths(1));
+
+        partitioner.run(null);
+
+        assertThat(count("book_transaction_history_default")).isZero();
+        assertThat(count(partition(YearMonth.from(now)))).isEqualTo(1);
+        assertThat(count(partition(YearMonth.from(now).plusMonths(1)))).isEqualTo(1);
+        assertThat(count(BookTransactionHistoryPartitioner.TABLE)).isEqualTo(2);
+    }
+
+    @Test
+    void dropsOnlyEmptyPartitionsBeforeTheCutoff() throws Exception {
+        partitioner.run(null);
+        YearMonth current = YearMonth.now();
+        createPartition(current.minusMonths(3));
+        createPartition(current.minusMonths(2));
+        insertHistory(1, current.minusMonths(2).atDay(10).atStartOfDay());
+
+        int dropped = partitioner.dropEmptyPartitionsBefore(LocalDateTime.now());
+
+        assertThat(dropped).isEqualTo(1);
+        assertThat(exists(partition(current.minusMonths(3)))).isFalse();
+        assertThat(exists(partition(current.minusMonths(2)))).isTrue();
+        assertThat(exists(partition(current))).isTrue();
+    }
+
+    @Test
+    void detachesConcurrentlyWithoutADefaultPartition() throws Exception {
+        jdbcTemplate.execute("DROP TABLE book_transaction_history_default");
+        partitioner.run(null);
+        YearMonth old = YearMonth.now().minusMonths(3);
+        createPartition(old);
+
+        assertThat(partitioner.dropEmptyPartitionsBefore(LocalDateTime.now())).isEqualTo(1);
+        assertThat(exists(partition(old))).isFalse();
+    }
+
+    private void insertHistory(int id, LocalDateTime createdDate) {
+        jdbcTemplate.update(
+                """
+                INSERT INTO book_transaction_history (id, returned, return_approved, created_date, created_by)
+                VALUES (?, false, false, ?, 1)
+                """,
+                id,
+                createdDate);
+    }
+
+    private void createPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE " + partition(month) + " PARTITION OF "
+                + BookTransactionHistoryPartitioner.TABLE + " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('"
+                + month.plusMonths(1).atDay(1) + "')");
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+    }
+
+    private boolean exists(String table) {
+        return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+    }
+
+    private static String partition(YearMonth month) {
+        return BookTransactionHistoryPartitioner.TABLE + "_p" + month.format(SUFFIX);
+    }
+}
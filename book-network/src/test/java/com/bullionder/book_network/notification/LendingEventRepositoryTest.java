@@ -0,0 +1,181 @@
+package com.bullionder.book_network.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// the stream cursor relies on PostgreSQL transaction ids, and on events committed by other transactions
+@DataJpaTest(properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(LendingEventRepository.class)
+class LendingEventRepositoryTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private LendingEventRepository repository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM lending_event");
+    }
+
+    @Test
+    void resumesAfterTheLastEventIdOfTheRecipient() {
+        LocalDateTime now = LocalDateTime.now();
+        repository.insert(List.of(
+                event(1, LendingEventType.BOOK_BORROWED, 10, now),
+                event(2, LendingEventType.BOOK_BORROWED, 11, now),
+                event(1, LendingEventType.BOOK_RETURNED, 12, now)));
+
+        List<LendingEventResponse> all = repository.findAfter(1, 0, 10);
+        assertThat(all).extracting(LendingEventResponse::getHistoryId).containsExactly(10, 12);
+        assertThat(repository.findLatestId(1)).isEqualTo(all.get(1).getId());
+        assertThat(repository.findLatestId(3)).isZero();
+
+        assertThat(repository.findAfter(1, all.get(0).getId(), 10))
+                .extracting(LendingEventResponse::getType)
+                .containsExactly(LendingEventType.BOOK_RETURNED);
+    }
+
+    @Test
+    void purgesOnlyExpiredEvents() {
+        LocalDateTime now = LocalDateTime.now();
+        repository.insert(List.of(
+                event(1, LendingEventType.BOOK_BORROWED, 10, now.minusDays(8)),
+                event(1, LendingEventType.RETURN_APPROVED, 11, now)));
+
+        assertThat(repository.deleteCreatedBefore(now.minusDays(7))).isEqualTo(1);
+        assertThat(repository.findAfter(1, 0, 10))
+                .extracting(LendingEventResponse::getHistoryId)
+                .containsExactly(11);
+    }
+
+    @Test
+    void holdsBackAnEventUntilALowerIdCommits() throws SQLException {
+        try (Connection first = dataSource.getConnection();
+                Connection second = dataSource.getConnection()) {
+            first.setAutoCommit(false);
+            second.setAutoCommit(false);
+            long lowerId = insert(first, 20);
+            long higherId = insert(second, 21);
+            second.commit();
+
+            // the higher id is visible, but delivering it would move the cursor past the lower one
+            assertThat(repository.findAfter(1, 0, 10)).isEmpty();
+            assertThat(repository.findLatestId(1)).isZero();
+
+            first.commit();
+
+            assertThat(repository.findAfter(1, 0, 10))
+                    .extracting(LendingEventResponse::getId)
+                    .containsExactly(lowerId, higherId);
+        }
+    }
+
+    @Test
+    void deliversAnEarlierTransactionCommittingALowerIdLater() throws SQLException {
+        try (Connection first = dataSource.getConnection();
+                Connection second = dataSource.getConnection()) {
+            first.setAutoCommit(false);
+            second.setAutoCommit(false);
+            // the second transaction starts writing first, but draws its event id after the other one
+            try (PreparedStatement statement = second.prepareStatement("SELECT pg_current_xact_id()")) {
+                statement.execute();
+            }
+            long lowerId = insert(first, 30);
+            long higherId = insert(second, 31);
+            second.commit();
+
+            List<LendingEventResponse> delivered = repository.findAfter(1, 0, 10);
+            assertThat(delivered).extracting(LendingEventResponse::getId).containsExactly(higherId);
+
+            first.commit();
+
+            assertThat(repository.findAfter(1, higherId, 10))
+                    .extracting(LendingEventResponse::getId)
+                    .containsExactly(lowerId);
+            assertThat(repository.findLatestId(1)).isEqualTo(lowerId);
+        }
+    }
+
+    private static long insert(Connection connection, int historyId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                """
+                INSERT INTO lending_event (recipient_id, type, book_id, history_id, created_date)
+                VALUES (1, 'BOOK_BORROWED', 100, ?, ?)
+                RETURNING id
+                """)) {
+            statement.setInt(1, historyId);
+            statement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    private static LendingEvent event(Integer recipientId, LendingEventType type, Integer historyId, LocalDateTime at) {
+        return LendingEvent.builder()
+                .recipientId(recipientId)
+                .type(type)
+                .bookId(100)
+                .historyId(historyId)
+                .createdDate(at)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}
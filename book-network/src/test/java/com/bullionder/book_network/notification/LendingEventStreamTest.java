@@ -0,0 +1,85 @@
+package com.bullionder.book_network.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bullionder.book_network.book.BookChangeChannel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class LendingEventStreamTest {
+
+    private static final Integer USER_ID = 7;
+
+    private final LendingEventRepository repository = mock(LendingEventRepository.class);
+    private LendingEventStream stream;
+
+    @BeforeEach
+    void setUp() {
+        stream = new LendingEventStream(repository, mock(BookChangeChannel.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stream, "timeout", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(stream, "reconnectDelay", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(stream, "batchSize", 100);
+        ReflectionTestUtils.setField(stream, "poolSize", 1);
+        ReflectionTestUtils.setField(stream, "queueCapacity", 10);
+        stream.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.shutdown();
+    }
+
+    @Test
+    void deliversAnEventCommittedWhileTheStreamWasOpening() {
+        // event 6 commits after the latest id was read and before the subscription is registered,
+        // so its commit notification finds nobody to deliver to
+        when(repository.findLatestId(USER_ID)).thenReturn(5L);
+        when(repository.findAfter(USER_ID, 5L, 100))
+                .thenReturn(List.of(LendingEventResponse.builder()
+                        .id(6L)
+                        .type(LendingEventType.BOOK_BORROWED)
+                        .build()));
+
+        stream.subscribe(USER_ID, null);
+
+        verify(repository, timeout(5000)).findAfter(USER_ID, 5L, 100);
+    }
+
+    @Test
+    void sendsHeartbeatsFromTheDeliveryThreads() {
+        Set<String> readingThreads = ConcurrentHashMap.newKeySet();
+        when(repository.findAfter(eq(USER_ID), anyLong(), anyInt())).thenAnswer(invocation -> {
+            readingThreads.add(Thread.currentThread().getName());
+            return List.of();
+        });
+        stream.subscribe(USER_ID, 3L);
+        verify(repository, timeout(5000)).findAfter(USER_ID, 3L, 100);
+
+        stream.sendHeartbeats();
+
+        // the heartbeat also looks for events held back behind a transaction that was still running
+        verify(repository, timeout(5000).times(2)).findAfter(USER_ID, 3L, 100);
+        assertThat(readingThreads).allSatisfy(thread -> assertThat(thread).startsWith("lending-event-"));
+    }
+
+    @Test
+    void resumesAfterTheLastEventIdOfTheClient() {
+        stream.subscribe(USER_ID, 3L);
+
+        verify(repository, timeout(5000)).findAfter(USER_ID, 3L, 100);
+    }
+}
@@ -0,0 +1,201 @@
+package com.bullionder.book_network.stats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.bullionder.book_network.book.Book;
+import com.bullionder.book_network.book.BookRepository;
+import com.bullionder.book_network.user.User;
+import com.bullionder.book_network.user.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+// the rollup SQL is Postgres only, so it runs against the migrated schema on a real server
+@DataJpaTest(properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(LendingStatsRepository.class)
+class LendingStatsRepositoryTest {
+
+    private static final LocalDate FROM = LocalDate.of(2024, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2024, 3, 31);
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private LendingStatsRepository repository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User owner;
+    private User borrower;
+    private Book first;
+    private Book second;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.saveAndFlush(user("owner"));
+        borrower = userRepository.saveAndFlush(user("borrower"));
+        first = bookRepository.saveAndFlush(book("First"));
+        second = bookRepository.saveAndFlush(book("Second"));
+    }
+
+    @Test
+    void rebuildMatchesTheLiveRecording() {
+        LocalDateTime borrowed = LocalDateTime.of(2024, 3, 4, 10, 0);
+        LocalDateTime returned = borrowed.plusDays(3).plusHours(2);
+        LocalDateTime approved = returned.plusHours(5);
+        List<LendingDelta> live = new ArrayList<>();
+        // a closed loan, already moved to the archive
+        insertLoan("book_transaction_history_archive", 1, first, borrowed, returned, approved);
+        live.add(LendingDelta.borrow(first.getId(), borrower.getId(), borrowed));
+        live.add(LendingDelta.returned(first.getId(), borrower.getId(), borrowed, returned));
+        live.add(LendingDelta.approval(first.getId(), borrower.getId(), returned, approved));
+        // a returned loan waiting for approval
+        insertLoan("book_transaction_history", 2, second, borrowed, returned.plusMinutes(30), null);
+        live.add(LendingDelta.borrow(second.getId(), borrower.getId(), borrowed));
+        live.add(LendingDelta.returned(second.getId(), borrower.getId(), borrowed, returned.plusMinutes(30)));
+        // an open loan of the same book on a later day
+        LocalDateTime borrowedAgain = approved.plusDays(1);
+        insertLoan("book_transaction_history", 3, first, borrowedAgain, null, null);
+        live.add(LendingDelta.borrow(first.getId(), borrower.getId(), borrowedAgain));
+        // approved before return times were kept, so only its borrow counts
+        insertLoan("book_transaction_history", 4, second, borrowedAgain, null, approved.plusDays(2));
+        live.add(LendingDelta.borrow(second.getId(), borrower.getId(), borrowedAgain));
+        live.add(LendingDelta.approval(second.getId(), borrower.getId(), null, approved.plusDays(2)));
+
+        live.forEach(delta -> {
+            if (!delta.isEmpty()) {
+                repository.add(List.of(delta));
+            }
+        });
+        List<Map<String, Object>> recordedBooks = bookDays();
+        List<Map<String, Object>> recordedUsers = userDays();
+        jdbcTemplate.update("UPDATE book_lending_day SET borrow_count = borrow_count + 7");
+
+        repository.rebuild(FROM, TO.plusDays(1));
+
+        assertThat(bookDays()).isEqualTo(recordedBooks);
+        assertThat(userDays()).isEqualTo(recordedUsers);
+        LendingTotals totals = repository.findBookTotals(first.getId(), FROM, TO);
+        assertThat(totals.borrowCount()).isEqualTo(2);
+        assertThat(totals.averageLoanDuration()).isEqualTo(Duration.between(borrowed, returned));
+        assertThat(totals.averageApprovalLatency()).isEqualTo(Duration.ofHours(5));
+        assertThat(repository.findOwnerTotals(owner.getId(), FROM, TO).borrowCount())
+                .isEqualTo(4);
+        assertThat(repository.findBorrowerTotals(borrower.getId(), FROM, TO).returnCount())
+                .isEqualTo(2);
+        assertThat(repository.findMostBorrowedBooks(owner.getId(), FROM, TO, 1))
+                .singleElement()
+                .satisfies(title -> assertThat(title.getBorrowCount()).isEqualTo(2));
+    }
+
+    @Test
+    void rebuildLeavesDaysOutsideTheRangeAlone() {
+        LocalDateTime borrowed = LocalDateTime.of(2024, 3, 4, 10, 0);
+        repository.add(List.of(LendingDelta.borrow(first.getId(), borrower.getId(), borrowed)));
+        repository.add(List.of(LendingDelta.borrow(first.getId(), borrower.getId(), borrowed.plusMonths(1))));
+
+        repository.rebuild(FROM, TO.plusDays(1));
+
+        assertThat(repository.findBookTotals(first.getId(), FROM, TO).borrowCount())
+                .isZero();
+        assertThat(repository
+                        .findBookTotals(first.getId(), TO.plusDays(1), TO.plusMonths(1))
+                        .borrowCount())
+                .isEqualTo(1);
+    }
+
+    private void insertLoan(
+            String table, int id, Book book, LocalDateTime borrowed, LocalDateTime returned, LocalDateTime approved) {
+        jdbcTemplate.update(
+                "INSERT INTO " + table + " (id, user_id, book_id, returned, return_approved, returned_date,"
+                        + " return_approved_date, created_date, created_by"
+                        + (table.endsWith("archive") ? ", archived_date" : "")
+                        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, 1"
+                        + (table.endsWith("archive") ? ", LOCALTIMESTAMP" : "")
+                        + ")",
+                id,
+                borrower.getId(),
+                book.getId(),
+                returned != null || approved != null,
+                approved != null,
+                returned,
+                approved,
+                borrowed);
+    }
+
+    private List<Map<String, Object>> bookDays() {
+        return jdbcTemplate.queryForList("SELECT * FROM book_lending_day ORDER BY book_id, day");
+    }
+
+    private List<Map<String, Object>> userDays() {
+        return jdbcTemplate.queryForList("SELECT * FROM user_lending_day ORDER BY user_id, day");
+    }
+
+    private Book book(String title) {
+        return Book.builder()
+                .title(title)
+                .authorName("Author")
+                .isbn("isbn-" + title)
+                .shareable(true)
+                .owner(owner)
+                .build();
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .firstname("first-" + name)
+                .lastname("last-" + name)
+                .email(name + "@mail.com")
+                .password("password")
+                .enabled(true)
+                .build();
+    }
+
+    @TestConfiguration
+    static class AuditingConfig {
+
+        @Bean
+        AuditorAware<Integer> auditorAware() {
+            return () -> Optional.of(1);
+        }
+    }
+}